@@ -0,0 +1,81 @@
+import java.io.IOException;
+import java.util.Collection;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler, so allocation rates are reported
+ * next to each score, and then lists each score as megabytes of corpus per
+ * second.
+ * 
+ * <p>
+ * With no arguments every benchmark runs on every corpus. The first argument,
+ * if given, is a regular expression selecting benchmarks (for example
+ * {@code TagCloudUsingJava}); any further arguments are corpus names (for
+ * example {@code gettysburg 16MB}). The working directory must be a sibling
+ * of {@code TagCloudGeneratorUsingJava}, so that the bundled Gettysburg
+ * Address is found.
+ * </p>
+ * 
+ * <p>
+ * The projects under test share default-package classes such as
+ * {@code TopWords}, so each one is benchmarked from its own project
+ * ({@code TagCloudGeneratorBenchmarks},
+ * {@code TagCloudGeneratorUsingJavaBenchmarks} or
+ * {@code WordCounterBenchmarks}), which depends on this project and on the
+ * project it measures only. Run this class with the classpath of one of
+ * those projects; putting two projects under test on one classpath would
+ * make one project's copies shadow the other's.
+ * </p>
+ * 
+ * @author Andrew Cheng and Stacey Frye
+ */
+public final class BenchmarkRunner {
+
+    /**
+     * Default constructor--private to prevent instantiation.
+     */
+    private BenchmarkRunner() {
+    }
+
+    /**
+     * Main method.
+     * 
+     * @param args
+     *            the command line arguments: a benchmark pattern, then corpus
+     *            names
+     * @throws RunnerException
+     * @throws IOException
+     */
+    public static void main(String[] args) throws RunnerException,
+            IOException {
+        String include = "Benchmark";
+        if (args.length > 0) {
+            include = args[0];
+        }
+        OptionsBuilder builder = new OptionsBuilder();
+        builder.include(include).addProfiler(GCProfiler.class);
+        if (args.length > 1) {
+            String[] corpora = new String[args.length - 1];
+            System.arraycopy(args, 1, corpora, 0, corpora.length);
+            builder.param("corpus", corpora);
+        }
+        Options options = builder.build();
+        Collection<RunResult> results = new Runner(options).run();
+
+        System.out.println();
+        System.out.printf("%-50s %-12s %12s%n", "Benchmark", "corpus", "MB/s");
+        for (RunResult result : results) {
+            String corpus = result.getParams().getParam("corpus");
+            double megabytes = CorpusGenerator.size(corpus) / 1e6;
+            double opsPerSecond = result.getPrimaryResult().getScore();
+            System.out.printf("%-50s %-12s %12.2f%n", result.getParams()
+                    .getBenchmark(), corpus, opsPerSecond * megabytes);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Finds or makes the input files for the benchmarks: the bundled Gettysburg
+ * Address, or a synthetic corpus of a given size whose word frequencies follow
+ * a Zipf distribution, like natural text. Synthetic corpora are written once
+ * to the temporary directory and reused by later runs.
+ * 
+ * @author Andrew Cheng and Stacey Frye
+ */
+public final class CorpusGenerator {
+
+    /**
+     * Name of the bundled corpus.
+     */
+    public static final String GETTYSBURG = "gettysburg";
+
+    /**
+     * Location of the bundled corpus, relative to the benchmark
+     * project being run.
+     */
+    private static final Path GETTYSBURG_FILE = Paths
+            .get("../TagCloudGeneratorUsingJava/data/gettysburg.txt");
+
+    /**
+     * Number of distinct words in a synthetic corpus.
+     */
+    private static final int VOCABULARY = 500000;
+
+    /**
+     * Zipf exponent; close to 1 for English text.
+     */
+    private static final double EXPONENT = 1.07;
+
+    /**
+     * Words per line of a synthetic corpus.
+     */
+    private static final int WORDS_PER_LINE = 12;
+
+    /**
+     * Seed, so every run benchmarks the same text.
+     */
+    private static final long SEED = 20160210L;
+
+    /**
+     * Default constructor--private to prevent instantiation.
+     */
+    private CorpusGenerator() {
+    }
+
+    /**
+     * Returns the file for the corpus named {@code name}, writing it first if
+     * it is synthetic and does not exist yet.
+     * 
+     * @param name
+     *            {@code "gettysburg"} or a size such as {@code "16MB"} or
+     *            {@code "1GB"}
+     * @return the corpus file
+     * @throws IOException
+     */
+    public static Path corpus(String name) throws IOException {
+        if (name.equals(GETTYSBURG)) {
+            return GETTYSBURG_FILE;
+        }
+        long bytes = parseSize(name);
+        Path file = Paths.get(System.getProperty("java.io.tmpdir"),
+                "tagcloud-zipf-" + name + ".txt");
+        if (!Files.exists(file) || Files.size(file) != bytes) {
+            generate(file, bytes);
+        }
+        return file;
+    }
+
+    /**
+     * Returns the size in bytes of the corpus named {@code name}.
+     * 
+     * @param name
+     *            {@code "gettysburg"} or a size such as {@code "16MB"}
+     * @return its size in bytes
+     * @throws IOException
+     */
+    public static long size(String name) throws IOException {
+        return Files.size(corpus(name));
+    }
+
+    /**
+     * Parses a size such as {@code "16MB"} or {@code "1GB"}.
+     * 
+     * @param name
+     *            the size
+     * @return the number of bytes
+     */
+    private static long parseSize(String name) {
+        String unit = name.substring(name.length() - 2);
+        long number = Long.parseLong(name.substring(0, name.length() - 2));
+        if (unit.equals("KB")) {
+            return number << 10;
+        } else if (unit.equals("MB")) {
+            return number << 20;
+        } else if (unit.equals("GB")) {
+            return number << 30;
+        }
+        throw new IllegalArgumentException("Unknown corpus " + name);
+    }
+
+    /**
+     * Returns the word of frequency rank {@code rank}: its rank in base 26
+     * spelled with letters, capitalized for one rank in seven so that case
+     * folding has work to do.
+     * 
+     * @param rank
+     *            the rank, from 0
+     * @return the word
+     */
+    private static String word(int rank) {
+        StringBuilder word = new StringBuilder();
+        int n = rank;
+        do {
+            word.append((char) ('a' + n % 26));
+            n = n / 26;
+        } while (n > 0);
+        if (rank % 7 == 3) {
+            word.setCharAt(0, Character.toUpperCase(word.charAt(0)));
+        }
+        return word.toString();
+    }
+
+    /**
+     * Writes a synthetic corpus of exactly {@code bytes} bytes to
+     * {@code file}.
+     * 
+     * @param file
+     *            the file to write
+     * @param bytes
+     *            its size
+     * @throws IOException
+     */
+    private static void generate(Path file, long bytes) throws IOException {
+        String[] words = new String[VOCABULARY];
+        double[] cumulative = new double[VOCABULARY];
+        double total = 0;
+        for (int rank = 0; rank < VOCABULARY; rank++) {
+            words[rank] = word(rank);
+            total += 1 / Math.pow(rank + 1, EXPONENT);
+            cumulative[rank] = total;
+        }
+
+        Random random = new Random(SEED);
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (BufferedWriter output = Files.newBufferedWriter(temp,
+                StandardCharsets.US_ASCII)) {
+            long written = 0;
+            int column = 0;
+            while (written < bytes) {
+                int rank = Arrays.binarySearch(cumulative,
+                        random.nextDouble() * total);
+                if (rank < 0) {
+                    rank = Math.min(-rank - 1, VOCABULARY - 1);
+                }
+                String word = words[rank];
+                column++;
+                String separator = " ";
+                if (column == WORDS_PER_LINE) {
+                    separator = ".\n";
+                    column = 0;
+                } else if (random.nextInt(10) == 0) {
+                    separator = ", ";
+                }
+                String piece = word + separator;
+                if (written + piece.length() > bytes) {
+                    piece = piece.substring(0, (int) (bytes - written));
+                }
+                output.write(piece);
+                written += piece.length();
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+}
@@ -1,10 +1,11 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Comparator;
 
 import components.map.Map;
 import components.map.Map.Pair;
 import components.map.Map1L;
-import components.set.Set;
-import components.set.Set1L;
 import components.simplereader.SimpleReader;
 import components.simplereader.SimpleReader1L;
 import components.simplewriter.SimpleWriter;
@@ -41,41 +42,51 @@ class StringLT implements Comparator<Pair<String, Integer>> {
     }
 }
 
-/**
- * Returns a -,+ integer, or zero as the first arg that is less than, greater,
- * or equal to than the second.
- * 
- */
-class IntegerLT implements Comparator<Pair<String, Integer>> {
+public class TagCloud {
 
     /**
-     * @param o1
-     * 
-     * @param o2
-     * 
-     * @returns -,+, or zero based on the comparison
-     * @ensures Integer with higher value is set first
+     * Characters that are considered separators unless the command line says
+     * otherwise.
      */
-    @Override
-    public int compare(Pair<String, Integer> o1, Pair<String, Integer> o2) {
-        return o2.value().compareTo(o1.value());
+    private static final String SEPARATORS = " \t,.-:;/\"!?_@#$%&*[]()";
 
-    }
+    /**
+     * Start of the key of the word-count indexes this program writes; the
+     * separators in use complete it.
+     */
+    private static final String INDEX_KEY = "TagCloud ";
 
-}
+    /**
+     * Markup of a tag cloud entry, up to its font size.
+     */
+    private static final byte[] SPAN_FONT = HtmlWriter
+            .fragment("<span style=\"cursor:default\" class=\"f");
 
-public class TagCloud {
+    /**
+     * Markup of a tag cloud entry, from its font size to its count.
+     */
+    private static final byte[] SPAN_COUNT = HtmlWriter
+            .fragment("\" title=\"count: ");
+
+    /**
+     * Markup of a tag cloud entry, from its count to its word.
+     */
+    private static final byte[] SPAN_WORD = HtmlWriter.fragment("\">");
+
+    /**
+     * Markup of a tag cloud entry, after its word.
+     */
+    private static final byte[] SPAN_END = HtmlWriter.fragment("</span>");
 
     /**
      * Makes a HTML page that pulls from a {@code Map} of words and creates a
      * tag cloud.
      * 
      * @param outFile
-     *            the output text file we are writing to with
-     *            {@code SimpleWriter}
-     * @param countedWords
-     *            the {@code Map} containing all the words and its occurrences
-     *            and its fontSize
+     *            the output file we are writing to with {@code HtmlWriter}
+     * @param fontSizes
+     *            the {@code Map} from each word in the tag cloud to its font
+     *            size
      * @param sortedWords
      *            the {@code SortingMachine} containing the {@code Pair}s that
      *            are sorted in alphabetical order
@@ -83,77 +94,50 @@ public class TagCloud {
      *            the input text file read in by {@code SimpleReader}
      * @param num
      *            the number of words to be generated in the tag cloud
+     * @throws IOException
      * @clears {@code sortedWords}
      * @ensures <pre>
-     * {@code HTML code table elements = entries(countedWords)}
+     * {@code HTML code table elements = entries(sortedWords)}
      * </pre>
      * 
      */
-    public static void tableMaker(SimpleWriter outFile,
-            Map<Pair<String, Integer>, Integer> countedWords,
+    public static void tableMaker(HtmlWriter outFile,
+            Map<String, Integer> fontSizes,
             SortingMachine<Pair<String, Integer>> sortedWords,
-            SimpleReader inFile, int num) {
+            SimpleReader inFile, int num) throws IOException {
 
         //WebPage Title
-        outFile.println("<html>");
-        outFile.println("<head> ");
-        outFile.println("<title>Top " + num + " words in " + inFile.name()
-                + "</title>");
-        outFile.println("<link href=" + '"' + "doc/tagcloud.css" + '"'
-                + " rel=" + '"' + "stylesheet" + '"' + " type =" + '"'
-                + "text/css" + '"' + ">");
-
-        outFile.println("</head>");
-        outFile.println("<body>");
+        outFile.raw("<html>").newline();
+        outFile.raw("<head> ").newline();
+        outFile.raw("<title>Top " + num + " words in ").text(inFile.name())
+                .raw("</title>").newline();
+        outFile.raw("<link href=" + '"' + "doc/tagcloud.css" + '"' + " rel="
+                + '"' + "stylesheet" + '"' + " type =" + '"' + "text/css"
+                + '"' + ">").newline();
+
+        outFile.raw("</head>").newline();
+        outFile.raw("<body>").newline();
         //Header
-        outFile.println("<h2>Top " + num + " words in " + inFile.name()
-                + "</h2>");
-        outFile.println("<hr>");
+        outFile.raw("<h2>Top " + num + " words in ").text(inFile.name())
+                .raw("</h2>").newline();
+        outFile.raw("<hr>").newline();
 
         //TODO: Make a box filled with the words based off their counts
-        outFile.println("<div class=\"cdiv\">");
+        outFile.raw("<div class=\"cdiv\">").newline();
 
-        outFile.println("<p class =" + '"' + "cbox" + '"' + ">");
+        outFile.raw("<p class =" + '"' + "cbox" + '"' + ">").newline();
         sortedWords.changeToExtractionMode();
         while (sortedWords.size() > 0) {
             Pair<String, Integer> pair = sortedWords.removeFirst();
-            outFile.println("<span style=" + '"' + "cursor:default" + '"'
-                    + " class=" + '"' + 'f'
-                    + countedWords.value(pair).toString() + '"' + " title="
-                    + '"' + "count: " + pair.value() + '"' + ">" + pair.key()
-                    + "</span>");
-
-        }
-        outFile.println("</p>");
-        outFile.println("</div>");
-        outFile.println("</body>");
-        outFile.println("</html>");
-
-    }
-
-    /**
-     * Generates the set of characters in the given {@code String} into the
-     * given {@code Set}.
-     * 
-     * @param str
-     *            the given {@code String}
-     * @param strSet
-     *            the {@code Set} to be replaced
-     * @replaces {@code strSet}
-     * @ensures <pre>
-     * {@code strSet = entries(str)}
-     * </pre>
-     */
-    private static void generateElements(String str, Set<Character> strSet) {
-        assert str != null : "Violation of: str is not null";
-        assert strSet != null : "Violation of: strSet is not null";
-
-        strSet.clear();
-        for (int i = 0; i < str.length() - 1; i++) {
-
-            strSet.add(str.charAt(i));
+            outFile.raw(SPAN_FONT).number(fontSizes.value(pair.key()))
+                    .raw(SPAN_COUNT).number(pair.value()).raw(SPAN_WORD)
+                    .text(pair.key()).raw(SPAN_END).newline();
 
         }
+        outFile.raw("</p>").newline();
+        outFile.raw("</div>").newline();
+        outFile.raw("</body>").newline();
+        outFile.raw("</html>").newline();
 
     }
 
@@ -169,7 +153,7 @@ public class TagCloud {
      * @param position
      *            the starting index
      * @param separators
-     *            the {@code Set} of separator characters
+     *            the {@code SeparatorSet} of separator characters
      * @return the first word or separator string found in {@code text} starting
      *         at index {@code position}
      * @requires <pre>
@@ -192,7 +176,7 @@ public class TagCloud {
      * </pre>
      */
     private static String nextWordOrSeparator(String text, int position,
-            Set<Character> separators) {
+            SeparatorSet separators) {
         assert text != null : "Violation of: text is not null";
         assert separators != null : "Violation of: separators is not null";
         assert 0 <= position : "Violation of: 0 <= position";
@@ -215,84 +199,118 @@ public class TagCloud {
     }
 
     /**
-     * Processing through the input textFile ({@code SimpleReader}) and assigns
-     * the word and its occurrences in a {@code Map}.
+     * Selects the {@code nWords} most frequent words of {@code words} in one
+     * pass, noting the smallest and largest count of all words on the way.
      * 
+     * @param words
+     *            the {@code Map} containing all the words and its occurrences
      * @param nWords
      *            the {@code integer} that is the number of words we want to
      *            show
-     * @param words
-     *            the {@code Map} containing all the words and its occurrences
-     * @return sortWords the {@code SortingMachine} that has a Pair that
-     *         contains the sorted words' name as key and the number of
-     *         occurrences as the value
-     * @clears {@code words}
-     * @ensures <pre>
-     * inFile's words = {@code Map}'s Key(words) and Value(occurrences)
-     * </pre>
+     * @return {@code TopWords} holding the top {@code nWords} words and the
+     *         smallest and largest count of all words
+     * @restores words
      */
-    public static SortingMachine<Pair<String, Integer>> wordProcess(
-            Map<String, Integer> words, int nWords) {
-
+    public static TopWords topWords(Map<String, Integer> words, int nWords) {
         assert words != null : "Violation of: words is not null";
 
-        Comparator<Map.Pair<String, Integer>> ss = new StringLT();
-        Comparator<Map.Pair<String, Integer>> si = new IntegerLT();
+        TopWords top = new TopWords(Math.max(nWords, 0));
+        for (Pair<String, Integer> pair : words) {
+            top.offer(pair.key(), pair.value());
+        }
+        return top;
+    }
 
-        SortingMachine<Map.Pair<String, Integer>> sortCount = new SortingMachine1L<Map.Pair<String, Integer>>(
-                si);
+    /**
+     * Puts the words selected by {@code top} in alphabetical order.
+     * 
+     * @param top
+     *            {@code TopWords} holding the words of the tag cloud
+     * @return sortWords the {@code SortingMachine} that has a Pair that
+     *         contains the words' name as key and the number of occurrences
+     *         as the value, sorted alphabetically
+     */
+    public static SortingMachine<Pair<String, Integer>> wordProcess(
+            TopWords top) {
+        Comparator<Map.Pair<String, Integer>> ss = new StringLT();
         SortingMachine<Map.Pair<String, Integer>> sortWords = new SortingMachine1L<Map.Pair<String, Integer>>(
                 ss);
-        //SortingMachine count sort
-        while (words.size() != 0) {
-            Pair<String, Integer> temp = words.removeAny();
-            sortCount.add(temp);
+        Map<String, Integer> selected = new Map1L<String, Integer>();
+        for (int i = 0; i < top.size(); i++) {
+            selected.add(top.word(i), top.count(i));
         }
-
-        sortCount.changeToExtractionMode();
-        //Sorting Machine alphabetical sort
-        int size = sortCount.size();
-        for (int i = 0; i < size && i < nWords; i++) {
-            Pair<String, Integer> temp = sortCount.removeFirst();
-            sortWords.add(temp);
+        while (selected.size() != 0) {
+            sortWords.add(selected.removeAny());
         }
-
         return sortWords;
+    }
+
+    /**
+     * Assigns the associated font inside the tagcloud.css file to each word
+     * selected by {@code top}, scaled between the smallest and largest count
+     * of all words.
+     * 
+     * @param top
+     *            {@code TopWords} holding the words of the tag cloud and the
+     *            smallest and largest count of all words
+     * @return fontMap the Map from each word of the tag cloud to its font size
+     */
+    public static Map<String, Integer> fontMap(TopWords top) {
+        Map<String, Integer> fontMap = new Map1L<String, Integer>();
 
+        int fMax = 37;
+        double maxCount = top.maxCount();
+        double minCount = top.minCount();
+        for (int i = 0; i < top.size(); i++) {
+            int fontSize = 0;
+            int valueCount = top.count(i);
+            if (valueCount > minCount) {
+                double font = Math
+                        .ceil((fMax * (valueCount - minCount) / (maxCount - minCount)));
+                fontSize = (int) font;
+                fontSize += 9;
+            }
+            fontMap.add(top.word(i), fontSize);
+        }
+        return fontMap;
     }
 
     /**
-     * Assigns the associated font inside the tagcloud.css file as the value to
-     * a key of map that contains the words and the count of its appearance.
+     * Counts the words of {@code inFile} into {@code words}, splitting words
+     * at the default separators and putting them in lower case.
      * 
      * @param inFile
-     *            the file that outputs to HTML
+     *            the input text file
      * @param words
-     *            the {@code Map} that contains the words' name and number of
+     *            the {@code Map} that gets the words' name and number of
      *            occurrences
-     * @restores words
-     * @return fontMap the Map that contains a key of map with words' name and
-     *         counts and key with its font size reference.
+     * @replaces words
      */
-    public static Map<Pair<String, Integer>, Integer> fontMap(
-            SimpleReader inFile, Map<String, Integer> words) {
-        Map<Pair<String, Integer>, Integer> fontMap = new Map1L<Pair<String, Integer>, Integer>();
-        Comparator<Map.Pair<String, Integer>> sorter = new IntegerLT();
-        SortingMachine<Map.Pair<String, Integer>> sortCount = new SortingMachine1L<Map.Pair<String, Integer>>(
-                sorter);
+    public static void countWords(SimpleReader inFile,
+            Map<String, Integer> words) {
+        countWords(inFile, words, new SeparatorSet(SEPARATORS));
+    }
 
+    /**
+     * Counts the words of {@code inFile} into {@code words}, splitting words
+     * at the given separators and putting them in lower case.
+     * 
+     * @param inFile
+     *            the input text file
+     * @param words
+     *            the {@code Map} that gets the words' name and number of
+     *            occurrences
+     * @param separators
+     *            the {@code SeparatorSet} of characters that separate words
+     * @replaces words
+     */
+    public static void countWords(SimpleReader inFile,
+            Map<String, Integer> words, SeparatorSet separators) {
         words.clear();
 
         //Starting position
         int position = 0;
 
-        Set<Character> exclusionSet = new Set1L<Character>();
-
-        //Characters that are considering separators
-        String exclusionCharacters = " \t,.-:;/\"!?_@#$%&*[]()";
-
-        generateElements(exclusionCharacters, exclusionSet);
-
         //Loops until all lines have been read from input text file
         while (!inFile.atEOS()) {
 
@@ -304,9 +322,10 @@ public class TagCloud {
             //Loops through a line from the text file until all characters have
             //been considered
             while (position < line.length()) {
-                String token = nextWordOrSeparator(line, position, exclusionSet);
+                String token = nextWordOrSeparator(line, position,
+                        separators);
                 //if the token is a word
-                if (!exclusionSet.contains(token.charAt(0))) {
+                if (!separators.contains(token.charAt(0))) {
                     //if the map does not have the token word, add to Map
                     if (!words.hasKey(token)) {
                         words.add(token, 1);
@@ -325,74 +344,189 @@ public class TagCloud {
             }
 
         }
+    }
 
-        int fMax = 37;
-        double maxCount = 0;
-        double minCount = Integer.MAX_VALUE;
-        Map<String, Integer> temp = words.newInstance();
-        while (words.size() != 0) {
-            Pair<String, Integer> removed = words.removeAny();
-            double valueRemoved = removed.value().doubleValue();
-            if (valueRemoved > maxCount) {
-                maxCount = valueRemoved;
-            } else if (valueRemoved < minCount) {
-                minCount = valueRemoved;
-            }
-            sortCount.add(removed);
-            temp.add(removed.key(), removed.value());
-        }
-        words.transferFrom(temp);
-        sortCount.changeToExtractionMode();
-        while (sortCount.size() > 0) {
-            int fontSize = 0;
-            Pair<String, Integer> removedCount = sortCount.removeFirst();
-            int valueCount = removedCount.value();
-            if (valueCount > minCount) {
-                double font = Math
-                        .ceil((fMax * (valueCount - minCount) / (maxCount - minCount)));
-                fontSize = (int) font;
-                fontSize += 9;
+    /**
+     * Counts the n-grams of {@code inFile} into {@code counter}, splitting
+     * words at the given separators and putting them in lower case. Phrases
+     * run on from one line to the next.
+     * 
+     * @param inFile
+     *            the input text file
+     * @param counter
+     *            the {@code NGramCounter} to count the n-grams in
+     * @param separators
+     *            the {@code SeparatorSet} of characters that separate words
+     * @updates counter
+     */
+    public static void countNGrams(SimpleReader inFile, NGramCounter counter,
+            SeparatorSet separators) {
+        while (!inFile.atEOS()) {
+            String line = inFile.nextLine().toLowerCase();
+            int position = 0;
+            while (position < line.length()) {
+                String token = nextWordOrSeparator(line, position,
+                        separators);
+                if (!separators.contains(token.charAt(0))) {
+                    counter.add(token);
+                }
+                position += token.length();
             }
-            fontMap.add(removedCount, fontSize);
         }
-        return fontMap;
+    }
 
+    /**
+     * Writes the word-count index of the file at {@code source} to
+     * {@code index}.
+     * 
+     * @param index
+     *            path of the index
+     * @param source
+     *            path of the file that was counted
+     * @param separators
+     *            the characters the words were split at
+     * @param words
+     *            the {@code Map} of every word in the file and its count
+     * @throws IOException
+     */
+    private static void writeIndex(Path index, Path source, String separators,
+            Map<String, Integer> words) throws IOException {
+        String[] keys = new String[words.size()];
+        int[] counts = new int[words.size()];
+        int size = 0;
+        for (Pair<String, Integer> pair : words) {
+            keys[size] = pair.key();
+            counts[size] = pair.value();
+            size++;
+        }
+        WordIndex.write(index, source, INDEX_KEY + separators, keys, counts,
+                size);
     }
 
     /**
      * Main method.
      * 
      * @param args
-     *            the command line arguments; unused here
+     *            the command line arguments; {@code --separators=CHARS} sets
+     *            the characters that separate words, {@code --index[=PATH]}
+     *            loads the word counts from the index at PATH (by default the
+     *            input file with {@code .idx} added) and writes it if it is
+     *            missing or out of date, {@code --report=PATH} writes a JSON
+     *            report of the time and memory each phase of the run took,
+     *            {@code --ngram=N} makes a cloud of the most frequent phrases
+     *            of N words instead of single words
+     * @throws IOException
      */
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
         SimpleWriter out = new SimpleWriter1L();
         SimpleReader in = new SimpleReader1L();
 
+        String separators = SEPARATORS;
+        boolean useIndex = false;
+        String indexLocation = null;
+        String reportLocation = null;
+        int ngram = 1;
+        for (String arg : args) {
+            if (arg.startsWith("--separators=")) {
+                separators = arg.substring("--separators=".length());
+            } else if (arg.equals("--index")) {
+                useIndex = true;
+            } else if (arg.startsWith("--index=")) {
+                useIndex = true;
+                indexLocation = arg.substring("--index=".length());
+            } else if (arg.startsWith("--report=")) {
+                reportLocation = arg.substring("--report=".length());
+            } else if (arg.startsWith("--ngram=")) {
+                ngram = Integer.parseInt(arg.substring("--ngram=".length()));
+            } else {
+                out.println("Unknown option " + arg);
+                in.close();
+                out.close();
+                return;
+            }
+        }
+        if (ngram > 1 && useIndex) {
+            out.println("--ngram cannot be combined with --index");
+            in.close();
+            out.close();
+            return;
+        }
+
         Map<String, Integer> words = new Map1L<String, Integer>();
 
         out.print("Please enter the name of the input file: ");
         //Reads in file
-        SimpleReader inFile = new SimpleReader1L(in.nextLine());
+        String inputName = in.nextLine();
+        SimpleReader inFile = new SimpleReader1L(inputName);
 
         out.print("Please enter the name of the output file: ");
         //Creates output file
-        SimpleWriter outFile = new SimpleWriter1L(in.nextLine());
+        HtmlWriter outFile = new HtmlWriter(Paths.get(in.nextLine()));
 
         //Asks user for the number of words to be generated in the tag cloud
         out.print("Please enter a positive number of words to be generated in "
                 + "the tag cloud: ");
         int num = in.nextInteger();
 
-        Map<Pair<String, Integer>, Integer> fontMap = fontMap(inFile, words);
-        SortingMachine<Pair<String, Integer>> wordProcessed = wordProcess(
-                words, num);
+        RunReport report = new RunReport("TagCloud", inputName);
+        report.start(RunReport.COUNT);
+        TopWords top;
+        if (ngram > 1) {
+            NGramCounter counter = new NGramCounter(ngram);
+            countNGrams(inFile, counter, new SeparatorSet(separators));
+            report.stop();
+            report.set(RunReport.TOKENS, counter.total());
+            report.set(RunReport.DISTINCT_WORDS, counter.size());
+
+            report.start(RunReport.SORT);
+            top = counter.top(num);
+        } else {
+            Path source = Paths.get(inputName);
+            Path index = null;
+            WordIndex indexed = null;
+            if (useIndex) {
+                if (indexLocation == null) {
+                    index = WordIndex.defaultPath(source);
+                } else {
+                    index = Paths.get(indexLocation);
+                }
+                indexed = WordIndex.load(index, source, INDEX_KEY + separators);
+            }
+            if (indexed != null) {
+                for (int i = 0; i < indexed.size(); i++) {
+                    words.add(indexed.word(i), indexed.count(i));
+                }
+            } else {
+                countWords(inFile, words, new SeparatorSet(separators));
+                if (useIndex) {
+                    writeIndex(index, source, separators, words);
+                }
+            }
+            report.stop();
+            long tokens = 0;
+            for (Pair<String, Integer> pair : words) {
+                tokens += pair.value();
+            }
+            report.set(RunReport.TOKENS, tokens);
+            report.set(RunReport.DISTINCT_WORDS, words.size());
+
+            report.start(RunReport.SORT);
+            top = topWords(words, num);
+        }
+        SortingMachine<Pair<String, Integer>> wordProcessed = wordProcess(top);
+        report.start(RunReport.FONT_SIZING);
+        Map<String, Integer> fontMap = fontMap(top);
+        report.start(RunReport.RENDER);
         tableMaker(outFile, fontMap, wordProcessed, inFile, num);
+        outFile.close();
+        report.stop();
 
         in.close();
         out.close();
         inFile.close();
-        outFile.close();
+        if (reportLocation != null) {
+            report.write(Paths.get(reportLocation));
+        }
 
     }
 
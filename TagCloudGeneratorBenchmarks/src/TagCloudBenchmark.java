@@ -0,0 +1,100 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import components.map.Map;
+import components.map.Map1L;
+import components.simplereader.SimpleReader;
+import components.simplereader.SimpleReader1L;
+
+/**
+ * Benchmarks of the OSU-components tag cloud pipeline in {@code TagCloud}.
+ * 
+ * @author Andrew Cheng and Stacey Frye
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TagCloudBenchmark {
+
+    /**
+     * Name of the input corpus.
+     */
+    @Param({ "gettysburg", "1MB", "16MB", "256MB", "1GB" })
+    public String corpus;
+
+    /**
+     * Number of words in the tag cloud.
+     */
+    @Param({ "100" })
+    public int nWords;
+
+    /**
+     * The corpus file.
+     */
+    private Path file;
+
+    /**
+     * Counts of every word in the corpus, filled in once.
+     */
+    private Map<String, Integer> counted;
+
+    /**
+     * Finds or makes the corpus and counts it once.
+     * 
+     * @throws IOException
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        this.file = CorpusGenerator.corpus(this.corpus);
+        this.counted = new Map1L<String, Integer>();
+        SimpleReader inFile = new SimpleReader1L(this.file.toString());
+        TagCloud.countWords(inFile, this.counted);
+        inFile.close();
+    }
+
+    /**
+     * Reads and counts the whole corpus.
+     * 
+     * @return the counts
+     */
+    @Benchmark
+    public Map<String, Integer> countWords() {
+        SimpleReader inFile = new SimpleReader1L(this.file.toString());
+        Map<String, Integer> words = new Map1L<String, Integer>();
+        TagCloud.countWords(inFile, words);
+        inFile.close();
+        return words;
+    }
+
+    /**
+     * Selects the top N words, sorts them alphabetically and assigns their
+     * font sizes.
+     * 
+     * @param blackhole
+     *            sink for the results
+     */
+    @Benchmark
+    public void cloud(Blackhole blackhole) {
+        TopWords top = TagCloud.topWords(this.counted, this.nWords);
+        blackhole.consume(TagCloud.wordProcess(top));
+        blackhole.consume(TagCloud.fontMap(top));
+    }
+}
@@ -0,0 +1,263 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves tag clouds over HTTP on the loopback interface, so one JVM can
+ * answer many requests without starting up, prompting or recounting each
+ * time. {@code GET /cloud?file=PATH&n=N} returns the tag cloud of the top N
+ * words of the file at PATH, which is resolved against a root directory and
+ * must not lead outside it. Word counts come from a {@code CountCache}, so
+ * asking for another N, or for the same cloud again, does not read the file
+ * unless it has changed.
+ * 
+ * @author Andrew Cheng and Stacey Frye
+ */
+public final class CloudServer {
+
+    /**
+     * Path the tag clouds are served at.
+     */
+    private static final String CLOUD_PATH = "/cloud";
+
+    /**
+     * Number of words in a cloud when the request does not say.
+     */
+    private static final int DEFAULT_WORDS = 100;
+
+    /**
+     * The HTTP server.
+     */
+    private final HttpServer server;
+
+    /**
+     * Threads handling requests.
+     */
+    private final ExecutorService pool;
+
+    /**
+     * Word counts of the files asked for.
+     */
+    private final CountCache cache;
+
+    /**
+     * Real path of the directory files are served from.
+     */
+    private final Path root;
+
+    /**
+     * Constructor; binds the port but does not serve until {@code start}.
+     * 
+     * @param root
+     *            directory files are served from
+     * @param port
+     *            port to listen on, or 0 for any free port
+     * @param threads
+     *            number of threads handling requests
+     * @param cacheBytes
+     *            about how many bytes of word counts to cache
+     * @throws IOException
+     */
+    public CloudServer(Path root, int port, int threads, long cacheBytes)
+            throws IOException {
+        assert root != null : "Violation of: root is not null";
+        assert threads > 0 : "Violation of: threads > 0";
+
+        this.root = root.toRealPath();
+        if (!Files.isDirectory(this.root)) {
+            throw new NotDirectoryException(root.toString());
+        }
+        this.cache = new CountCache(cacheBytes);
+        this.pool = Executors.newFixedThreadPool(threads);
+        this.server = HttpServer.create(new InetSocketAddress(
+                InetAddress.getLoopbackAddress(), port), 0);
+        this.server.setExecutor(this.pool);
+        this.server.createContext(CLOUD_PATH, this::cloud);
+    }
+
+    /**
+     * Starts serving requests in the background.
+     */
+    public void start() {
+        this.server.start();
+    }
+
+    /**
+     * Stops serving, waiting at most {@code delaySeconds} seconds for
+     * requests in progress to finish.
+     * 
+     * @param delaySeconds
+     *            most seconds to wait
+     */
+    public void stop(int delaySeconds) {
+        this.server.stop(delaySeconds);
+        this.pool.shutdown();
+    }
+
+    /**
+     * Returns the port being listened on.
+     * 
+     * @return the port
+     */
+    public int port() {
+        return this.server.getAddress().getPort();
+    }
+
+    /**
+     * Returns the cache of word counts.
+     * 
+     * @return the cache
+     */
+    public CountCache cache() {
+        return this.cache;
+    }
+
+    /**
+     * Handles {@code GET /cloud?file=PATH&n=N}.
+     * 
+     * @param exchange
+     *            the request and its response
+     * @throws IOException
+     */
+    private void cloud(HttpExchange exchange) throws IOException {
+        try {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                exchange.getResponseHeaders().set("Allow", "GET");
+                reply(exchange, 405, "Only GET is supported");
+                return;
+            }
+            Map<String, String> query = parseQuery(exchange.getRequestURI()
+                    .getRawQuery());
+            String fileLocation = query.get("file");
+            if (fileLocation == null || fileLocation.isEmpty()) {
+                reply(exchange, 400, "Missing file parameter");
+                return;
+            }
+            int nWords = DEFAULT_WORDS;
+            if (query.containsKey("n")) {
+                try {
+                    nWords = Integer.parseInt(query.get("n"));
+                } catch (NumberFormatException e) {
+                    nWords = -1;
+                }
+                if (nWords <= 0) {
+                    reply(exchange, 400, "n must be a positive integer");
+                    return;
+                }
+            }
+            Path file = this.root.resolve(fileLocation).normalize();
+            if (!file.startsWith(this.root)) {
+                reply(exchange, 403, "Outside the served directory "
+                        + fileLocation);
+                return;
+            }
+            if (!Files.isRegularFile(file)) {
+                reply(exchange, 404, "No such file " + fileLocation);
+                return;
+            }
+            if (!file.toRealPath().startsWith(this.root)) {
+                reply(exchange, 403, "Outside the served directory "
+                        + fileLocation);
+                return;
+            }
+
+            WordCountTable counts = this.cache.counts(file);
+            if (counts.size() == 0) {
+                reply(exchange, 422, "No words in " + fileLocation);
+                return;
+            }
+            TreeMap<String, Integer> sortWords = new TreeMap<String, Integer>();
+            Queue<Integer> fontSizes = TagCloudUsingJava.wordFontSort(counts,
+                    nWords, sortWords);
+            ByteArrayOutputStream page = new ByteArrayOutputStream();
+            try (HtmlWriter output = new HtmlWriter(Channels
+                    .newChannel(page))) {
+                TagCloudUsingJava.createBody(fontSizes, sortWords, output,
+                        fileLocation, nWords);
+            }
+            exchange.getResponseHeaders().set("Content-Type",
+                    "text/html; charset=utf-8");
+            exchange.sendResponseHeaders(200, page.size());
+            try (OutputStream body = exchange.getResponseBody()) {
+                page.writeTo(body);
+            }
+        } catch (IllegalArgumentException e) {
+            reply(exchange, 400, "Bad request " + e.getMessage());
+        } catch (NoSuchFileException e) {
+            reply(exchange, 404, "No such file " + e.getFile());
+        } catch (IOException e) {
+            System.err.println("Error serving " + exchange.getRequestURI()
+                    + " " + e);
+            reply(exchange, 500, "Error reading file");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Sends a plain-text response.
+     * 
+     * @param exchange
+     *            the request and its response
+     * @param status
+     *            the HTTP status code
+     * @param message
+     *            the response body
+     * @throws IOException
+     */
+    private static void reply(HttpExchange exchange, int status,
+            String message) throws IOException {
+        byte[] body = (message + "\n").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type",
+                "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * Splits a raw query string into decoded names and values. A name given
+     * more than once keeps its last value.
+     * 
+     * @param rawQuery
+     *            the query, still percent-encoded, or null
+     * @return {@code Map} from each name to its value
+     */
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<String, String>();
+        if (rawQuery == null) {
+            return query;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = pair;
+            String value = "";
+            if (equals >= 0) {
+                name = pair.substring(0, equals);
+                value = pair.substring(equals + 1);
+            }
+            query.put(URLDecoder.decode(name, StandardCharsets.UTF_8),
+                    URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return query;
+    }
+}
@@ -0,0 +1,150 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Word counter that many threads can count into at once. Each thread counts
+ * into a {@code WordCountTable} of its own, so counting threads never wait
+ * for each other however many there are; {@code snapshot} merges the tables
+ * when the counts are wanted.
+ * 
+ * <p>
+ * Every table has a lock that only its own thread takes while counting, so
+ * taking it costs no more than an uncontended compare-and-set. A snapshot
+ * takes every lock at once before merging, so it holds exactly the words
+ * counted before some single moment, never part of a word still being added.
+ * </p>
+ * 
+ * @author Andrew Cheng and Stacey Frye
+ */
+public final class ConcurrentWordCounter implements WordSink {
+
+    /**
+     * The table of one counting thread.
+     */
+    private static final class Shard {
+
+        /**
+         * Held while the table is being changed or read.
+         */
+        private final ReentrantLock lock = new ReentrantLock();
+
+        /**
+         * The counts of the thread.
+         */
+        private final WordCountTable table = new WordCountTable();
+    }
+
+    /**
+     * Every shard made so far, in the order their threads first counted; also
+     * locked while a shard is added or a snapshot is taken.
+     */
+    private final List<Shard> shards = new ArrayList<Shard>();
+
+    /**
+     * The shard of the current thread.
+     */
+    private final ThreadLocal<Shard> local = ThreadLocal.withInitial(() -> {
+        Shard shard = new Shard();
+        synchronized (this.shards) {
+            this.shards.add(shard);
+        }
+        return shard;
+    });
+
+    /**
+     * Adds {@code count} to the count of {@code word[0, length)}.
+     * 
+     * @param word
+     *            buffer holding the word
+     * @param length
+     *            number of characters in the word
+     * @param hash
+     *            {@code WordCountTable.hash(word, length)}
+     * @param count
+     *            amount to add
+     */
+    @Override
+    public void add(char[] word, int length, int hash, int count) {
+        Shard shard = this.local.get();
+        shard.lock.lock();
+        try {
+            shard.table.add(word, length, hash, count);
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    /**
+     * Adds {@code count} to the count of {@code word}.
+     * 
+     * @param word
+     *            the word
+     * @param count
+     *            amount to add
+     */
+    @Override
+    public void add(String word, int count) {
+        Shard shard = this.local.get();
+        shard.lock.lock();
+        try {
+            shard.table.add(word, count);
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    /**
+     * Adds every count in {@code other}, as one step that a snapshot sees
+     * either all or none of.
+     * 
+     * @param other
+     *            the table to add
+     */
+    public void addAll(WordCountTable other) {
+        Shard shard = this.local.get();
+        shard.lock.lock();
+        try {
+            shard.table.addAll(other);
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of threads that have counted.
+     * 
+     * @return the number of shards
+     */
+    public int shards() {
+        synchronized (this.shards) {
+            return this.shards.size();
+        }
+    }
+
+    /**
+     * Returns the counts of every word counted before the snapshot was taken,
+     * by all threads. Counting threads wait only while the tables are merged;
+     * the table returned is the caller's own.
+     * 
+     * @return {@code WordCountTable} of every word and its count
+     */
+    public WordCountTable snapshot() {
+        synchronized (this.shards) {
+            for (Shard shard : this.shards) {
+                shard.lock.lock();
+            }
+            try {
+                WordCountTable total = new WordCountTable();
+                for (Shard shard : this.shards) {
+                    total.addAll(shard.table);
+                }
+                return total;
+            } finally {
+                for (Shard shard : this.shards) {
+                    shard.lock.unlock();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,281 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Iterator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Least-recently-used cache of the word counts of files, holding at most
+ * about {@code capacityBytes} bytes of counts. A file's counts are kept with
+ * the modification time they were read at; once the file changes they are
+ * counted again. Safe to use from several threads; files are counted outside
+ * the lock, so a slow count does not hold up requests for other files, and
+ * requests for a file that is being counted wait for that count instead of
+ * starting another.
+ * 
+ * @author Andrew Cheng and Stacey Frye
+ */
+public final class CountCache {
+
+    /**
+     * Estimated bytes of a {@code String} apart from its characters.
+     */
+    private static final int STRING_OVERHEAD = 56;
+
+    /**
+     * Estimated bytes of one slot of a {@code WordCountTable}: a reference,
+     * a hash and a count.
+     */
+    private static final int SLOT_BYTES = 16;
+
+    /**
+     * Counts of one file as of one modification time.
+     */
+    private static final class Counts {
+
+        /**
+         * Modification time of the file when it was counted.
+         */
+        private final FileTime modified;
+
+        /**
+         * The counts.
+         */
+        private final WordCountTable table;
+
+        /**
+         * Estimated size of {@code table} in bytes.
+         */
+        private final long bytes;
+
+        /**
+         * Constructor.
+         * 
+         * @param modified
+         *            modification time of the file when it was counted
+         * @param table
+         *            the counts
+         */
+        Counts(FileTime modified, WordCountTable table) {
+            this.modified = modified;
+            this.table = table;
+            this.bytes = sizeOf(table);
+        }
+    }
+
+    /**
+     * Count of one file as of one modification time, under way.
+     */
+    private static final class Counting extends FutureTask<Counts> {
+
+        /**
+         * Modification time of the file being counted.
+         */
+        private final FileTime modified;
+
+        /**
+         * Constructor.
+         * 
+         * @param file
+         *            path of the file
+         * @param modified
+         *            modification time of the file
+         */
+        Counting(Path file, FileTime modified) {
+            super(() -> new Counts(modified, TagCloudUsingJava
+                    .countWords(file)));
+            this.modified = modified;
+        }
+    }
+
+    /**
+     * Cached counts by absolute path, least recently used first.
+     */
+    private final LinkedHashMap<Path, Counts> entries = new LinkedHashMap<Path, Counts>(
+            16, 0.75f, true);
+
+    /**
+     * Counts under way by absolute path.
+     */
+    private final Map<Path, Counting> pending = new HashMap<Path, Counting>();
+
+    /**
+     * Most bytes of counts to hold.
+     */
+    private final long capacityBytes;
+
+    /**
+     * Estimated bytes of counts held.
+     */
+    private long usedBytes = 0;
+
+    /**
+     * Number of lookups answered from the cache or from a count already
+     * under way.
+     */
+    private long hits = 0;
+
+    /**
+     * Number of lookups that had to count the file.
+     */
+    private long misses = 0;
+
+    /**
+     * Constructor.
+     * 
+     * @param capacityBytes
+     *            about how many bytes of counts to hold
+     */
+    public CountCache(long capacityBytes) {
+        assert capacityBytes >= 0 : "Violation of: capacityBytes >= 0";
+        this.capacityBytes = capacityBytes;
+    }
+
+    /**
+     * Returns the word counts of {@code file}, counting it only if it is not
+     * cached as of its current modification time. If another thread is
+     * already counting it as of that time, waits for that count. The table
+     * returned must not be changed.
+     * 
+     * @param file
+     *            path of the file
+     * @return {@code WordCountTable} of all words in the file and their counts
+     * @throws IOException
+     */
+    public WordCountTable counts(Path file) throws IOException {
+        Path key = file.toAbsolutePath().normalize();
+        FileTime modified = Files.getLastModifiedTime(key);
+        Counting counting;
+        boolean counter = false;
+        synchronized (this) {
+            Counts cached = this.entries.get(key);
+            if (cached != null && cached.modified.equals(modified)) {
+                this.hits++;
+                return cached.table;
+            }
+            counting = this.pending.get(key);
+            if (counting != null && counting.modified.equals(modified)) {
+                this.hits++;
+            } else {
+                this.misses++;
+                counting = new Counting(key, modified);
+                this.pending.put(key, counting);
+                counter = true;
+            }
+        }
+        if (!counter) {
+            return await(counting, key).table;
+        }
+        counting.run();
+        Counts counted = null;
+        try {
+            counted = await(counting, key);
+        } finally {
+            synchronized (this) {
+                this.pending.remove(key, counting);
+                if (counted != null) {
+                    Counts old = this.entries.remove(key);
+                    if (old != null) {
+                        this.usedBytes -= old.bytes;
+                    }
+                    if (counted.bytes <= this.capacityBytes) {
+                        this.entries.put(key, counted);
+                        this.usedBytes += counted.bytes;
+                        this.evict();
+                    }
+                }
+            }
+        }
+        return counted.table;
+    }
+
+    /**
+     * Returns the number of lookups answered from the cache or from a count
+     * already under way.
+     * 
+     * @return the number of hits
+     */
+    public synchronized long hits() {
+        return this.hits;
+    }
+
+    /**
+     * Returns the number of lookups that had to count the file.
+     * 
+     * @return the number of misses
+     */
+    public synchronized long misses() {
+        return this.misses;
+    }
+
+    /**
+     * Returns the estimated bytes of counts held.
+     * 
+     * @return the bytes used
+     */
+    public synchronized long usedBytes() {
+        return this.usedBytes;
+    }
+
+    /**
+     * Waits for {@code counting} to finish and returns its counts.
+     * 
+     * @param counting
+     *            the count under way
+     * @param file
+     *            path of the file being counted
+     * @return the counts of the file
+     * @throws IOException
+     *             if the file could not be read, or the thread was
+     *             interrupted while waiting
+     */
+    private static Counts await(Counting counting, Path file)
+            throws IOException {
+        try {
+            return counting.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Error counting " + file, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while counting " + file, e);
+        }
+    }
+
+    /**
+     * Drops least recently used counts until the cache fits its capacity.
+     */
+    private void evict() {
+        Iterator<Map.Entry<Path, Counts>> it = this.entries.entrySet()
+                .iterator();
+        while (this.usedBytes > this.capacityBytes && it.hasNext()) {
+            this.usedBytes -= it.next().getValue().bytes;
+            it.remove();
+        }
+    }
+
+    /**
+     * Estimates the heap used by {@code table}.
+     * 
+     * @param table
+     *            the counts
+     * @return its estimated size in bytes
+     */
+    private static long sizeOf(WordCountTable table) {
+        long bytes = (long) table.capacity() * SLOT_BYTES;
+        for (int i = 0; i < table.capacity(); i++) {
+            String word = table.wordAt(i);
+            if (word != null) {
+                bytes += STRING_OVERHEAD + 2L * word.length();
+            }
+        }
+        return bytes;
+    }
+}
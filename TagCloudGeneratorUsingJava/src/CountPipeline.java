@@ -0,0 +1,297 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counts the words of a file in three overlapping stages, so that waiting for
+ * the disk and splitting words happen at the same time. A reader stage fills
+ * large blocks of bytes, several tokenizer stages count whole blocks into
+ * one shared {@code ConcurrentWordCounter}, and the counts are a snapshot of
+ * it once every block is counted.
+ * 
+ * <p>
+ * Blocks come from a fixed pool and go back to it once counted, so the reader
+ * waits whenever the tokenizers fall behind and memory stays bounded however
+ * large the file is. Each block is cut just after its last separator byte and
+ * the bytes after it start the next block, so no word or UTF-8 character is
+ * ever split between two tokenizers.
+ * </p>
+ * 
+ * @author Andrew Cheng and Stacey Frye
+ */
+public final class CountPipeline {
+
+    /**
+     * Default number of bytes in a block.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 22;
+
+    /**
+     * Blocks in the pool for each tokenizer: one being counted, one waiting.
+     */
+    private static final int BLOCKS_PER_TOKENIZER = 2;
+
+    /**
+     * How long the reader waits for a free block before checking whether a
+     * tokenizer has failed, in milliseconds.
+     */
+    private static final long POLL_MILLIS = 100;
+
+    /**
+     * Marks the end of the input for a tokenizer.
+     */
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+    /**
+     * Number of characters covered by the separator table.
+     */
+    private static final int TABLE_SIZE = 128;
+
+    /**
+     * Characters that separate words; all ASCII.
+     */
+    private final String separators;
+
+    /**
+     * {@code separator[b]} is true if ASCII byte {@code b} ends a word.
+     */
+    private final boolean[] separator = new boolean[TABLE_SIZE];
+
+    /**
+     * Number of tokenizer stages.
+     */
+    private final int tokenizers;
+
+    /**
+     * Number of bytes in a block.
+     */
+    private final int blockSize;
+
+    /**
+     * Constructor.
+     * 
+     * @param separators
+     *            the characters that separate words; all must be ASCII
+     * @param tokenizers
+     *            the number of tokenizer stages
+     * @param blockSize
+     *            the number of bytes in a block
+     */
+    public CountPipeline(String separators, int tokenizers, int blockSize) {
+        assert tokenizers > 0 : "Violation of: tokenizers > 0";
+        assert blockSize > 0 : "Violation of: blockSize > 0";
+
+        for (int i = 0; i < separators.length(); i++) {
+            char c = separators.charAt(i);
+            assert c < TABLE_SIZE : "Violation of: separators are ASCII";
+            this.separator[c] = true;
+        }
+        this.separators = separators;
+        this.tokenizers = tokenizers;
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Counts all words of the UTF-8 file at {@code file}.
+     * 
+     * @param file
+     *            path of the input file
+     * @return {@code WordCountTable} containing all words and their counts
+     *         from the file
+     * @throws IOException
+     */
+    public WordCountTable count(Path file) throws IOException {
+        int blocks = this.tokenizers * BLOCKS_PER_TOKENIZER;
+        BlockingQueue<ByteBuffer> free = new ArrayBlockingQueue<ByteBuffer>(
+                blocks);
+        BlockingQueue<ByteBuffer> full = new ArrayBlockingQueue<ByteBuffer>(
+                blocks + this.tokenizers);
+        for (int i = 0; i < blocks; i++) {
+            free.add(ByteBuffer.allocate(this.blockSize));
+        }
+
+        ConcurrentWordCounter counter = new ConcurrentWordCounter();
+        ExecutorService pool = Executors.newFixedThreadPool(this.tokenizers);
+        List<Future<?>> tokenized = new ArrayList<Future<?>>();
+        for (int i = 0; i < this.tokenizers; i++) {
+            tokenized.add(pool.submit(() -> {
+                this.tokenize(free, full, counter);
+                return null;
+            }));
+        }
+        try {
+            try (FileChannel channel = FileChannel.open(file,
+                    StandardOpenOption.READ)) {
+                this.read(channel, free, full, tokenized);
+            } finally {
+                for (int i = 0; i < this.tokenizers; i++) {
+                    full.offer(END);
+                }
+            }
+            awaitAll(tokenized);
+            return counter.snapshot();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while counting " + file, e);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Reader stage: fills blocks from {@code channel} and queues them for the
+     * tokenizers, each cut just after its last separator.
+     * 
+     * @param channel
+     *            the file being counted
+     * @param free
+     *            blocks ready to be filled
+     * @param full
+     *            blocks ready to be counted
+     * @param tokenized
+     *            results of the tokenizer stages, to notice if one fails
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    private void read(FileChannel channel, BlockingQueue<ByteBuffer> free,
+            BlockingQueue<ByteBuffer> full,
+            List<Future<?>> tokenized) throws IOException,
+            InterruptedException {
+        ByteBuffer block = takeFree(free, tokenized);
+        while (channel.read(block) >= 0) {
+            if (block.hasRemaining()) {
+                continue;
+            }
+            int cut = this.lastSeparator(block);
+            ByteBuffer next;
+            if (cut < 0) {
+                //A word longer than the block: carry on in a bigger block,
+                //which takes this one's place in the pool
+                next = ByteBuffer.allocate(block.capacity() * 2);
+                block.flip();
+                next.put(block);
+            } else {
+                next = takeFree(free, tokenized);
+                if (next.capacity() < block.capacity()) {
+                    next = ByteBuffer.allocate(block.capacity());
+                }
+                block.flip();
+                block.position(cut);
+                next.put(block);
+                block.position(0);
+                block.limit(cut);
+                full.put(block);
+            }
+            block = next;
+        }
+        if (block.position() > 0) {
+            block.flip();
+            full.put(block);
+        }
+    }
+
+    /**
+     * Takes a block from {@code free}, waiting until one is returned, unless
+     * a tokenizer stops early because it failed.
+     * 
+     * @param free
+     *            blocks ready to be filled
+     * @param tokenized
+     *            results of the tokenizer stages
+     * @return an empty block
+     * @throws IOException
+     *             if a tokenizer failed
+     * @throws InterruptedException
+     */
+    private static ByteBuffer takeFree(BlockingQueue<ByteBuffer> free,
+            List<Future<?>> tokenized) throws IOException,
+            InterruptedException {
+        ByteBuffer block = free.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+        while (block == null) {
+            for (Future<?> result : tokenized) {
+                if (result.isDone()) {
+                    throw new IOException("A tokenizer stopped early");
+                }
+            }
+            block = free.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        return block;
+    }
+
+    /**
+     * Returns the position just after the last separator in the filled part
+     * of {@code block}, or -1 if it has no separator.
+     * 
+     * @param block
+     *            a block being filled
+     * @return where to cut the block
+     */
+    private int lastSeparator(ByteBuffer block) {
+        byte[] bytes = block.array();
+        for (int i = block.position() - 1; i >= 0; i--) {
+            int b = bytes[i];
+            if (b >= 0 && this.separator[b]) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Tokenizer stage: counts whole blocks into {@code counter} until the end
+     * of the input, returning each block to the pool once counted.
+     * 
+     * @param free
+     *            blocks ready to be filled
+     * @param full
+     *            blocks ready to be counted
+     * @param counter
+     *            the counts shared by every tokenizer stage
+     * @throws InterruptedException
+     */
+    private void tokenize(BlockingQueue<ByteBuffer> free,
+            BlockingQueue<ByteBuffer> full, ConcurrentWordCounter counter)
+            throws InterruptedException {
+        Utf8WordTokenizer tokenizer = new Utf8WordTokenizer(this.separators,
+                counter);
+        ByteBuffer block = full.take();
+        while (block != END) {
+            tokenizer.feed(block);
+            tokenizer.endWord();
+            block.clear();
+            free.offer(block);
+            block = full.take();
+        }
+    }
+
+    /**
+     * Waits for every tokenizer stage to finish.
+     * 
+     * @param tokenized
+     *            results of the tokenizer stages
+     * @throws IOException
+     *             if a tokenizer failed
+     * @throws InterruptedException
+     */
+    private static void awaitAll(List<Future<?>> tokenized)
+            throws IOException, InterruptedException {
+        for (Future<?> result : tokenized) {
+            try {
+                result.get();
+            } catch (ExecutionException e) {
+                throw new IOException("Error counting words", e.getCause());
+            }
+        }
+    }
+}
@@ -0,0 +1,395 @@
+/**
+ * Approximate counts of the most frequent words in fixed memory, for inputs
+ * whose vocabulary does not fit in the heap. Words are tracked with the
+ * Space-Saving algorithm, and a Count-Min sketch decides which unmonitored
+ * words are worth a counter and tightens their starting counts.
+ * 
+ * <p>
+ * Every reported count is an upper bound on the true count, and
+ * {@code errorOf} bounds how far it can be too high (with probability about
+ * {@code 1 - e^-DEPTH}). Any word that occurs more often than the smallest
+ * monitored count is monitored.
+ * </p>
+ * 
+ * @author Andrew Cheng and Stacey Frye
+ */
+public final class HeavyHitters implements WordSink {
+
+    /**
+     * Number of hash rows in the Count-Min sketch.
+     */
+    private static final int DEPTH = 4;
+
+    /**
+     * Rough heap cost of one monitored word: its {@code String}, its slots in
+     * the heap arrays and its two index slots.
+     */
+    private static final int BYTES_PER_WORD = 96;
+
+    /**
+     * Share of the memory budget given to the Count-Min sketch.
+     */
+    private static final int SKETCH_SHARE = 4;
+
+    /**
+     * Smallest number of columns in the Count-Min sketch.
+     */
+    private static final int MIN_WIDTH = 64;
+
+    /**
+     * Count-Min sketch, {@code DEPTH} rows of {@code width} counters.
+     */
+    private final int[][] sketch;
+
+    /**
+     * Number of columns in the sketch minus one; the width is a power of two.
+     */
+    private final int widthMask;
+
+    /**
+     * Total of every count added.
+     */
+    private long total;
+
+    /**
+     * Monitored words, in a min-heap ordered by count.
+     */
+    private final String[] words;
+
+    /**
+     * Hash of each monitored word.
+     */
+    private final int[] hashes;
+
+    /**
+     * Count of each monitored word; an upper bound on its true count.
+     */
+    private final int[] counts;
+
+    /**
+     * How much each monitored count may be too high.
+     */
+    private final int[] errors;
+
+    /**
+     * Slot in {@code index} of each monitored word.
+     */
+    private final int[] slotOf;
+
+    /**
+     * Number of monitored words.
+     */
+    private int size;
+
+    /**
+     * Linear-probing index from word to heap position plus one; 0 is empty.
+     */
+    private final int[] index;
+
+    /**
+     * Number of slots in {@code index} minus one.
+     */
+    private final int indexMask;
+
+    /**
+     * Constructor.
+     * 
+     * @param budgetBytes
+     *            about how many bytes of heap the counts may use
+     */
+    public HeavyHitters(long budgetBytes) {
+        assert budgetBytes > 0 : "Violation of: budgetBytes > 0";
+
+        long sketchColumns = budgetBytes / SKETCH_SHARE
+                / (DEPTH * Integer.BYTES);
+        int width = Integer.highestOneBit((int) Math.min(1 << 30,
+                Math.max(MIN_WIDTH, sketchColumns)));
+        this.sketch = new int[DEPTH][width];
+        this.widthMask = width - 1;
+        this.total = 0;
+
+        long wordBytes = budgetBytes - (long) DEPTH * width * Integer.BYTES;
+        int capacity = (int) Math.max(1,
+                Math.min(1 << 28, wordBytes / BYTES_PER_WORD));
+        this.words = new String[capacity];
+        this.hashes = new int[capacity];
+        this.counts = new int[capacity];
+        this.errors = new int[capacity];
+        this.slotOf = new int[capacity];
+        this.size = 0;
+        this.index = new int[Integer.highestOneBit(capacity) * 4];
+        this.indexMask = this.index.length - 1;
+    }
+
+    @Override
+    public void add(char[] word, int length, int hash, int count) {
+        this.total += count;
+        int estimate = this.addToSketch(hash, count);
+
+        int position = this.find(word, length, hash);
+        if (position >= 0) {
+            this.counts[position] += count;
+            this.siftDown(position);
+        } else if (this.size < this.words.length) {
+            // nothing has been turned away yet, so this count is exact
+            position = this.size;
+            this.size++;
+            this.place(position, new String(word, 0, length), hash, count, 0);
+            this.siftUp(position);
+        } else if (estimate > this.counts[0]) {
+            int upper = Math.min(this.counts[0] + count, estimate);
+            this.removeFromIndex(this.slotOf[0]);
+            this.place(0, new String(word, 0, length), hash, upper,
+                    Math.min(upper - count, upper - estimate
+                            + this.sketchError()));
+            this.siftDown(0);
+        }
+    }
+
+    /**
+     * Offers every monitored word to {@code top}.
+     * 
+     * @param top
+     *            where to select the most frequent words
+     * @updates top
+     */
+    public void select(TopWords top) {
+        for (int i = 0; i < this.size; i++) {
+            top.offer(this.words[i], this.counts[i]);
+        }
+    }
+
+    /**
+     * Returns how much the count reported for {@code word} may be too high,
+     * or 0 if {@code word} is not monitored.
+     * 
+     * @param word
+     *            a word
+     * @return the error bound of its count
+     */
+    public int errorOf(String word) {
+        int hash = word.hashCode();
+        int slot = WordCountTable.spread(hash) & this.indexMask;
+        while (this.index[slot] != 0) {
+            int position = this.index[slot] - 1;
+            if (this.hashes[position] == hash
+                    && this.words[position].equals(word)) {
+                return this.errors[position];
+            }
+            slot = (slot + 1) & this.indexMask;
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the number of monitored words.
+     * 
+     * @return the number of monitored words
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns the hash of {@code hash} for sketch row {@code row}.
+     * 
+     * @param hash
+     *            a word hash
+     * @param row
+     *            the sketch row
+     * @return the column in that row
+     */
+    private int column(int hash, int row) {
+        int h = hash * (2 * row + 1) + row * 0x9E3779B9;
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        return h & this.widthMask;
+    }
+
+    /**
+     * Adds {@code count} to the sketch for {@code hash}.
+     * 
+     * @param hash
+     *            a word hash
+     * @param count
+     *            amount to add
+     * @return the sketch's estimate of the word's count, which is never too
+     *         low
+     */
+    private int addToSketch(int hash, int count) {
+        int estimate = Integer.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            int[] counters = this.sketch[row];
+            int column = this.column(hash, row);
+            counters[column] += count;
+            estimate = Math.min(estimate, counters[column]);
+        }
+        return estimate;
+    }
+
+    /**
+     * Returns how much a sketch estimate is likely to be too high.
+     * 
+     * @return the sketch's error bound
+     */
+    private int sketchError() {
+        return (int) Math.min(Integer.MAX_VALUE,
+                (long) Math.ceil(Math.E * this.total / this.sketch[0].length));
+    }
+
+    /**
+     * Returns the heap position of {@code word[0, length)}, or -1 if it is
+     * not monitored.
+     * 
+     * @param word
+     *            buffer holding the word
+     * @param length
+     *            number of characters in the word
+     * @param hash
+     *            hash of the word
+     * @return its position, or -1
+     */
+    private int find(char[] word, int length, int hash) {
+        int slot = WordCountTable.spread(hash) & this.indexMask;
+        while (this.index[slot] != 0) {
+            int position = this.index[slot] - 1;
+            if (this.hashes[position] == hash
+                    && WordCountTable.matches(this.words[position], word,
+                            length)) {
+                return position;
+            }
+            slot = (slot + 1) & this.indexMask;
+        }
+        return -1;
+    }
+
+    /**
+     * Puts a word at heap {@code position} and adds it to the index.
+     * 
+     * @param position
+     *            a heap position not in the index
+     * @param word
+     *            the word
+     * @param hash
+     *            hash of the word
+     * @param count
+     *            its count
+     * @param error
+     *            how much {@code count} may be too high
+     */
+    private void place(int position, String word, int hash, int count,
+            int error) {
+        this.words[position] = word;
+        this.hashes[position] = hash;
+        this.counts[position] = count;
+        this.errors[position] = Math.max(0, error);
+        int slot = WordCountTable.spread(hash) & this.indexMask;
+        while (this.index[slot] != 0) {
+            slot = (slot + 1) & this.indexMask;
+        }
+        this.index[slot] = position + 1;
+        this.slotOf[position] = slot;
+    }
+
+    /**
+     * Empties index {@code slot}, shifting later entries of the same probe
+     * run back so that every word can still be found.
+     * 
+     * @param slot
+     *            an occupied index slot
+     */
+    private void removeFromIndex(int slot) {
+        int hole = slot;
+        this.index[hole] = 0;
+        int next = (hole + 1) & this.indexMask;
+        while (this.index[next] != 0) {
+            int position = this.index[next] - 1;
+            int home = WordCountTable.spread(this.hashes[position])
+                    & this.indexMask;
+            boolean stays;
+            if (hole < next) {
+                stays = hole < home && home <= next;
+            } else {
+                stays = hole < home || home <= next;
+            }
+            if (!stays) {
+                this.index[hole] = this.index[next];
+                this.slotOf[position] = hole;
+                this.index[next] = 0;
+                hole = next;
+            }
+            next = (next + 1) & this.indexMask;
+        }
+    }
+
+    /**
+     * Swaps the words at heap positions {@code i} and {@code j}.
+     * 
+     * @param i
+     *            first position
+     * @param j
+     *            second position
+     */
+    private void swap(int i, int j) {
+        String word = this.words[i];
+        this.words[i] = this.words[j];
+        this.words[j] = word;
+        int hash = this.hashes[i];
+        this.hashes[i] = this.hashes[j];
+        this.hashes[j] = hash;
+        int count = this.counts[i];
+        this.counts[i] = this.counts[j];
+        this.counts[j] = count;
+        int error = this.errors[i];
+        this.errors[i] = this.errors[j];
+        this.errors[j] = error;
+        int slot = this.slotOf[i];
+        this.slotOf[i] = this.slotOf[j];
+        this.slotOf[j] = slot;
+        this.index[this.slotOf[i]] = i + 1;
+        this.index[this.slotOf[j]] = j + 1;
+    }
+
+    /**
+     * Moves the word at {@code i} up until its parent's count is not larger.
+     * 
+     * @param i
+     *            heap position of the word
+     */
+    private void siftUp(int i) {
+        int child = i;
+        while (child > 0) {
+            int parent = (child - 1) / 2;
+            if (this.counts[parent] <= this.counts[child]) {
+                return;
+            }
+            this.swap(child, parent);
+            child = parent;
+        }
+    }
+
+    /**
+     * Moves the word at {@code i} down until its children's counts are not
+     * smaller.
+     * 
+     * @param i
+     *            heap position of the word
+     */
+    private void siftDown(int i) {
+        int parent = i;
+        int child = 2 * parent + 1;
+        while (child < this.size) {
+            if (child + 1 < this.size
+                    && this.counts[child + 1] < this.counts[child]) {
+                child++;
+            }
+            if (this.counts[parent] <= this.counts[child]) {
+                return;
+            }
+            this.swap(child, parent);
+            parent = child;
+            child = 2 * parent + 1;
+        }
+    }
+}
@@ -0,0 +1,268 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Keeps running word counts for a file that keeps growing, such as a log.
+ * Each {@code poll} reads only the bytes appended since the last one, so its
+ * cost depends on the new data and not on the size of the file.
+ * 
+ * <p>
+ * A word (or UTF-8 character) cut off at the current end of the file is held
+ * back until the rest of it arrives. If the file shrinks, it is taken to have
+ * been truncated and counting starts over from the beginning. If the path
+ * comes to name a different file (the file key, such as the inode, changes),
+ * the old file was rotated away by renaming it: what was appended to it is
+ * read first, and then counting starts over on the new file.
+ * Words can instead be counted into a {@code WordSink} given to the
+ * constructor, which keeps what it has counted when the file is rotated.
+ * </p>
+ * 
+ * @author Andrew Cheng and Stacey Frye
+ */
+public final class LogFollower implements AutoCloseable {
+
+    /**
+     * Number of bytes read from the file at a time.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Path of the file being followed.
+     */
+    private final Path path;
+
+    /**
+     * The file being followed.
+     */
+    private FileChannel channel;
+
+    /**
+     * File key of the open file, or null if the file system has none.
+     */
+    private Object fileKey;
+
+    /**
+     * Number of times counting started over.
+     */
+    private long restarts;
+
+    /**
+     * Separators handed to each new tokenizer.
+     */
+    private final String separators;
+
+    /**
+     * Bytes read from the file.
+     */
+    private final ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+
+    /**
+     * Where the words are counted, or null to count them in {@code table}.
+     */
+    private final WordSink sink;
+
+    /**
+     * Counts of every word read so far, or null if they go to {@code sink}.
+     */
+    private WordCountTable table;
+
+    /**
+     * Tokenizer feeding {@code table} or {@code sink}; it keeps any word or character cut off
+     * at the end of the file until the next poll.
+     */
+    private Utf8WordTokenizer tokenizer;
+
+    /**
+     * Offset in the file of the next byte to read.
+     */
+    private long position;
+
+    /**
+     * Constructor; nothing is read until the first {@code poll}.
+     * 
+     * @param fileLocation
+     *            path of the file to follow
+     * @param separators
+     *            the characters that separate words
+     * @throws IOException
+     */
+    public LogFollower(String fileLocation, String separators)
+            throws IOException {
+        this(fileLocation, separators, null);
+    }
+
+    /**
+     * Constructor that counts the words into {@code sink}; nothing is read
+     * until the first {@code poll}.
+     * 
+     * @param fileLocation
+     *            path of the file to follow
+     * @param separators
+     *            the characters that separate words
+     * @param sink
+     *            where the words are counted, or null to count them in
+     *            {@code counts()}
+     * @throws IOException
+     */
+    public LogFollower(String fileLocation, String separators, WordSink sink)
+            throws IOException {
+        this.path = Paths.get(fileLocation);
+        this.fileKey = fileKey(this.path);
+        this.channel = FileChannel.open(this.path, StandardOpenOption.READ);
+        this.separators = separators;
+        this.sink = sink;
+        this.restarts = 0;
+        this.reset();
+    }
+
+    /**
+     * Reads and counts everything appended to the file since the last poll.
+     * A poll that finds the file truncated or rotated starts counting over
+     * and reads no further, so the caller can tell the restart apart by
+     * {@code restarts}; the next poll reads the file from its beginning.
+     * 
+     * @return the number of bytes read
+     * @throws IOException
+     */
+    public long poll() throws IOException {
+        Object currentKey = fileKey(this.path);
+        if (currentKey != null && !currentKey.equals(this.fileKey)) {
+            long read = this.readAppended();
+            this.tokenizer.endWord();
+            FileChannel reopened = FileChannel.open(this.path,
+                    StandardOpenOption.READ);
+            this.channel.close();
+            this.channel = reopened;
+            this.fileKey = currentKey;
+            this.reset();
+            this.restarts++;
+            return read;
+        }
+        if (this.channel.size() < this.position) {
+            this.reset();
+            this.restarts++;
+            return 0;
+        }
+        return this.readAppended();
+    }
+
+    /**
+     * Skips what the file holds now, so that only what is appended from here
+     * on is counted. A word cut off at the current end of the file is not
+     * skipped, so it is counted whole once the rest of it arrives. Counting
+     * does not start over, and {@code restarts} does not change.
+     * 
+     * @throws IOException
+     */
+    public void skipToEnd() throws IOException {
+        this.reset();
+        long start = this.channel.size();
+        while (start > 0) {
+            int length = (int) Math.min(BUFFER_SIZE, start);
+            start -= length;
+            this.bytes.limit(length);
+            int read = 0;
+            while (read >= 0 && this.bytes.hasRemaining()) {
+                read = this.channel.read(this.bytes,
+                        start + this.bytes.position());
+            }
+            for (int i = this.bytes.position() - 1; i >= 0; i--) {
+                byte b = this.bytes.get(i);
+                if (b >= 0 && this.separators.indexOf(b) >= 0) {
+                    this.position = start + i + 1;
+                    this.bytes.clear();
+                    return;
+                }
+            }
+            this.bytes.clear();
+        }
+    }
+
+    /**
+     * Returns the number of times counting started over because the file
+     * was truncated or rotated.
+     * 
+     * @return the number of restarts
+     */
+    public long restarts() {
+        return this.restarts;
+    }
+
+    /**
+     * Returns the counts of every word read so far. A word still being
+     * written at the end of the file is not counted yet.
+     * 
+     * @return the word counts, or null if they go to a {@code WordSink}
+     */
+    public WordCountTable counts() {
+        return this.table;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+
+    /**
+     * Reads and counts everything appended to the open file since the last
+     * read.
+     * 
+     * @return the number of bytes read
+     * @throws IOException
+     */
+    private long readAppended() throws IOException {
+        long start = this.position;
+        int read = this.channel.read(this.bytes, this.position);
+        while (read > 0) {
+            this.position += read;
+            this.bytes.flip();
+            this.tokenizer.feed(this.bytes);
+            this.bytes.clear();
+            read = this.channel.read(this.bytes, this.position);
+        }
+        return this.position - start;
+    }
+
+    /**
+     * Returns the file key of the file at {@code path}, or null if there is
+     * no file there (as between renaming a log and creating the new one) or
+     * the file system has no file keys.
+     * 
+     * @param path
+     *            path of the file
+     * @return its file key
+     * @throws IOException
+     */
+    private static Object fileKey(Path path) throws IOException {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class)
+                    .fileKey();
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Goes back to the start of the file, forgetting everything counted
+     * unless it went to a {@code WordSink}.
+     */
+    private void reset() {
+        if (this.sink == null) {
+            this.table = new WordCountTable();
+            this.tokenizer = new Utf8WordTokenizer(this.separators,
+                    this.table);
+        } else {
+            this.tokenizer = new Utf8WordTokenizer(this.separators,
+                    this.sink);
+        }
+        this.bytes.clear();
+        this.position = 0;
+    }
+}
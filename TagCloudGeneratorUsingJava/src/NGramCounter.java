@@ -0,0 +1,635 @@
+import java.util.Arrays;
+
+/**
+ * Counts the n-grams of a text: every run of {@code n} consecutive words,
+ * such as the bigram "four score" or the trigram "four score and". Each
+ * distinct word is given a small integer ID the first time it is seen, and an
+ * n-gram is counted as the tuple of its word IDs, found through a rolling
+ * hash of the last {@code n} IDs. So no {@code String} is made for an n-gram
+ * while counting; the text of a phrase is only put together for the phrases
+ * in the top N.
+ * 
+ * <p>
+ * Both tables use open addressing and grow when half full, like
+ * {@code WordCountTable}.
+ * </p>
+ * 
+ * @author Andrew Cheng and Stacey Frye
+ */
+public final class NGramCounter {
+
+    /**
+     * Starting number of slots in each table; always a power of two.
+     */
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * Multiplier of the rolling hash and of the slot hash; odd, so it loses
+     * no bits.
+     */
+    private static final long MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+    /**
+     * Number of words in an n-gram.
+     */
+    private final int n;
+
+    /**
+     * {@code MULTIPLIER} to the power {@code n - 1}: the weight of the oldest
+     * word in the rolling hash.
+     */
+    private final long oldestWeight;
+
+    /**
+     * Each word, by ID.
+     */
+    private String[] words;
+
+    /**
+     * Number of distinct words.
+     */
+    private int wordCount;
+
+    /**
+     * ID plus one of the word in each dictionary slot, or 0 if empty.
+     */
+    private int[] wordSlots;
+
+    /**
+     * {@code String.hashCode} of the word in each dictionary slot.
+     */
+    private int[] wordHashes;
+
+    /**
+     * IDs of the last {@code n} words, oldest at {@code oldest}.
+     */
+    private final int[] window;
+
+    /**
+     * Index in {@code window} of the oldest word.
+     */
+    private int oldest;
+
+    /**
+     * Number of words in {@code window}, at most {@code n}.
+     */
+    private int filled;
+
+    /**
+     * Rolling hash of the IDs in {@code window}.
+     */
+    private long rolling;
+
+    /**
+     * Word IDs of the n-gram in each slot, {@code n} to a slot.
+     */
+    private int[] gramIds;
+
+    /**
+     * Count of the n-gram in each slot, or 0 if empty.
+     */
+    private int[] gramCounts;
+
+    /**
+     * Number of bits of a slot number in the n-gram table.
+     */
+    private int gramBits;
+
+    /**
+     * Number of distinct n-grams.
+     */
+    private int gramCount;
+
+    /**
+     * Number of n-grams counted, repeats included.
+     */
+    private long total;
+
+    /**
+     * Constructor.
+     * 
+     * @param n
+     *            the number of words in an n-gram
+     */
+    public NGramCounter(int n) {
+        assert n > 0 : "Violation of: n > 0";
+
+        this.n = n;
+        long weight = 1;
+        for (int i = 1; i < n; i++) {
+            weight *= MULTIPLIER;
+        }
+        this.oldestWeight = weight;
+        this.words = new String[INITIAL_CAPACITY];
+        this.wordSlots = new int[INITIAL_CAPACITY];
+        this.wordHashes = new int[INITIAL_CAPACITY];
+        this.window = new int[n];
+        this.gramBits = Integer.numberOfTrailingZeros(INITIAL_CAPACITY);
+        this.gramIds = new int[INITIAL_CAPACITY * n];
+        this.gramCounts = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Counts the next word, {@code word[0, length)}, which completes the
+     * n-gram of it and the {@code n - 1} words before it.
+     * 
+     * @param word
+     *            buffer holding the word; only read during the call
+     * @param length
+     *            number of characters in the word
+     * @param hash
+     *            {@code String.hashCode} of the word
+     */
+    public void add(char[] word, int length, int hash) {
+        int mask = this.wordSlots.length - 1;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (this.wordSlots[slot] != 0) {
+            if (this.wordHashes[slot] == hash
+                    && matches(this.words[this.wordSlots[slot] - 1], word,
+                            length)) {
+                this.next(this.wordSlots[slot] - 1);
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        this.next(this.newWord(slot, new String(word, 0, length), hash));
+    }
+
+    /**
+     * Counts the next word, which completes the n-gram of it and the
+     * {@code n - 1} words before it.
+     * 
+     * @param word
+     *            the word
+     */
+    public void add(String word) {
+        int hash = word.hashCode();
+        int mask = this.wordSlots.length - 1;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (this.wordSlots[slot] != 0) {
+            if (this.wordHashes[slot] == hash
+                    && this.words[this.wordSlots[slot] - 1].equals(word)) {
+                this.next(this.wordSlots[slot] - 1);
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        this.next(this.newWord(slot, word, hash));
+    }
+
+    /**
+     * Returns the number of distinct n-grams.
+     * 
+     * @return the number of n-grams
+     */
+    public int size() {
+        return this.gramCount;
+    }
+
+    /**
+     * Returns the number of n-grams counted, repeats included.
+     * 
+     * @return the number of n-grams
+     */
+    public long total() {
+        return this.total;
+    }
+
+    /**
+     * Returns the number of distinct words.
+     * 
+     * @return the number of words
+     */
+    public int words() {
+        return this.wordCount;
+    }
+
+    /**
+     * Selects the {@code nWords} most frequent n-grams. The count of the
+     * {@code nWords}-th most frequent is found first from the counts alone.
+     * Ties at that count are then broken as {@code TopWords} breaks them, by
+     * the order of the phrases, read from the word IDs without putting the
+     * phrases together. So only the {@code nWords} n-grams selected, and one
+     * of the least frequent, are spelled out and offered, and
+     * {@code TopWords} also learns the smallest and largest count of all
+     * n-grams.
+     * 
+     * @param nWords
+     *            the number of n-grams to select
+     * @return {@code TopWords} holding the top n-grams, their words separated
+     *         by spaces
+     */
+    public TopWords top(int nWords) {
+        TopWords top = new TopWords(Math.max(nWords, 0));
+        if (this.gramCount == 0 || nWords <= 0) {
+            return top;
+        }
+
+        int[] heap = new int[Math.min(nWords, this.gramCount)];
+        int heapSize = 0;
+        int minSlot = -1;
+        for (int slot = 0; slot < this.gramCounts.length; slot++) {
+            int count = this.gramCounts[slot];
+            if (count == 0) {
+                continue;
+            }
+            if (minSlot < 0 || count < this.gramCounts[minSlot]) {
+                minSlot = slot;
+            }
+            if (heapSize < heap.length) {
+                heap[heapSize] = count;
+                heapSize++;
+                siftUp(heap, heapSize - 1);
+            } else if (count > heap[0]) {
+                heap[0] = count;
+                siftDown(heap, heapSize);
+            }
+        }
+
+        int threshold = heap[0];
+        int room = heap.length;
+        for (int slot = 0; slot < this.gramCounts.length; slot++) {
+            if (this.gramCounts[slot] > threshold) {
+                room--;
+            }
+        }
+        int[] ties = new int[room];
+        int tieCount = 0;
+        for (int slot = 0; slot < this.gramCounts.length; slot++) {
+            int count = this.gramCounts[slot];
+            if (count > threshold) {
+                top.offer(this.phrase(slot), count);
+            } else if (count == threshold) {
+                if (tieCount < ties.length) {
+                    ties[tieCount] = slot;
+                    tieCount++;
+                    this.siftUpPhrase(ties, tieCount - 1);
+                } else if (this.comparePhrases(ties[0], slot) < 0) {
+                    ties[0] = slot;
+                    this.siftDownPhrase(ties, tieCount);
+                }
+            }
+        }
+        for (int i = 0; i < tieCount; i++) {
+            top.offer(this.phrase(ties[i]), threshold);
+        }
+        if (this.gramCounts[minSlot] < threshold) {
+            top.offer(this.phrase(minSlot), this.gramCounts[minSlot]);
+        }
+        return top;
+    }
+
+    /**
+     * Returns the words of the n-gram in {@code slot}, separated by spaces.
+     * 
+     * @param slot
+     *            a full slot of the n-gram table
+     * @return the phrase
+     */
+    private String phrase(int slot) {
+        StringBuilder phrase = new StringBuilder();
+        for (int i = 0; i < this.n; i++) {
+            if (i > 0) {
+                phrase.append(' ');
+            }
+            phrase.append(this.words[this.gramIds[slot * this.n + i]]);
+        }
+        return phrase.toString();
+    }
+
+    /**
+     * Compares the phrases of the n-grams in slots {@code a} and {@code b} as
+     * {@code String.compareTo} would compare {@code phrase(a)} and
+     * {@code phrase(b)}, without putting them together.
+     * 
+     * @param a
+     *            a full slot of the n-gram table
+     * @param b
+     *            a full slot of the n-gram table
+     * @return negative, zero or positive as the first phrase is less than,
+     *         equal to or greater than the second
+     */
+    private int comparePhrases(int a, int b) {
+        int wordA = 0;
+        int charA = 0;
+        int wordB = 0;
+        int charB = 0;
+        while (true) {
+            int ca = this.phraseChar(a, wordA, charA);
+            int cb = this.phraseChar(b, wordB, charB);
+            if (ca != cb || ca < 0) {
+                return ca - cb;
+            }
+            if (charA == this.words[this.gramIds[a * this.n + wordA]]
+                    .length()) {
+                wordA++;
+                charA = 0;
+            } else {
+                charA++;
+            }
+            if (charB == this.words[this.gramIds[b * this.n + wordB]]
+                    .length()) {
+                wordB++;
+                charB = 0;
+            } else {
+                charB++;
+            }
+        }
+    }
+
+    /**
+     * Returns character {@code index} of word {@code word} of the n-gram in
+     * {@code slot}, the space after the word if {@code index} is its length,
+     * or -1 there if it is the last word.
+     * 
+     * @param slot
+     *            a full slot of the n-gram table
+     * @param word
+     *            position of the word in the n-gram
+     * @param index
+     *            position in the word, at most its length
+     * @return the character, or -1 at the end of the phrase
+     */
+    private int phraseChar(int slot, int word, int index) {
+        String w = this.words[this.gramIds[slot * this.n + word]];
+        if (index < w.length()) {
+            return w.charAt(index);
+        } else if (word < this.n - 1) {
+            return ' ';
+        }
+        return -1;
+    }
+
+    /**
+     * Moves the slot at {@code i} of a min-heap of n-gram slots, ordered by
+     * phrase, up until its parent's phrase is no greater.
+     * 
+     * @param heap
+     *            the heap
+     * @param i
+     *            index of the slot
+     */
+    private void siftUpPhrase(int[] heap, int i) {
+        int child = i;
+        while (child > 0) {
+            int parent = (child - 1) / 2;
+            if (this.comparePhrases(heap[parent], heap[child]) <= 0) {
+                return;
+            }
+            int slot = heap[parent];
+            heap[parent] = heap[child];
+            heap[child] = slot;
+            child = parent;
+        }
+    }
+
+    /**
+     * Moves the slot at the root of a min-heap of n-gram slots, ordered by
+     * phrase, down until both children's phrases are no smaller.
+     * 
+     * @param heap
+     *            the heap
+     * @param size
+     *            number of slots in the heap
+     */
+    private void siftDownPhrase(int[] heap, int size) {
+        int parent = 0;
+        int child = 1;
+        while (child < size) {
+            if (child + 1 < size
+                    && this.comparePhrases(heap[child + 1], heap[child]) < 0) {
+                child++;
+            }
+            if (this.comparePhrases(heap[parent], heap[child]) <= 0) {
+                return;
+            }
+            int slot = heap[parent];
+            heap[parent] = heap[child];
+            heap[child] = slot;
+            parent = child;
+            child = 2 * parent + 1;
+        }
+    }
+
+    /**
+     * Gives a new word the next ID and puts it in the empty dictionary
+     * {@code slot}, growing the dictionary if it is half full.
+     * 
+     * @param slot
+     *            an empty dictionary slot
+     * @param word
+     *            the word
+     * @param hash
+     *            {@code String.hashCode} of the word
+     * @return the ID of the word
+     */
+    private int newWord(int slot, String word, int hash) {
+        int id = this.wordCount;
+        if (id == this.words.length) {
+            this.words = Arrays.copyOf(this.words, id * 2);
+        }
+        this.words[id] = word;
+        this.wordSlots[slot] = id + 1;
+        this.wordHashes[slot] = hash;
+        this.wordCount++;
+        if (this.wordCount * 2 > this.wordSlots.length) {
+            int[] oldSlots = this.wordSlots;
+            int[] oldHashes = this.wordHashes;
+            this.wordSlots = new int[oldSlots.length * 2];
+            this.wordHashes = new int[oldSlots.length * 2];
+            int mask = this.wordSlots.length - 1;
+            for (int i = 0; i < oldSlots.length; i++) {
+                if (oldSlots[i] != 0) {
+                    int h = oldHashes[i];
+                    int s = (h ^ (h >>> 16)) & mask;
+                    while (this.wordSlots[s] != 0) {
+                        s = (s + 1) & mask;
+                    }
+                    this.wordSlots[s] = oldSlots[i];
+                    this.wordHashes[s] = h;
+                }
+            }
+        }
+        return id;
+    }
+
+    /**
+     * Slides the window on by word {@code id}, rolling its hash, and counts
+     * the n-gram the window then holds if it is full.
+     * 
+     * @param id
+     *            ID of the next word
+     */
+    private void next(int id) {
+        if (this.filled == this.n) {
+            this.rolling -= (this.window[this.oldest] + 1L)
+                    * this.oldestWeight;
+            this.window[this.oldest] = id;
+            this.oldest = (this.oldest + 1) % this.n;
+        } else {
+            this.window[(this.oldest + this.filled) % this.n] = id;
+            this.filled++;
+        }
+        this.rolling = this.rolling * MULTIPLIER + id + 1;
+        if (this.filled == this.n) {
+            this.countWindow();
+        }
+    }
+
+    /**
+     * Adds one to the count of the n-gram in the window.
+     */
+    private void countWindow() {
+        int mask = this.gramCounts.length - 1;
+        int slot = this.slotOf(this.rolling);
+        while (this.gramCounts[slot] != 0) {
+            if (this.windowMatches(slot)) {
+                this.gramCounts[slot]++;
+                this.total++;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        for (int i = 0; i < this.n; i++) {
+            this.gramIds[slot * this.n + i] = this.window[(this.oldest + i)
+                    % this.n];
+        }
+        this.gramCounts[slot] = 1;
+        this.gramCount++;
+        this.total++;
+        if (this.gramCount * 2 > this.gramCounts.length) {
+            this.growGrams();
+        }
+    }
+
+    /**
+     * Returns whether the n-gram in {@code slot} is the one in the window.
+     * 
+     * @param slot
+     *            a full slot of the n-gram table
+     * @return true if they hold the same word IDs
+     */
+    private boolean windowMatches(int slot) {
+        int base = slot * this.n;
+        for (int i = 0; i < this.n; i++) {
+            if (this.gramIds[base + i] != this.window[(this.oldest + i)
+                    % this.n]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the home slot of an n-gram with rolling hash {@code hash}, taken
+     * from the high bits of the hash times {@code MULTIPLIER}.
+     * 
+     * @param hash
+     *            rolling hash of an n-gram
+     * @return its home slot
+     */
+    private int slotOf(long hash) {
+        return (int) ((hash * MULTIPLIER) >>> (Long.SIZE - this.gramBits));
+    }
+
+    /**
+     * Doubles the number of slots of the n-gram table and re-inserts every
+     * n-gram, recomputing its hash from its word IDs.
+     */
+    private void growGrams() {
+        int[] oldIds = this.gramIds;
+        int[] oldCounts = this.gramCounts;
+        this.gramBits++;
+        this.gramIds = new int[oldIds.length * 2];
+        this.gramCounts = new int[oldCounts.length * 2];
+        int mask = this.gramCounts.length - 1;
+        for (int i = 0; i < oldCounts.length; i++) {
+            if (oldCounts[i] != 0) {
+                long hash = 0;
+                for (int j = 0; j < this.n; j++) {
+                    hash = hash * MULTIPLIER + oldIds[i * this.n + j] + 1;
+                }
+                int slot = this.slotOf(hash);
+                while (this.gramCounts[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                System.arraycopy(oldIds, i * this.n, this.gramIds, slot
+                        * this.n, this.n);
+                this.gramCounts[slot] = oldCounts[i];
+            }
+        }
+    }
+
+    /**
+     * Returns whether {@code str} equals {@code word[0, length)}.
+     * 
+     * @param str
+     *            the stored word
+     * @param word
+     *            buffer holding the word being looked up
+     * @param length
+     *            number of characters in the word
+     * @return true if they are equal
+     */
+    private static boolean matches(String str, char[] word, int length) {
+        if (str.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (str.charAt(i) != word[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Moves the count at {@code i} of a min-heap up until its parent is no
+     * larger.
+     * 
+     * @param heap
+     *            the heap
+     * @param i
+     *            index of the count
+     */
+    private static void siftUp(int[] heap, int i) {
+        int child = i;
+        while (child > 0) {
+            int parent = (child - 1) / 2;
+            if (heap[parent] <= heap[child]) {
+                return;
+            }
+            int count = heap[parent];
+            heap[parent] = heap[child];
+            heap[child] = count;
+            child = parent;
+        }
+    }
+
+    /**
+     * Moves the count at the root of a min-heap down until both children are
+     * no smaller.
+     * 
+     * @param heap
+     *            the heap
+     * @param size
+     *            number of counts in the heap
+     */
+    private static void siftDown(int[] heap, int size) {
+        int parent = 0;
+        int child = 1;
+        while (child < size) {
+            if (child + 1 < size && heap[child + 1] < heap[child]) {
+                child++;
+            }
+            if (heap[parent] <= heap[child]) {
+                return;
+            }
+            int count = heap[parent];
+            heap[parent] = heap[child];
+            heap[child] = count;
+            parent = child;
+            child = 2 * parent + 1;
+        }
+    }
+}
@@ -0,0 +1,338 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Records where the time of one run goes, phase by phase, and writes it as a
+ * JSON report. Each phase records its wall time and the bytes allocated by
+ * every thread during it; the report adds the peak heap of the run and any
+ * statistics the program sets, such as the number of tokens.
+ * 
+ * <p>
+ * Both memory figures are sampled at phase boundaries. The allocation of a
+ * phase is summed over the threads alive at its end, so a thread that ends
+ * within the phase, such as a worker of a pool shut down before the phase
+ * ends, is not counted. The peak heap is the most heap in use at any phase
+ * boundary, so a peak in the middle of a phase that is collected before the
+ * phase ends is not seen.
+ * </p>
+ * 
+ * <p>
+ * Phases run one after another: starting a phase ends the one before. The
+ * programs read, split and count the input in a single streaming pass, so
+ * those three steps are one phase, {@code COUNT}; timing them apart would
+ * mean reading the clock for every word.
+ * </p>
+ * 
+ * @author Andrew Cheng and Stacey Frye
+ */
+public final class RunReport {
+
+    /**
+     * Phase that reads, tokenizes and counts the input.
+     */
+    public static final String COUNT = "read_tokenize_count";
+
+    /**
+     * Phase that sorts the words or selects the top N.
+     */
+    public static final String SORT = "sort";
+
+    /**
+     * Phase that works out font sizes.
+     */
+    public static final String FONT_SIZING = "font_sizing";
+
+    /**
+     * Phase that writes the output page.
+     */
+    public static final String RENDER = "render";
+
+    /**
+     * Statistic holding the number of words read, repeats included.
+     */
+    public static final String TOKENS = "tokens";
+
+    /**
+     * Statistic holding the number of distinct words.
+     */
+    public static final String DISTINCT_WORDS = "distinctWords";
+
+    /**
+     * Nanoseconds in a millisecond.
+     */
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    /**
+     * Nanoseconds in a second.
+     */
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    /**
+     * Name of the program.
+     */
+    private final String program;
+
+    /**
+     * Name of the input.
+     */
+    private final String input;
+
+    /**
+     * Names of the finished phases, in order.
+     */
+    private final List<String> names = new ArrayList<String>();
+
+    /**
+     * Wall time of each finished phase, in nanoseconds.
+     */
+    private final List<Long> nanos = new ArrayList<Long>();
+
+    /**
+     * Bytes allocated in each finished phase, or -1 where unknown.
+     */
+    private final List<Long> allocated = new ArrayList<Long>();
+
+    /**
+     * Statistics set by the program, in the order they were first set.
+     */
+    private final Map<String, Long> stats = new LinkedHashMap<String, Long>();
+
+    /**
+     * Source of per-thread allocation counts, or null if the JVM has none.
+     */
+    private final com.sun.management.ThreadMXBean threads;
+
+    /**
+     * Source of heap usage.
+     */
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+    /**
+     * Most bytes of heap in use at any phase boundary so far.
+     */
+    private long peakHeap = 0;
+
+    /**
+     * When the report was created, from {@code System.nanoTime}.
+     */
+    private final long created;
+
+    /**
+     * Name of the phase running, or null if none is.
+     */
+    private String current = null;
+
+    /**
+     * When the running phase started, from {@code System.nanoTime}.
+     */
+    private long startNanos;
+
+    /**
+     * Bytes each live thread had allocated when the running phase started,
+     * by thread ID.
+     */
+    private Map<Long, Long> startAllocated = new HashMap<Long, Long>();
+
+    /**
+     * Constructor; the peak heap is measured from here on.
+     * 
+     * @param program
+     *            name of the program
+     * @param input
+     *            name of the input
+     */
+    public RunReport(String program, String input) {
+        this.program = program;
+        this.input = input;
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) bean)
+                        .isThreadAllocatedMemorySupported()) {
+            this.threads = (com.sun.management.ThreadMXBean) bean;
+            this.threads.setThreadAllocatedMemoryEnabled(true);
+        } else {
+            this.threads = null;
+        }
+        this.sampleHeap();
+        this.created = System.nanoTime();
+    }
+
+    /**
+     * Starts {@code phase}, ending the phase running, if any.
+     * 
+     * @param phase
+     *            name of the phase
+     */
+    public void start(String phase) {
+        this.stop();
+        this.sampleHeap();
+        this.current = phase;
+        this.startAllocated = this.allocatedBytes();
+        this.startNanos = System.nanoTime();
+    }
+
+    /**
+     * Ends the phase running, if any.
+     */
+    public void stop() {
+        if (this.current != null) {
+            long end = System.nanoTime();
+            long bytes = -1;
+            if (this.threads != null) {
+                bytes = 0;
+                for (Map.Entry<Long, Long> thread : this.allocatedBytes()
+                        .entrySet()) {
+                    Long before = this.startAllocated.get(thread.getKey());
+                    bytes += thread.getValue();
+                    if (before != null) {
+                        bytes -= before;
+                    }
+                }
+            }
+            this.sampleHeap();
+            this.names.add(this.current);
+            this.nanos.add(end - this.startNanos);
+            this.allocated.add(bytes);
+            this.current = null;
+        }
+    }
+
+    /**
+     * Sets statistic {@code name} to {@code value}.
+     * 
+     * @param name
+     *            name of the statistic
+     * @param value
+     *            its value
+     */
+    public void set(String name, long value) {
+        this.stats.put(name, value);
+    }
+
+    /**
+     * Ends the phase running, if any, and writes the report to {@code file}
+     * as JSON.
+     * 
+     * @param file
+     *            path of the report
+     * @throws IOException
+     */
+    public void write(Path file) throws IOException {
+        this.stop();
+        long total = System.nanoTime() - this.created;
+
+        StringBuilder json = new StringBuilder();
+        json.append("{\n");
+        json.append("  \"program\": ").append(quote(this.program))
+                .append(",\n");
+        json.append("  \"input\": ").append(quote(this.input)).append(",\n");
+        json.append("  \"wallMillis\": ").append(millis(total)).append(",\n");
+        json.append("  \"phases\": [");
+        long countNanos = 0;
+        for (int i = 0; i < this.names.size(); i++) {
+            if (i > 0) {
+                json.append(",");
+            }
+            json.append("\n    {\"name\": ").append(quote(this.names.get(i)))
+                    .append(", \"wallMillis\": ")
+                    .append(millis(this.nanos.get(i)))
+                    .append(", \"allocatedBytes\": ");
+            if (this.allocated.get(i) < 0) {
+                json.append("null");
+            } else {
+                json.append(this.allocated.get(i));
+            }
+            json.append("}");
+            if (this.names.get(i).equals(COUNT)) {
+                countNanos += this.nanos.get(i);
+            }
+        }
+        json.append("\n  ],\n");
+        for (Map.Entry<String, Long> stat : this.stats.entrySet()) {
+            json.append("  ").append(quote(stat.getKey())).append(": ")
+                    .append(stat.getValue()).append(",\n");
+        }
+        if (this.stats.containsKey(TOKENS) && countNanos > 0) {
+            json.append("  \"tokensPerSecond\": ")
+                    .append(Math.round(this.stats.get(TOKENS)
+                            * NANOS_PER_SECOND / countNanos))
+                    .append(",\n");
+        }
+        json.append("  \"peakHeapBytes\": ").append(this.peakHeap)
+                .append("\n");
+        json.append("}\n");
+        Files.write(file, json.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns the bytes allocated so far by each live thread, by thread ID,
+     * or no threads if the JVM does not say.
+     * 
+     * @return {@code Map} from each thread ID to the bytes it allocated
+     */
+    private Map<Long, Long> allocatedBytes() {
+        Map<Long, Long> allocatedBytes = new HashMap<Long, Long>();
+        if (this.threads != null) {
+            long[] ids = this.threads.getAllThreadIds();
+            long[] bytes = this.threads.getThreadAllocatedBytes(ids);
+            for (int i = 0; i < ids.length; i++) {
+                if (bytes[i] >= 0) {
+                    allocatedBytes.put(ids[i], bytes[i]);
+                }
+            }
+        }
+        return allocatedBytes;
+    }
+
+    /**
+     * Raises the peak heap to the heap in use now, if that is more.
+     */
+    private void sampleHeap() {
+        this.peakHeap = Math.max(this.peakHeap, this.memory
+                .getHeapMemoryUsage().getUsed());
+    }
+
+    /**
+     * Formats {@code nanos} nanoseconds as milliseconds with three decimals.
+     * 
+     * @param nanos
+     *            a time in nanoseconds
+     * @return the time in milliseconds
+     */
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / NANOS_PER_MILLI);
+    }
+
+    /**
+     * Returns {@code text} as a JSON string literal.
+     * 
+     * @param text
+     *            the text
+     * @return the quoted and escaped text
+     */
+    private static String quote(String text) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < ' ') {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
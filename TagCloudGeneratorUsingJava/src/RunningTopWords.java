@@ -0,0 +1,122 @@
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Running word counts that keep their top N words up to date as words are
+ * added, for following a growing file. Counts only go up, so a word that is
+ * not in the top N and is not added to cannot enter it; {@code update} only
+ * ranks the current top N against the words added since the last update, and
+ * so costs time in proportion to the new words and not to the vocabulary.
+ * 
+ * <p>
+ * The number of words with each count is kept as well, so the smallest count
+ * of all words, which the font sizes are scaled by, is known without a scan.
+ * </p>
+ * 
+ * @author Andrew Cheng and Stacey Frye
+ */
+public final class RunningTopWords implements WordSink {
+
+    /**
+     * Number of words kept in the top.
+     */
+    private final int n;
+
+    /**
+     * Counts of every word added.
+     */
+    private WordCountTable counts;
+
+    /**
+     * Amounts added to each word since the last update.
+     */
+    private WordCountTable added;
+
+    /**
+     * The top N words as of the last update, with their counts.
+     */
+    private final Map<String, Integer> top = new HashMap<String, Integer>();
+
+    /**
+     * Number of words with each count, as of the last update.
+     */
+    private final TreeMap<Integer, Integer> countsOfCounts =
+            new TreeMap<Integer, Integer>();
+
+    /**
+     * Constructor.
+     * 
+     * @param n
+     *            the number of words to keep in the top
+     */
+    public RunningTopWords(int n) {
+        assert n >= 0 : "Violation of: n >= 0";
+        this.n = n;
+        this.counts = new WordCountTable();
+        this.added = new WordCountTable();
+    }
+
+    @Override
+    public void add(char[] word, int length, int hash, int count) {
+        this.counts.add(word, length, hash, count);
+        this.added.add(word, length, hash, count);
+    }
+
+    /**
+     * Returns the number of distinct words added.
+     * 
+     * @return the number of words
+     */
+    public int size() {
+        return this.counts.size();
+    }
+
+    /**
+     * Ranks the words added since the last update against the top N and
+     * returns the new top N, with the smallest and largest count of all
+     * words.
+     * 
+     * @return {@code TopWords} holding the top N words
+     */
+    public TopWords update() {
+        TopWords next = new TopWords(this.n);
+        for (int i = 0; i < this.added.capacity(); i++) {
+            String word = this.added.wordAt(i);
+            if (word != null) {
+                int count = this.counts.count(word);
+                int before = count - this.added.countAt(i);
+                if (before > 0) {
+                    this.countsOfCounts.merge(before, -1,
+                            (a, b) -> a + b == 0 ? null : a + b);
+                }
+                this.countsOfCounts.merge(count, 1, Integer::sum);
+                next.offer(word, count);
+            }
+        }
+        for (Map.Entry<String, Integer> entry : this.top.entrySet()) {
+            if (this.added.count(entry.getKey()) == 0) {
+                next.offer(entry.getKey(), entry.getValue());
+            }
+        }
+        if (!this.countsOfCounts.isEmpty()) {
+            next.offerCount(this.countsOfCounts.firstKey());
+        }
+        this.top.clear();
+        for (int i = 0; i < next.size(); i++) {
+            this.top.put(next.word(i), next.count(i));
+        }
+        this.added = new WordCountTable();
+        return next;
+    }
+
+    /**
+     * Forgets every word added, as when a followed file starts over.
+     */
+    public void clear() {
+        this.counts = new WordCountTable();
+        this.added = new WordCountTable();
+        this.top.clear();
+        this.countsOfCounts.clear();
+    }
+}
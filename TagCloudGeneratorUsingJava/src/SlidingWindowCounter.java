@@ -0,0 +1,153 @@
+/**
+ * Word counts over a window of time that slides forward, such as the last
+ * hour of a log. The window is cut into equal buckets of time kept in a ring;
+ * each word is counted both in the bucket of the current time and in a table
+ * of the whole window. Since the window is made of whole buckets, it reaches
+ * back between one bucket less than its length and its full length.
+ * 
+ * <p>
+ * When time moves past a bucket, its counts are taken away from the window
+ * table and the bucket is reused for the newest time, so the window counts
+ * are always ready for selecting the top N words without recounting anything.
+ * Words whose counts fall to zero leave the window table, so memory grows
+ * with the number of buckets times the words seen in each, not with
+ * everything ever counted.
+ * </p>
+ * 
+ * @author Andrew Cheng and Stacey Frye
+ */
+public final class SlidingWindowCounter implements WordSink {
+
+    /**
+     * Length of each bucket, in milliseconds.
+     */
+    private final long bucketMillis;
+
+    /**
+     * Counts of each bucket; bucket {@code b} is kept at
+     * {@code b % buckets.length}.
+     */
+    private final WordCountTable[] buckets;
+
+    /**
+     * Sum of the counts of every bucket.
+     */
+    private WordCountTable window;
+
+    /**
+     * Number of the bucket being counted into, i.e. the current time divided
+     * by {@code bucketMillis}.
+     */
+    private long current;
+
+    /**
+     * Constructor.
+     * 
+     * @param windowMillis
+     *            length of the window, in milliseconds
+     * @param buckets
+     *            number of buckets the window is cut into
+     * @param nowMillis
+     *            the current time, in milliseconds
+     */
+    public SlidingWindowCounter(long windowMillis, int buckets,
+            long nowMillis) {
+        assert buckets > 0 : "Violation of: buckets > 0";
+        assert windowMillis >= buckets
+                : "Violation of: windowMillis >= buckets";
+
+        this.bucketMillis = windowMillis / buckets;
+        this.buckets = new WordCountTable[buckets];
+        for (int i = 0; i < buckets; i++) {
+            this.buckets[i] = new WordCountTable();
+        }
+        this.window = new WordCountTable();
+        this.current = nowMillis / this.bucketMillis;
+    }
+
+    /**
+     * Adds {@code count} to the count of {@code word[0, length)} at the
+     * current time.
+     * 
+     * @param word
+     *            buffer holding the word
+     * @param length
+     *            number of characters in the word
+     * @param hash
+     *            {@code WordCountTable.hash(word, length)}
+     * @param count
+     *            amount to add
+     */
+    @Override
+    public void add(char[] word, int length, int hash, int count) {
+        this.bucket().add(word, length, hash, count);
+        this.window.add(word, length, hash, count);
+    }
+
+    /**
+     * Adds {@code count} to the count of {@code word} at the current time.
+     * 
+     * @param word
+     *            the word
+     * @param count
+     *            amount to add
+     */
+    @Override
+    public void add(String word, int count) {
+        this.bucket().add(word, count);
+        this.window.add(word, count);
+    }
+
+    /**
+     * Moves the window forward to end at {@code nowMillis}, dropping the
+     * counts of every bucket that falls out of it. A time before the current
+     * bucket changes nothing.
+     * 
+     * @param nowMillis
+     *            the current time, in milliseconds
+     */
+    public void advanceTo(long nowMillis) {
+        long target = nowMillis / this.bucketMillis;
+        if (target - this.current >= this.buckets.length) {
+            for (int i = 0; i < this.buckets.length; i++) {
+                this.buckets[i] = new WordCountTable();
+            }
+            this.window = new WordCountTable();
+            this.current = target;
+        }
+        while (this.current < target) {
+            this.current++;
+            int slot = (int) (this.current % this.buckets.length);
+            this.window.subtractAll(this.buckets[slot]);
+            this.buckets[slot] = new WordCountTable();
+        }
+    }
+
+    /**
+     * Returns the counts of every word counted within the window. The table
+     * is kept up to date by the counter and must not be changed.
+     * 
+     * @return the word counts of the window
+     */
+    public WordCountTable counts() {
+        return this.window;
+    }
+
+    /**
+     * Returns the number of buckets the window is cut into.
+     * 
+     * @return the number of buckets
+     */
+    public int buckets() {
+        return this.buckets.length;
+    }
+
+    /**
+     * Returns the table of the current bucket.
+     * 
+     * @return the current bucket
+     */
+    private WordCountTable bucket() {
+        return this.buckets[(int) (this.current % this.buckets.length)];
+    }
+}
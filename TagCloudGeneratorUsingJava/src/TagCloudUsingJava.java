@@ -1,18 +1,36 @@
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Queue;
-import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * Program that reads in a text file and outputs an HTML file with each words'
@@ -25,32 +43,84 @@ public final class TagCloudUsingJava {
     final static double fMax = 37;
 
     /**
-     * Returns a negative integer, zero, or a positive integer as the first
-     * argument is less than, equal to, or greater than the second.
+     * Counts the words in a byte range of a file, splitting the range in half
+     * at a separator boundary until it is small enough to count directly.
      * 
      */
-    private static class IntegerCompare implements Comparator<String> {
+    private static class CountRange extends RecursiveTask<WordCountTable> {
 
-        Map<String, Integer> compareMap;
+        private static final long serialVersionUID = 1L;
 
-        IntegerCompare(Map<String, Integer> compareMap) {
-            this.compareMap = compareMap;
+        FileChannel channel;
+        long start;
+        long end;
+        long chunkSize;
+
+        CountRange(FileChannel channel, long start, long end, long chunkSize) {
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+            this.chunkSize = chunkSize;
         }
 
         @Override
-        public int compare(String str1, String str2) {
-            int firstInt = this.compareMap.get(str1);
-            int secondInt = this.compareMap.get(str2);
-            if (secondInt > firstInt) {
-                return 1;
-            } else if (firstInt > secondInt) {
-                return -1;
-            } else {
-                return str2.compareTo(str1);
+        protected WordCountTable compute() {
+            try {
+                if (this.end - this.start <= this.chunkSize) {
+                    return countRange(this.channel, this.start, this.end);
+                }
+                long half = this.start + (this.end - this.start) / 2;
+                long mid = alignToSeparator(this.channel, half, this.end);
+                //No separator in the second half: split in the first half
+                if (mid >= this.end) {
+                    mid = alignBackToSeparator(this.channel, this.start,
+                            half);
+                }
+                //No separator at all: the range cannot be split
+                if (mid <= this.start || mid >= this.end) {
+                    return countRange(this.channel, this.start, this.end);
+                }
+                CountRange left = new CountRange(this.channel, this.start,
+                        mid, this.chunkSize);
+                CountRange right = new CountRange(this.channel, mid,
+                        this.end, this.chunkSize);
+                left.fork();
+                WordCountTable rightWords = right.compute();
+                WordCountTable leftWords = left.join();
+                return mergeWords(leftWords, rightWords);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
             }
         }
     }
 
+    /**
+     * Markup of a tag cloud entry, up to its font size.
+     */
+    private static final byte[] SPAN_FONT = HtmlWriter
+            .fragment("<span style=\"cursor:default\" class=\"f");
+
+    /**
+     * Markup of a tag cloud entry, from its font size to its count.
+     */
+    private static final byte[] SPAN_COUNT = HtmlWriter
+            .fragment("\" title=\"count: ");
+
+    /**
+     * Markup between the low and high end of an approximate count.
+     */
+    private static final byte[] RANGE = HtmlWriter.fragment("-");
+
+    /**
+     * Markup of a tag cloud entry, from its count to its word.
+     */
+    private static final byte[] SPAN_WORD = HtmlWriter.fragment("\">");
+
+    /**
+     * Markup of a tag cloud entry, after its word.
+     */
+    private static final byte[] SPAN_END = HtmlWriter.fragment("</span>");
+
     /**
      * Default constructor--private to prevent instantiation.
      */
@@ -58,9 +128,53 @@ public final class TagCloudUsingJava {
     }
 
     /**
-     * Separators
+     * Separators; line breaks also end a word when text is not read by line
      */
-    private static final String SEPARATORS = " \t,.-:;/\"!?_@#$%&*[]()";
+    private static final String SEPARATORS = " \t\n\r,.-:;/\"!?_@#$%&*[]()";
+
+    /**
+     * Number of characters {@code retrieveWords} reads at a time.
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Number of bytes read from a channel at a time.
+     */
+    private static final int BYTE_BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Smallest byte range worth handing to its own fork-join task.
+     */
+    private static final long MIN_CHUNK_SIZE = 1 << 20;
+
+    /**
+     * Number of byte ranges created per worker, so that a slow range does not
+     * leave the other workers idle.
+     */
+    private static final int CHUNKS_PER_WORKER = 8;
+
+    /**
+     * Number of words in each cloud written by {@code --batch} unless
+     * {@code --words} says otherwise.
+     */
+    private static final int DEFAULT_BATCH_WORDS = 100;
+
+    /**
+     * Megabytes of word counts the server caches by default.
+     */
+    private static final long DEFAULT_CACHE_MEGABYTES = 256;
+
+    /**
+     * Number of buckets a {@code --window} is cut into unless
+     * {@code --buckets} says otherwise.
+     */
+    private static final int DEFAULT_WINDOW_BUCKETS = 60;
+
+    /**
+     * Key of the word-count indexes and count shards this program writes: how
+     * it splits words.
+     */
+    private static final String INDEX_KEY = "TagCloudUsingJava " + SEPARATORS;
 
     /**
      * Puts all words from a file into a {@code Map}.
@@ -78,48 +192,406 @@ public final class TagCloudUsingJava {
     public static Map<String, Integer> retrieveWords(BufferedReader fileInput)
             throws IOException {
         assert fileInput.ready() : "Error: FileStream has to be open";
-        Map<String, Integer> wordMap = new HashMap<String, Integer>();
-        String word = "";
+        return countWords(fileInput).toMap();
+    }
+
+    /**
+     * Counts all words from a file into a {@code WordCountTable}.
+     * 
+     * @param fileInput
+     *            {@code BufferedReader} input stream
+     * @return {@code WordCountTable} containing all words and their counts
+     *         from input
+     * @throws IOException
+     */
+    public static WordCountTable countWords(BufferedReader fileInput)
+            throws IOException {
+        WordCountTable table = new WordCountTable();
+        countWords(fileInput, table);
+        return table;
+    }
+
+    /**
+     * Counts all words from a file into {@code sink}.
+     * 
+     * @param fileInput
+     *            {@code BufferedReader} input stream
+     * @param sink
+     *            {@code WordSink} to count the words in
+     * @updates sink
+     * @throws IOException
+     */
+    public static void countWords(BufferedReader fileInput, WordSink sink)
+            throws IOException {
+        WordTokenizer tokenizer = new WordTokenizer(SEPARATORS, sink);
+        char[] buffer = new char[BUFFER_SIZE];
         try {
-            String line = fileInput.readLine();
-            while (line != null) {
-                line = line.toLowerCase();
-                int length = line.length();
-                for (int i = 0; i < length; i++) {
-                    //from lab we did
-                    if (!SEPARATORS
-                            .contains(Character.toString(line.charAt(i)))) {
-                        Character letter = line.charAt(i);
-                        word = word.concat(letter.toString());
-                    } else if (!word.equals("")) {
-                        if (wordMap.containsKey(word)) {
-                            int value = wordMap.get(word);
-                            value++;
-                            wordMap.put(word, value);
-                        } else {
-                            wordMap.put(word, 1);
-                        }
-                        word = "";
+            int read = fileInput.read(buffer);
+            while (read >= 0) {
+                tokenizer.feed(buffer, 0, read);
+                read = fileInput.read(buffer);
+            }
+        } catch (IOException e) {
+            System.err.print("Error reading stream from file " + e);
+        }
+        tokenizer.endWord();
+    }
 
-                    }
+    /**
+     * Counts all words from the UTF-8 file at {@code file} into a
+     * {@code WordCountTable}, tokenizing the raw bytes. A gzip file or zip
+     * archive is decompressed as it is read, and the entries of a zip archive
+     * are counted in parallel.
+     * 
+     * @param file
+     *            path of the input file
+     * @return {@code WordCountTable} containing all words and their counts
+     *         from the file
+     * @throws IOException
+     */
+    public static WordCountTable countWords(Path file) throws IOException {
+        if (CompressedInput.isCompressed(file)) {
+            return CompressedInput.count(file, in -> {
+                WordCountTable entry = new WordCountTable();
+                countWords(Channels.newChannel(in), entry);
+                return entry;
+            }, TagCloudUsingJava::mergeWords);
+        }
+        WordCountTable table = new WordCountTable();
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.READ)) {
+            countWords(channel, table);
+        }
+        return table;
+    }
+
+    /**
+     * Counts all words from a UTF-8 byte channel into {@code sink}, without
+     * decoding the bytes into {@code String}s first.
+     * 
+     * @param channel
+     *            {@code ReadableByteChannel} input stream
+     * @param sink
+     *            {@code WordSink} to count the words in
+     * @updates sink
+     * @throws IOException
+     */
+    public static void countWords(ReadableByteChannel channel, WordSink sink)
+            throws IOException {
+        Utf8WordTokenizer tokenizer = new Utf8WordTokenizer(SEPARATORS, sink);
+        ByteBuffer buffer = ByteBuffer.allocate(BYTE_BUFFER_SIZE);
+        while (channel.read(buffer) >= 0) {
+            buffer.flip();
+            tokenizer.feed(buffer);
+            buffer.clear();
+        }
+        tokenizer.endWord();
+    }
+
+    /**
+     * Puts all words from the file at {@code fileLocation} into a {@code Map},
+     * counting byte ranges of the file in parallel on the common fork-join
+     * pool. The file is read as UTF-8; ranges are only split right after an
+     * (ASCII) separator byte so no word or multi-byte character is cut in two.
+     * 
+     * @param fileLocation
+     *            path of the input file
+     * @return {@code Map<String,Integer>} containing all words and their
+     *         counts from the file, the same as {@code retrieveWords} returns
+     * @throws IOException
+     */
+    public static Map<String, Integer> retrieveWordsParallel(
+            String fileLocation) throws IOException {
+        return countWordsParallel(fileLocation).toMap();
+    }
+
+    /**
+     * Counts all words from the file at {@code fileLocation} into a
+     * {@code WordCountTable}, counting byte ranges of the file in parallel on
+     * the common fork-join pool. Compressed byte ranges cannot be read on
+     * their own, so a gzip file or zip archive is counted by
+     * {@code countWords(Path)} instead.
+     * 
+     * @param fileLocation
+     *            path of the input file
+     * @return {@code WordCountTable} containing all words and their counts
+     *         from the file
+     * @throws IOException
+     */
+    public static WordCountTable countWordsParallel(String fileLocation)
+            throws IOException {
+        assert !fileLocation.equals("") : "fileLocation cannot be an empty string";
+
+        if (CompressedInput.isCompressed(Paths.get(fileLocation))) {
+            return countWords(Paths.get(fileLocation));
+        }
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        try (FileChannel channel = FileChannel.open(Paths.get(fileLocation),
+                StandardOpenOption.READ)) {
+            long size = channel.size();
+            long chunkSize = Math.max(MIN_CHUNK_SIZE,
+                    size / ((long) pool.getParallelism() * CHUNKS_PER_WORKER));
+            return pool.invoke(new CountRange(channel, 0, size, chunkSize));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Counts all words from the file at {@code fileLocation} into a
+     * {@code WordCountTable} with a {@code CountPipeline}: one thread reads
+     * large blocks while {@code tokenizers} threads count them, so reading
+     * the disk overlaps with counting and memory stays bounded. A gzip file or
+     * zip archive is counted by {@code countWords(Path)} instead.
+     * 
+     * @param fileLocation
+     *            path of the input file
+     * @param tokenizers
+     *            the number of tokenizer threads
+     * @return {@code WordCountTable} containing all words and their counts
+     *         from the file
+     * @throws IOException
+     */
+    public static WordCountTable countWordsPipelined(String fileLocation,
+            int tokenizers) throws IOException {
+        if (CompressedInput.isCompressed(Paths.get(fileLocation))) {
+            return countWords(Paths.get(fileLocation));
+        }
+        return new CountPipeline(SEPARATORS, tokenizers,
+                CountPipeline.DEFAULT_BLOCK_SIZE).count(Paths
+                .get(fileLocation));
+    }
+
+    /**
+     * Counts all words from the UTF-8 file at {@code file} into a
+     * {@code WordArena}, which stores them in far less memory than a
+     * {@code WordCountTable}. A gzip file or zip archive is decompressed as it
+     * is read.
+     * 
+     * @param file
+     *            path of the input file
+     * @return {@code WordArena} containing all words and their counts from
+     *         the file
+     * @throws IOException
+     */
+    public static WordArena countWordsCompact(Path file) throws IOException {
+        WordArena words = new WordArena();
+        if (CompressedInput.isCompressed(file)) {
+            try (ReadableByteChannel channel = Channels
+                    .newChannel(CompressedInput.open(file))) {
+                countWords(channel, words);
+            }
+        } else {
+            try (FileChannel channel = FileChannel.open(file,
+                    StandardOpenOption.READ)) {
+                countWords(channel, words);
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Counts all words from the UTF-8 file at {@code file} into a
+     * {@code WordTrie}, which keeps them in alphabetical order and answers
+     * prefix queries. A gzip file or zip archive is decompressed as it is
+     * read.
+     * 
+     * @param file
+     *            path of the input file
+     * @return {@code WordTrie} containing all words and their counts from the
+     *         file
+     * @throws IOException
+     */
+    public static WordTrie countWordsTrie(Path file) throws IOException {
+        WordTrie words = new WordTrie();
+        if (CompressedInput.isCompressed(file)) {
+            try (ReadableByteChannel channel = Channels
+                    .newChannel(CompressedInput.open(file))) {
+                countWords(channel, words);
+            }
+        } else {
+            try (FileChannel channel = FileChannel.open(file,
+                    StandardOpenOption.READ)) {
+                countWords(channel, words);
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Counts the words of the file at {@code fileLocation} on all cores, on a
+     * pipeline of {@code pipelineTokenizers} threads, or on the calling
+     * thread.
+     * 
+     * @param fileLocation
+     *            path of the input file
+     * @param parallel
+     *            whether to count on all cores
+     * @param pipelineTokenizers
+     *            the number of pipeline threads, or 0 for no pipeline
+     * @return {@code WordCountTable} of every word and its count
+     * @throws IOException
+     */
+    private static WordCountTable countWords(String fileLocation,
+            boolean parallel, int pipelineTokenizers) throws IOException {
+        if (pipelineTokenizers > 0) {
+            return countWordsPipelined(fileLocation, pipelineTokenizers);
+        } else if (parallel) {
+            return countWordsParallel(fileLocation);
+        }
+        return countWords(Paths.get(fileLocation));
+    }
+
+    /**
+     * Counts the n-grams of the UTF-8 file at {@code file} into
+     * {@code counter}, decompressing it as it is read if it is a gzip file or
+     * zip archive.
+     * 
+     * @param file
+     *            path of the input file
+     * @param counter
+     *            {@code NGramCounter} to count the n-grams in
+     * @updates counter
+     * @throws IOException
+     */
+    public static void countNGrams(Path file, NGramCounter counter)
+            throws IOException {
+        try (ReadableByteChannel channel = Channels.newChannel(CompressedInput
+                .open(file))) {
+            countWords(channel, (word, length, hash, count) -> counter.add(
+                    word, length, hash));
+        }
+    }
+
+    /**
+     * Returns the first position at or after {@code position} that starts a
+     * new token, i.e. one past the next separator byte, or {@code end} if the
+     * range has no separator after {@code position}.
+     * 
+     * @param channel
+     *            the file being counted
+     * @param position
+     *            where to start looking
+     * @param end
+     *            end of the range being split
+     * @return the aligned split position
+     * @throws IOException
+     */
+    private static long alignToSeparator(FileChannel channel, long position,
+            long end) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        long pos = position;
+        while (pos < end) {
+            buffer.clear();
+            int read = channel.read(buffer, pos);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read && pos + i < end; i++) {
+                byte b = buffer.get(i);
+                if (b >= 0 && SEPARATORS.indexOf(b) >= 0) {
+                    return pos + i + 1;
                 }
-                if (!word.equals("")) {
-                    if (wordMap.containsKey(word)) {
-                        //removes and re-added the the incremented value
-                        int value = wordMap.get(word);
-                        value++;
-                        wordMap.put(word, value);
-                    } else {
-                        wordMap.put(word, 1);
-                    }
-                    word = "";
+            }
+            pos += read;
+        }
+        return end;
+    }
+
+    /**
+     * Returns the last position before {@code position} that starts a new
+     * token, i.e. one past the last separator byte in
+     * {@code [start, position)}, or {@code start} if there is none.
+     * 
+     * @param channel
+     *            the file being counted
+     * @param start
+     *            start of the range being split
+     * @param position
+     *            where to start looking back from
+     * @return the aligned split position
+     * @throws IOException
+     */
+    private static long alignBackToSeparator(FileChannel channel, long start,
+            long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        long pos = position;
+        while (pos > start) {
+            long from = Math.max(start, pos - buffer.capacity());
+            buffer.clear();
+            buffer.limit((int) (pos - from));
+            int read = 0;
+            while (buffer.hasRemaining()) {
+                int n = channel.read(buffer, from + read);
+                if (n < 0) {
+                    break;
                 }
-                line = fileInput.readLine();
+                read += n;
             }
-        } catch (IOException e) {
-            System.err.print("Error reading stream from file " + e);
+            for (int i = read - 1; i >= 0; i--) {
+                byte b = buffer.get(i);
+                if (b >= 0 && SEPARATORS.indexOf(b) >= 0) {
+                    return from + i + 1;
+                }
+            }
+            pos = from;
+        }
+        return start;
+    }
+
+    /**
+     * Counts the words in bytes {@code [start, end)} of {@code channel},
+     * reading them through a buffer of fixed size however long the range is.
+     * 
+     * @param channel
+     *            the file being counted
+     * @param start
+     *            first byte of the range
+     * @param end
+     *            one past the last byte of the range
+     * @return {@code WordCountTable} of the words in the range
+     * @throws IOException
+     */
+    private static WordCountTable countRange(FileChannel channel,
+            long start, long end) throws IOException {
+        WordCountTable table = new WordCountTable();
+        Utf8WordTokenizer tokenizer = new Utf8WordTokenizer(SEPARATORS, table);
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(
+                BYTE_BUFFER_SIZE, Math.max(end - start, 1)));
+        long position = start;
+        while (position < end) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                break;
+            }
+            position += read;
+            buffer.flip();
+            tokenizer.feed(buffer);
+        }
+        tokenizer.endWord();
+        return table;
+    }
+
+    /**
+     * Adds the counts of the smaller table into the larger one and returns the
+     * larger one.
+     * 
+     * @param first
+     *            {@code WordCountTable} of partial counts
+     * @param second
+     *            {@code WordCountTable} of partial counts
+     * @return the merged counts
+     */
+    private static WordCountTable mergeWords(WordCountTable first,
+            WordCountTable second) {
+        if (second.size() > first.size()) {
+            second.addAll(first);
+            return second;
         }
-        return wordMap;
+        first.addAll(second);
+        return first;
     }
 
     /**
@@ -146,30 +618,140 @@ public final class TagCloudUsingJava {
     public static Queue<Integer> wordFontSort(Map<String, Integer> wordMap,
             int nWords, Map<String, Integer> wordSort) {
 
-        IntegerCompare ic = new IntegerCompare(wordMap);
-        TreeMap<String, Integer> countTree = new TreeMap<String, Integer>(ic);
-        Queue<Integer> fontSizes = new LinkedList<Integer>();
-        wordSort.clear();
+        TopWords top = new TopWords(Math.max(nWords, 0));
+        for (Entry<String, Integer> entry : wordMap.entrySet()) {
+            top.offer(entry.getKey(), entry.getValue());
+        }
+        return wordFontSort(top, wordSort);
+    }
+
+    /**
+     * Takes a table of words and their counts and sorts the top N most
+     * occurring in alphabetical order and returns a Queue containing their
+     * corresponding fonts sizes.
+     * 
+     * @param table
+     *            {@code WordCountTable} containing all words and their counts
+     * @param nWords
+     *            {@code Integer} containing the number of words to display in
+     *            tagCloud
+     * @param wordSort
+     *            A {@code TreeMap} that will sort word entries and their counts
+     * 
+     * @return A {@code Queue} of the fonts
+     * 
+     * @replaces wordSort
+     */
+    public static Queue<Integer> wordFontSort(WordCountTable table,
+            int nWords, Map<String, Integer> wordSort) {
+        return wordFontSort(topWords(table, nWords), wordSort);
+    }
 
-        Set<Entry<String, Integer>> wordSet = wordMap.entrySet();
-        //put the map into a set
-        for (Entry<String, Integer> entry : wordSet) {
-            countTree.put(entry.getKey(), entry.getValue());
+    /**
+     * Selects the top N words of a table of words and their counts.
+     * 
+     * @param table
+     *            {@code WordCountTable} containing all words and their counts
+     * @param nWords
+     *            the number of words to select
+     * @return {@code TopWords} holding the top N words and the smallest and
+     *         largest count of all words
+     */
+    public static TopWords topWords(WordCountTable table, int nWords) {
+        TopWords top = new TopWords(Math.max(nWords, 0));
+        for (int i = 0; i < table.capacity(); i++) {
+            String word = table.wordAt(i);
+            if (word != null) {
+                top.offer(word, table.countAt(i));
+            }
         }
+        return top;
+    }
 
-        double max = countTree.firstEntry().getValue();
-        double min = countTree.lastEntry().getValue();
+    /**
+     * Selects the top N words of a {@code WordArena}. The count of the N-th
+     * most frequent word is found first from the counts alone; only words at
+     * least that frequent, and one of the least frequent, are then made into
+     * {@code String}s and offered, so {@code TopWords} also learns the
+     * smallest and largest count of all words.
+     * 
+     * @param words
+     *            {@code WordArena} containing all words and their counts
+     * @param nWords
+     *            the number of words to select
+     * @return {@code TopWords} holding the top N words and the smallest and
+     *         largest count of all words
+     */
+    public static TopWords topWords(WordArena words, int nWords) {
+        TopWords top = new TopWords(Math.max(nWords, 0));
+        if (words.size() == 0 || nWords <= 0) {
+            return top;
+        }
 
-        int counter = 0;
-        while (counter < nWords && !countTree.isEmpty()) {
-            Entry<String, Integer> countEntry = countTree.firstEntry();
-            String key = countEntry.getKey();
-            int value = countEntry.getValue();
-            wordSort.put(key, value);
-            countTree.remove(key);
-            counter++;
+        int threshold = words.threshold(nWords);
+        int minId = 0;
+        for (int id = 0; id < words.size(); id++) {
+            int count = words.count(id);
+            if (count >= threshold) {
+                top.offer(words.word(id), count);
+            }
+            if (count < words.count(minId)) {
+                minId = id;
+            }
+        }
+        if (words.count(minId) < threshold) {
+            top.offer(words.word(minId), words.count(minId));
         }
+        return top;
+    }
 
+    /**
+     * Selects the top N of the words of a {@code WordTrie} that start with
+     * {@code prefix}. Only the subtree of the prefix is walked, so the
+     * smallest and largest count are those of the matching words.
+     * 
+     * @param words
+     *            {@code WordTrie} containing all words and their counts
+     * @param prefix
+     *            the prefix the words start with; "" for every word
+     * @param nWords
+     *            the number of words to select
+     * @return {@code TopWords} holding the top N matching words and the
+     *         smallest and largest count of all matching words
+     * @throws IOException
+     */
+    public static TopWords topWords(WordTrie words, String prefix, int nWords)
+            throws IOException {
+        TopWords top = new TopWords(Math.max(nWords, 0));
+        words.forEach(prefix, top::offer);
+        return top;
+    }
+
+    /**
+     * Puts the words selected by {@code top} into {@code wordSort} and returns
+     * a Queue containing their corresponding font sizes.
+     * 
+     * @param top
+     *            {@code TopWords} holding the top N words and the smallest
+     *            and largest count of all words
+     * @param wordSort
+     *            A {@code TreeMap} that will sort word entries and their counts
+     * 
+     * @return A {@code Queue} of the fonts, in the iteration order of
+     *         {@code wordSort}
+     * 
+     * @replaces wordSort
+     */
+    public static Queue<Integer> wordFontSort(TopWords top,
+            Map<String, Integer> wordSort) {
+        Queue<Integer> fontSizes = new LinkedList<Integer>();
+        wordSort.clear();
+        for (int i = 0; i < top.size(); i++) {
+            wordSort.put(top.word(i), top.count(i));
+        }
+
+        double max = top.maxCount();
+        double min = top.minCount();
         for (Map.Entry<String, Integer> entry : wordSort.entrySet()) {
             int fontSize = 0;
             int currentCount = entry.getValue();
@@ -199,60 +781,702 @@ public final class TagCloudUsingJava {
      * 
      * 
      * @param output
-     *            {@code PrintWrtier}output stream
+     *            {@code HtmlWriter} output stream
+     * @throws IOException
      * 
      */
     public static void createBody(Queue<Integer> fontSizes,
-            TreeMap<String, Integer> sortWords, PrintWriter output,
-            String fileLocation, int nWords) {
+            TreeMap<String, Integer> sortWords, HtmlWriter output,
+            String fileLocation, int nWords) throws IOException {
+        createBody(fontSizes, sortWords,
+                Collections.<String, Integer> emptyMap(), output,
+                fileLocation, nWords);
+    }
+
+    /**
+     * Creates the HTML code with the header, word name, and appropriate
+     * FontSize, the footer, showing the range a count may fall in when it is
+     * only approximate. Each entry is taken out of {@code sortWords} once and
+     * written straight into the output buffer.
+     * 
+     * @param fontSizes
+     *            {@code Queue} containing fontSizes retrieved from entries in
+     *            TreeMap
+     * @param sortWords
+     *            {code TreeMap} that contains the top N words sorted
+     *            alphabetically with their counts
+     * @param errors
+     *            {@code Map} from a word to how much its count may be too
+     *            high; words not in it have exact counts
+     * @param output
+     *            {@code HtmlWriter} output stream
+     * @param fileLocation
+     *            name of the input shown in the page title
+     * @param nWords
+     *            the number of words in the tag cloud
+     * @throws IOException
+     */
+    public static void createBody(Queue<Integer> fontSizes,
+            TreeMap<String, Integer> sortWords, Map<String, Integer> errors,
+            HtmlWriter output, String fileLocation, int nWords)
+            throws IOException {
 
         assert !fontSizes.isEmpty() : "fontSizes cannot be empty";
         assert !sortWords.isEmpty() : "sortWords cannot be empty";
         assert !fileLocation.equals("") : "fileLocation cannot be an empty string";
 
-        output.println("<html>");
-        output.println("<head>");
-        output.println("<title>Top " + nWords + " words in data/"
-                + fileLocation + "</title>");
-        output.println("<link href=" + '"' + "doc/tagcloud.css" + '"' + " rel="
+        output.raw("<html>").newline();
+        output.raw("<head>").newline();
+        output.raw("<title>Top " + nWords + " words in data/")
+                .text(fileLocation).raw("</title>").newline();
+        output.raw("<link href=" + '"' + "doc/tagcloud.css" + '"' + " rel="
                 + '"' + "stylesheet" + '"' + " type =" + '"' + "text/css" + '"'
-                + ">");
+                + ">").newline();
+
+        output.raw("</head>").newline();
+        output.raw("<body>").newline();
+        output.raw("<h2>Top " + nWords + " words in ").text(fileLocation)
+                .raw("</h2>").newline();
+        output.raw("<hr>").newline();
+        output.raw("<div class = " + '"' + "cdiv" + '"' + ">").newline();
+        output.raw("<p class =" + '"' + "cbox" + '"' + ">").newline();
+        Entry<String, Integer> entry = sortWords.pollFirstEntry();
+        while (entry != null) {
+            int count = entry.getValue();
+            output.raw(SPAN_FONT).number(fontSizes.remove()).raw(SPAN_COUNT);
+            Integer error = errors.get(entry.getKey());
+            if (error != null && error > 0) {
+                output.number(count - error).raw(RANGE);
+            }
+            output.number(count).raw(SPAN_WORD).text(entry.getKey())
+                    .raw(SPAN_END).newline();
+            entry = sortWords.pollFirstEntry();
+        }
+        output.raw("</p>").newline();
+        output.raw("</div>").newline();
+        output.raw("</body>").newline();
+        output.raw("</html>").newline();
+    }
+
+    /**
+     * Selects the top N words of the file at {@code fileLocation} from its
+     * word-count index at {@code indexLocation}, without reading the file. If
+     * there is no index for the file as it is now, the file is counted and the
+     * index is written for next time.
+     * 
+     * @param fileLocation
+     *            path of the input file
+     * @param indexLocation
+     *            path of its index
+     * @param nWords
+     *            the number of words to select
+     * @param parallel
+     *            whether to count the file on all cores if it must be counted
+     * @return {@code TopWords} holding the top N words and the smallest and
+     *         largest count of all words
+     * @throws IOException
+     */
+    public static TopWords indexedWords(String fileLocation,
+            String indexLocation, int nWords, boolean parallel)
+            throws IOException {
+        Path source = Paths.get(fileLocation);
+        Path indexPath = Paths.get(indexLocation);
+        TopWords top = new TopWords(Math.max(nWords, 0));
+        WordIndex index = WordIndex.load(indexPath, source, INDEX_KEY);
+        if (index != null) {
+            for (int i = 0; i < index.size(); i++) {
+                top.offer(index.word(i), index.count(i));
+            }
+            return top;
+        }
+
+        WordCountTable counts;
+        if (parallel) {
+            counts = countWordsParallel(fileLocation);
+        } else {
+            counts = countWords(source);
+        }
+        String[] words = new String[counts.size()];
+        int[] wordCounts = new int[counts.size()];
+        int size = 0;
+        for (int i = 0; i < counts.capacity(); i++) {
+            String word = counts.wordAt(i);
+            if (word != null) {
+                words[size] = word;
+                wordCounts[size] = counts.countAt(i);
+                top.offer(word, wordCounts[size]);
+                size++;
+            }
+        }
+        WordIndex.write(indexPath, source, INDEX_KEY, words, wordCounts, size);
+        return top;
+    }
+
+    /**
+     * Selects the top N words of a file, with exact counts, while holding at
+     * most {@code maxWords} distinct words in memory. Past that, counts are
+     * spilled to sorted temporary run files that are merged at the end.
+     * 
+     * @param fileInput
+     *            {@code BufferedReader} input stream
+     * @param nWords
+     *            the number of words to select
+     * @param maxWords
+     *            most distinct words to hold in memory at once
+     * @return {@code TopWords} holding the top N words and the smallest and
+     *         largest count of all words
+     * @throws IOException
+     */
+    public static TopWords spillWords(BufferedReader fileInput, int nWords,
+            int maxWords) throws IOException {
+        TopWords top = new TopWords(Math.max(nWords, 0));
+        try (SpillingWordCounter counter = new SpillingWordCounter(maxWords,
+                Comparator.<String> naturalOrder())) {
+            countWords(fileInput, counter);
+            counter.mergeTo(top::offer);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return top;
+    }
+
+    /**
+     * Writes a tag cloud of the approximate top N words in a file, counted in
+     * about {@code budgetBytes} bytes of heap however large its vocabulary.
+     * Each count is shown as the range the true count falls in.
+     * 
+     * @param fileInput
+     *            {@code BufferedReader} input stream
+     * @param output
+     *            {@code HtmlWriter} output stream
+     * @param fileLocation
+     *            name of the input shown in the page title
+     * @param nWords
+     *            the number of words to display in the tag cloud
+     * @param budgetBytes
+     *            about how many bytes of heap the counts may use
+     * @throws IOException
+     */
+    public static void approximateCloud(BufferedReader fileInput,
+            HtmlWriter output, String fileLocation, int nWords,
+            long budgetBytes) throws IOException {
+        HeavyHitters counts = new HeavyHitters(budgetBytes);
+        countWords(fileInput, counts);
+
+        TopWords top = new TopWords(Math.max(nWords, 0));
+        counts.select(top);
+        TreeMap<String, Integer> sortWords = new TreeMap<String, Integer>();
+        Queue<Integer> fontSizes = wordFontSort(top, sortWords);
+        Map<String, Integer> errors = new HashMap<String, Integer>();
+        for (String word : sortWords.keySet()) {
+            errors.put(word, counts.errorOf(word));
+        }
+        createBody(fontSizes, sortWords, errors, output, fileLocation, nWords);
+    }
+
+    /**
+     * Writes the tag cloud of the top N words in {@code counts} to
+     * {@code page}. The page is written to a temporary file and moved into
+     * place so it is never seen half written.
+     * 
+     * @param counts
+     *            {@code WordCountTable} of all words and their counts, not
+     *            empty
+     * @param nWords
+     *            the number of words to display in the tag cloud
+     * @param page
+     *            path of the output html file
+     * @param title
+     *            name of the input shown in the page title
+     * @throws IOException
+     */
+    public static void writeCloud(WordCountTable counts, int nWords,
+            Path page, String title) throws IOException {
+        assert counts.size() > 0 : "counts cannot be empty";
+
+        writeCloud(topWords(counts, nWords), nWords, page, title);
+    }
+
+    /**
+     * Writes the tag cloud of the words selected by {@code top} to
+     * {@code page}. The page is written to a temporary file and moved into
+     * place so it is never seen half written.
+     * 
+     * @param top
+     *            {@code TopWords} holding the top N words and the smallest
+     *            and largest count of all words, not empty
+     * @param nWords
+     *            the number of words to display in the tag cloud
+     * @param page
+     *            path of the output html file
+     * @param title
+     *            name of the input shown in the page title
+     * @throws IOException
+     */
+    public static void writeCloud(TopWords top, int nWords, Path page,
+            String title) throws IOException {
+        assert top.size() > 0 : "top cannot be empty";
+
+        Path absolutePage = page.toAbsolutePath();
+        Path tempPage = absolutePage.resolveSibling(absolutePage.getFileName()
+                + ".tmp");
+        TreeMap<String, Integer> sortWords = new TreeMap<String, Integer>();
+        Queue<Integer> fontSizes = wordFontSort(top, sortWords);
+        try (HtmlWriter output = new HtmlWriter(tempPage)) {
+            createBody(fontSizes, sortWords, output, title, nWords);
+        }
+        Files.move(tempPage, absolutePage,
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Writes a tag cloud for every file in {@code inputs} and one for all of
+     * them together, counting the files on a pool of {@code threads} worker
+     * threads. Each input that is a directory stands for the regular files
+     * directly inside it. The page for a file is named after the file with
+     * {@code .html} added; the combined page is {@code corpus.html}. Per-file
+     * counts are merged into the combined counts as soon as each file is
+     * done, so only the files in flight are held in memory. A file that
+     * cannot be read is reported and skipped.
+     * 
+     * @param inputs
+     *            paths of the input files and directories
+     * @param outputDir
+     *            directory the pages are written to
+     * @param nWords
+     *            the number of words to display in each tag cloud
+     * @param threads
+     *            the number of worker threads
+     * @throws IOException
+     */
+    public static void batch(List<String> inputs, String outputDir,
+            int nWords, int threads) throws IOException {
+        assert threads > 0 : "Violation of: threads > 0";
+
+        List<Path> files = new ArrayList<Path>();
+        for (String input : inputs) {
+            Path path = Paths.get(input);
+            if (Files.isDirectory(path)) {
+                try (DirectoryStream<Path> dir = Files.newDirectoryStream(path)) {
+                    for (Path file : dir) {
+                        if (Files.isRegularFile(file)) {
+                            files.add(file);
+                        }
+                    }
+                }
+            } else {
+                files.add(path);
+            }
+        }
+        Path outDir = Paths.get(outputDir);
+        Files.createDirectories(outDir);
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CompletionService<WordCountTable> done = new ExecutorCompletionService<WordCountTable>(
+                pool);
+        Map<Future<WordCountTable>, Path> pending = new HashMap<Future<WordCountTable>, Path>();
+        for (Path file : files) {
+            Path page = outDir.resolve(file.getFileName() + ".html");
+            pending.put(done.submit(() -> {
+                WordCountTable counts = countWords(file);
+                if (counts.size() > 0) {
+                    writeCloud(counts, nWords, page, file.toString());
+                }
+                return counts;
+            }), file);
+        }
+
+        WordCountTable corpus = new WordCountTable();
+        try {
+            while (!pending.isEmpty()) {
+                Future<WordCountTable> result = done.take();
+                Path file = pending.remove(result);
+                try {
+                    corpus.addAll(result.get());
+                } catch (ExecutionException e) {
+                    System.err.println("Error counting " + file + " "
+                            + e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } finally {
+            pool.shutdownNow();
+        }
+
+        if (corpus.size() > 0) {
+            writeCloud(corpus, nWords, outDir.resolve("corpus.html"),
+                    files.size() + " files");
+        }
+    }
+
+    /**
+     * Adds up the count shards in {@code shards}, written by {@code --shard}
+     * runs over parts of a corpus, and writes the tag cloud of the top N
+     * words of the whole corpus to {@code page}. The shards are streamed
+     * through a k-way merge, so only the top N words are held in memory. If
+     * {@code merged} is not null, the total counts are also written to a
+     * shard there, which can itself be merged again later.
+     * 
+     * @param shards
+     *            paths of the shards
+     * @param page
+     *            path of the output html file
+     * @param nWords
+     *            the number of words to display in the tag cloud
+     * @param merged
+     *            path of the shard of total counts, or null for none
+     * @throws IOException
+     */
+    public static void mergeShards(List<Path> shards, Path page, int nWords,
+            Path merged) throws IOException {
+        TopWords top = new TopWords(Math.max(nWords, 0));
+        if (merged == null) {
+            CountShard.merge(shards, INDEX_KEY, Comparator.naturalOrder(),
+                    top::offer);
+        } else {
+            try (CountShard.Writer writer = new CountShard.Writer(merged,
+                    INDEX_KEY, Comparator.naturalOrder())) {
+                CountShard.merge(shards, INDEX_KEY, Comparator.naturalOrder(),
+                        (word, count) -> {
+                            top.offer(word, count);
+                            writer.accept(word, count);
+                        });
+                writer.finish();
+            }
+        }
+        if (top.size() > 0) {
+            writeCloud(top, nWords, page, shards.size() + " shards");
+        }
+    }
+
+    /**
+     * Follows a growing file such as a log, rewriting the tag cloud of the
+     * top N words every {@code intervalMillis} milliseconds. Each refresh only
+     * reads what was appended since the last one and only ranks the words it
+     * read against the current top N, and a refresh that reads nothing leaves
+     * the page alone. If the file is truncated or rotated, counting starts
+     * over. Runs until the thread is interrupted.
+     * 
+     * @param fileLocation
+     *            path of the file to follow
+     * @param fileName
+     *            path of the output html file
+     * @param nWords
+     *            the number of words to display in the tag cloud
+     * @param intervalMillis
+     *            time between refreshes, in milliseconds
+     * @throws IOException
+     */
+    public static void followFile(String fileLocation, String fileName,
+            int nWords, long intervalMillis) throws IOException {
+        assert intervalMillis > 0 : "Violation of: intervalMillis > 0";
 
-        output.println("</head>");
-        output.println("<body>");
-        output.println("<h2>Top " + nWords + " words in " + fileLocation
-                + "</h2>");
-        output.println("<hr>");
-        output.println("<div class = " + '"' + "cdiv" + '"' + ">");
-        output.println("<p class =" + '"' + "cbox" + '"' + ">");
-        while (sortWords.size() > 0) {
-            output.println("<span style=" + '"' + "cursor:default" + '"'
-                    + " class=" + '"' + 'f' + fontSizes.remove() + '"'
-                    + " title=" + '"' + "count: "
-                    + sortWords.firstEntry().getValue() + '"' + ">"
-                    + sortWords.firstEntry().getKey() + "</span>");
+        Path page = Paths.get(fileName);
+        RunningTopWords running = new RunningTopWords(Math.max(nWords, 0));
+        try (LogFollower follower = new LogFollower(fileLocation, SEPARATORS,
+                running)) {
+            long restarts = 0;
+            while (!Thread.currentThread().isInterrupted()) {
+                long read = follower.poll();
+                if (follower.restarts() != restarts) {
+                    restarts = follower.restarts();
+                    running.clear();
+                } else if (read > 0) {
+                    TopWords top = running.update();
+                    if (top.size() > 0) {
+                        writeCloud(top, nWords, page, fileLocation);
+                    }
+                }
+                try {
+                    Thread.sleep(intervalMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
 
-            sortWords.remove(sortWords.firstEntry().getKey());
+    /**
+     * Follows a growing file such as a log, rewriting the tag cloud of the
+     * top N words counted in the last {@code windowMillis} milliseconds every
+     * {@code intervalMillis} milliseconds. Words are counted in buckets of
+     * time, and the counts of buckets that fall out of the window are taken
+     * away as it slides, so no refresh recounts the window. What the file
+     * holds when following starts is skipped, since the time it was written
+     * is not known; only words appended from then on are counted. Runs until
+     * the thread is interrupted.
+     * 
+     * @param fileLocation
+     *            path of the file to follow
+     * @param fileName
+     *            path of the output html file
+     * @param nWords
+     *            the number of words to display in the tag cloud
+     * @param intervalMillis
+     *            time between refreshes, in milliseconds
+     * @param windowMillis
+     *            length of the window, in milliseconds
+     * @param buckets
+     *            number of buckets the window is cut into
+     * @throws IOException
+     */
+    public static void followWindow(String fileLocation, String fileName,
+            int nWords, long intervalMillis, long windowMillis, int buckets)
+            throws IOException {
+        assert intervalMillis > 0 : "Violation of: intervalMillis > 0";
 
+        Path page = Paths.get(fileName);
+        SlidingWindowCounter window = new SlidingWindowCounter(windowMillis,
+                buckets, System.currentTimeMillis());
+        try (LogFollower follower = new LogFollower(fileLocation, SEPARATORS,
+                window)) {
+            follower.skipToEnd();
+            while (!Thread.currentThread().isInterrupted()) {
+                window.advanceTo(System.currentTimeMillis());
+                follower.poll();
+                if (window.counts().size() > 0) {
+                    writeCloud(window.counts(), nWords, page, fileLocation);
+                }
+                try {
+                    Thread.sleep(intervalMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
         }
-        output.println("</p>");
-        output.println("</div>");
-        output.println("</body>");
-        output.println("</html>");
     }
 
     /**
      * Main method.
      * 
      * @param args
-     *            the command line arguments; unused here
+     *            the command line arguments; {@code --parallel} counts the
+     *            input file on all cores, {@code --pipeline[=T]} reads the
+     *            input file on one thread while T threads (by default one per
+     *            core) count it, {@code --follow=SECONDS} keeps
+     *            following the input file and rewrites the output every
+     *            SECONDS seconds, counting only the last {@code --window=W}
+     *            seconds in {@code --buckets=B} buckets if a window is given,
+     *            {@code --batch=DIR FILE...} writes clouds
+     *            for every listed file or directory into DIR without
+     *            prompting, using {@code --threads=T} worker threads and
+     *            {@code --words=N} words per cloud, {@code --approximate=MB}
+     *            counts in about MB megabytes with approximate counts,
+     *            {@code --spill=WORDS} keeps exact counts of at most WORDS
+     *            distinct words in memory and spills the rest to disk,
+     *            {@code --serve=PORT} serves {@code GET /cloud?file=PATH&n=N}
+     *            on localhost with {@code --threads=T} threads, caching
+     *            {@code --cache=MB} megabytes of word counts and serving
+     *            only files under {@code --root=DIR} (by default the working
+     *            directory),
+     *            {@code --index[=PATH]} loads the word counts from the index
+     *            at PATH (by default the input file with {@code .idx} added)
+     *            and writes it if it is missing or out of date, counting it
+     *            on all cores if {@code --parallel} is also given,
+     *            {@code --shard=PATH} only counts the input file and writes
+     *            its counts to a shard at PATH, {@code --merge=PAGE
+     *            SHARD...} adds up the listed shards and writes the cloud of
+     *            their {@code --words=N} top words to PAGE (and their total
+     *            counts to the {@code --shard} if one is given),
+     *            {@code --report=PATH} writes a JSON report of the time and
+     *            memory each phase of the run took, {@code --compact} counts
+     *            in a {@code WordArena} to save memory on very large
+     *            vocabularies, {@code --prefix=P} counts in a {@code WordTrie}
+     *            and makes a cloud of only the words starting with P, printing
+     *            their total count, {@code --ngram=N} makes a cloud of the
+     *            most frequent phrases of N words instead of single words; the
+     *            input file may be a gzip file or a zip archive, read without
+     *            unpacking it
      * @throws IOException
      */
     public static void main(String[] args) throws IOException {
+        boolean parallel = false;
+        int pipelineTokenizers = 0;
+        int ngram = 1;
+        boolean compact = false;
+        String prefix = null;
+        long followSeconds = 0;
+        long windowSeconds = 0;
+        int windowBuckets = DEFAULT_WINDOW_BUCKETS;
+        long approximateMegabytes = 0;
+        int spillLimit = 0;
+        int servePort = -1;
+        boolean useIndex = false;
+        String indexLocation = null;
+        long cacheMegabytes = DEFAULT_CACHE_MEGABYTES;
+        String serveRoot = ".";
+        String batchDir = null;
+        String reportLocation = null;
+        String shardLocation = null;
+        String mergePage = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int batchWords = DEFAULT_BATCH_WORDS;
+        List<String> inputs = new ArrayList<String>();
+        for (String arg : args) {
+            if (arg.equals("--parallel")) {
+                parallel = true;
+            } else if (arg.equals("--pipeline")) {
+                pipelineTokenizers = Runtime.getRuntime()
+                        .availableProcessors();
+            } else if (arg.startsWith("--pipeline=")) {
+                pipelineTokenizers = Integer.parseInt(arg
+                        .substring("--pipeline=".length()));
+            } else if (arg.startsWith("--follow=")) {
+                followSeconds = Long.parseLong(arg.substring("--follow="
+                        .length()));
+            } else if (arg.startsWith("--window=")) {
+                windowSeconds = Long.parseLong(arg.substring("--window="
+                        .length()));
+            } else if (arg.startsWith("--buckets=")) {
+                windowBuckets = Integer.parseInt(arg.substring("--buckets="
+                        .length()));
+            } else if (arg.startsWith("--approximate=")) {
+                approximateMegabytes = Long.parseLong(arg
+                        .substring("--approximate=".length()));
+            } else if (arg.startsWith("--spill=")) {
+                spillLimit = Integer.parseInt(arg.substring("--spill="
+                        .length()));
+            } else if (arg.startsWith("--serve=")) {
+                servePort = Integer.parseInt(arg.substring("--serve="
+                        .length()));
+            } else if (arg.startsWith("--cache=")) {
+                cacheMegabytes = Long.parseLong(arg.substring("--cache="
+                        .length()));
+            } else if (arg.startsWith("--root=")) {
+                serveRoot = arg.substring("--root=".length());
+            } else if (arg.equals("--index")) {
+                useIndex = true;
+            } else if (arg.startsWith("--index=")) {
+                useIndex = true;
+                indexLocation = arg.substring("--index=".length());
+            } else if (arg.startsWith("--batch=")) {
+                batchDir = arg.substring("--batch=".length());
+            } else if (arg.startsWith("--threads=")) {
+                threads = Integer.parseInt(arg.substring("--threads="
+                        .length()));
+            } else if (arg.startsWith("--report=")) {
+                reportLocation = arg.substring("--report=".length());
+            } else if (arg.startsWith("--shard=")) {
+                shardLocation = arg.substring("--shard=".length());
+            } else if (arg.startsWith("--merge=")) {
+                mergePage = arg.substring("--merge=".length());
+            } else if (arg.equals("--compact")) {
+                compact = true;
+            } else if (arg.startsWith("--prefix=")) {
+                prefix = arg.substring("--prefix=".length()).toLowerCase();
+            } else if (arg.startsWith("--ngram=")) {
+                ngram = Integer.parseInt(arg.substring("--ngram=".length()));
+            } else if (arg.startsWith("--words=")) {
+                batchWords = Integer.parseInt(arg.substring("--words="
+                        .length()));
+            } else if (!arg.startsWith("--")) {
+                inputs.add(arg);
+            } else {
+                System.err.println("Unknown option " + arg);
+                return;
+            }
+        }
+
+        if (ngram > 1
+                && (parallel || pipelineTokenizers > 0 || followSeconds > 0
+                        || approximateMegabytes > 0 || spillLimit > 0
+                        || servePort >= 0 || useIndex || batchDir != null
+                        || shardLocation != null || mergePage != null)) {
+            System.err.println("--ngram cannot be combined with another mode");
+            return;
+        }
+        if (windowSeconds > 0
+                && (followSeconds <= 0 || windowBuckets <= 0
+                        || windowSeconds * 1000 < windowBuckets)) {
+            System.err.println("--window needs --follow and at most one "
+                    + "bucket per millisecond");
+            return;
+        }
+        if (compact
+                && (parallel || pipelineTokenizers > 0 || followSeconds > 0
+                        || approximateMegabytes > 0 || spillLimit > 0
+                        || servePort >= 0 || useIndex || batchDir != null
+                        || shardLocation != null || mergePage != null
+                        || ngram > 1)) {
+            System.err.println("--compact cannot be combined with another "
+                    + "mode");
+            return;
+        }
+        if (prefix != null
+                && (parallel || pipelineTokenizers > 0 || followSeconds > 0
+                        || approximateMegabytes > 0 || spillLimit > 0
+                        || servePort >= 0 || useIndex || batchDir != null
+                        || shardLocation != null || mergePage != null
+                        || ngram > 1 || compact)) {
+            System.err.println("--prefix cannot be combined with another "
+                    + "mode");
+            return;
+        }
+        if (useIndex
+                && (pipelineTokenizers > 0 || followSeconds > 0
+                        || approximateMegabytes > 0 || spillLimit > 0
+                        || servePort >= 0 || batchDir != null)) {
+            System.err.println("--index can only be combined with "
+                    + "--parallel");
+            return;
+        }
+        if ((shardLocation != null || mergePage != null)
+                && (followSeconds > 0 || approximateMegabytes > 0
+                        || spillLimit > 0 || servePort >= 0 || useIndex
+                        || batchDir != null)) {
+            System.err.println("--shard and --merge can only be combined "
+                    + "with --parallel, --pipeline and each other");
+            return;
+        }
+        if (servePort >= 0) {
+            CloudServer server = new CloudServer(Paths.get(serveRoot),
+                    servePort, threads, cacheMegabytes << 20);
+            server.start();
+            System.out.println("Serving tag clouds at http://localhost:"
+                    + server.port() + "/cloud?file=PATH&n=N");
+            return;
+        }
+        if (batchDir != null) {
+            batch(inputs, batchDir, batchWords, threads);
+            return;
+        }
+        if (mergePage != null) {
+            List<Path> shards = new ArrayList<Path>();
+            for (String input : inputs) {
+                shards.add(Paths.get(input));
+            }
+            Path merged = null;
+            if (shardLocation != null) {
+                merged = Paths.get(shardLocation);
+            }
+            RunReport report = new RunReport("TagCloudUsingJava",
+                    shards.size() + " shards");
+            report.start("merge_cloud");
+            try {
+                mergeShards(shards, Paths.get(mergePage), batchWords, merged);
+            } catch (IOException e) {
+                System.err.println("Error merging shards " + e);
+                return;
+            }
+            report.stop();
+            if (reportLocation != null) {
+                report.write(Paths.get(reportLocation));
+            }
+            return;
+        }
+        if (!inputs.isEmpty()) {
+            System.err.println("Input files can only be listed with --batch "
+                    + "or --merge");
+            return;
+        }
+
         BufferedReader input = new BufferedReader(new InputStreamReader(
                 System.in));
         BufferedReader fileInput = null;
-        PrintWriter output = null;
+        HtmlWriter output = null;
 
         System.out.print("Enter the location of the input file: ");
         String fileLocation = "";
@@ -263,8 +1487,41 @@ public final class TagCloudUsingJava {
             return;
         }
 
+        if (shardLocation != null) {
+            input.close();
+            RunReport report = new RunReport("TagCloudUsingJava",
+                    fileLocation);
+            report.start(RunReport.COUNT);
+            WordCountTable counts;
+            try {
+                counts = countWords(fileLocation, parallel,
+                        pipelineTokenizers);
+                report.start("write_shard");
+                CountShard.write(Paths.get(shardLocation), INDEX_KEY,
+                        Comparator.naturalOrder(), counts);
+            } catch (IOException e) {
+                System.err.println("Error writing shard " + e);
+                return;
+            }
+            report.stop();
+            report.set(RunReport.DISTINCT_WORDS, counts.size());
+            if (reportLocation != null) {
+                report.write(Paths.get(reportLocation));
+            }
+            return;
+        }
+
+        boolean compressed = false;
         try {
-            fileInput = new BufferedReader(new FileReader(fileLocation));
+            compressed = CompressedInput.isCompressed(Paths.get(fileLocation));
+            if (compressed) {
+                fileInput = new BufferedReader(new InputStreamReader(
+                        CompressedInput.open(Paths.get(fileLocation)),
+                        StandardCharsets.UTF_8));
+            } else {
+                fileInput = Files.newBufferedReader(Paths.get(fileLocation),
+                        StandardCharsets.UTF_8);
+            }
         } catch (IOException e) {
             System.err.println("Error opening reader to file location " + e);
             return;
@@ -288,19 +1545,114 @@ public final class TagCloudUsingJava {
             return;
         }
 
-        output = new PrintWriter(new BufferedWriter(new FileWriter(fileName)));
+        if (followSeconds > 0) {
+            fileInput.close();
+            input.close();
+            if (compressed) {
+                System.err.println("A compressed file cannot be followed");
+                return;
+            }
+            if (windowSeconds > 0) {
+                followWindow(fileLocation, fileName, nWords,
+                        followSeconds * 1000, windowSeconds * 1000,
+                        windowBuckets);
+            } else {
+                followFile(fileLocation, fileName, nWords,
+                        followSeconds * 1000);
+            }
+            return;
+        }
 
-        Map<String, Integer> words = retrieveWords(fileInput);
+        output = new HtmlWriter(Paths.get(fileName));
+        RunReport report = new RunReport("TagCloudUsingJava", fileLocation);
 
-        TreeMap<String, Integer> sortWords = new TreeMap<String, Integer>();
+        if (approximateMegabytes > 0) {
+            report.start("approximate_cloud");
+            approximateCloud(fileInput, output, fileName, nWords,
+                    approximateMegabytes << 20);
+            fileInput.close();
+            input.close();
+            output.close();
+            if (reportLocation != null) {
+                report.write(Paths.get(reportLocation));
+            }
+            return;
+        }
 
-        Queue<Integer> fontSizes = wordFontSort(words, nWords, sortWords);
+        //Spill and index modes select the top N as they count
+        report.start(RunReport.COUNT);
+        TopWords top;
+        if (ngram > 1) {
+            NGramCounter counter = new NGramCounter(ngram);
+            countNGrams(Paths.get(fileLocation), counter);
+            report.stop();
+            report.set(RunReport.TOKENS, counter.total());
+            report.set(RunReport.DISTINCT_WORDS, counter.size());
 
+            report.start(RunReport.SORT);
+            top = counter.top(nWords);
+        } else if (compact) {
+            WordArena words = countWordsCompact(Paths.get(fileLocation));
+            report.stop();
+            report.set(RunReport.TOKENS, words.total());
+            report.set(RunReport.DISTINCT_WORDS, words.size());
+
+            report.start(RunReport.SORT);
+            top = topWords(words, nWords);
+        } else if (prefix != null) {
+            WordTrie words = countWordsTrie(Paths.get(fileLocation));
+            report.stop();
+            report.set(RunReport.TOKENS, words.total(""));
+            report.set(RunReport.DISTINCT_WORDS, words.size());
+
+            report.start(RunReport.SORT);
+            top = topWords(words, prefix, nWords);
+            System.out.println("Words starting with \"" + prefix + "\": "
+                    + words.total(prefix));
+            if (top.size() == 0) {
+                System.err.println("No words start with \"" + prefix + "\"");
+                fileInput.close();
+                input.close();
+                output.close();
+                return;
+            }
+        } else if (spillLimit > 0) {
+            top = spillWords(fileInput, nWords, spillLimit);
+        } else if (useIndex) {
+            if (indexLocation == null) {
+                indexLocation = WordIndex.defaultPath(Paths.get(fileLocation))
+                        .toString();
+            }
+            top = indexedWords(fileLocation, indexLocation, nWords, parallel);
+        } else {
+            WordCountTable counts = countWords(fileLocation, parallel,
+                    pipelineTokenizers);
+            report.stop();
+            long tokens = 0;
+            for (int i = 0; i < counts.capacity(); i++) {
+                tokens += counts.countAt(i);
+            }
+            report.set(RunReport.TOKENS, tokens);
+            report.set(RunReport.DISTINCT_WORDS, counts.size());
+
+            report.start(RunReport.SORT);
+            top = topWords(counts, nWords);
+        }
+
+        report.start(RunReport.FONT_SIZING);
+        TreeMap<String, Integer> sortWords = new TreeMap<String, Integer>();
+        Queue<Integer> fontSizes = wordFontSort(top, sortWords);
+
+        report.start(RunReport.RENDER);
         createBody(fontSizes, sortWords, output, fileName, nWords);
+        output.close();
+        report.stop();
 
         fileInput.close();
         input.close();
-        output.close();
+        if (reportLocation != null) {
+            report.write(Paths.get(reportLocation));
+        }
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,234 @@
+/**
+ * Keeps the {@code n} most frequent of the words offered to it in a bounded
+ * binary heap over primitive counts, along with the smallest and largest count
+ * offered. Selecting from {@code d} words costs O(d log n).
+ * 
+ * <p>
+ * Words rank by count, highest first; words with equal counts rank in reverse
+ * alphabetical order, the same order {@code TagCloudUsingJava} has always
+ * used to pick its top words.
+ * </p>
+ * 
+ * @author Andrew Cheng and Stacey Frye
+ */
+public final class TopWords {
+
+    /**
+     * Words in the heap; {@code words[0]} is the lowest ranked.
+     */
+    private final String[] words;
+
+    /**
+     * Counts of the words in the heap.
+     */
+    private final int[] counts;
+
+    /**
+     * Number of words in the heap.
+     */
+    private int size;
+
+    /**
+     * Smallest count offered.
+     */
+    private int min;
+
+    /**
+     * Largest count offered.
+     */
+    private int max;
+
+    /**
+     * Constructor.
+     * 
+     * @param n
+     *            the number of words to keep
+     */
+    public TopWords(int n) {
+        assert n >= 0 : "Violation of: n >= 0";
+        this.words = new String[n];
+        this.counts = new int[n];
+        this.size = 0;
+        this.min = Integer.MAX_VALUE;
+        this.max = Integer.MIN_VALUE;
+    }
+
+    /**
+     * Offers {@code word} with {@code count}; it is kept if it ranks in the top
+     * {@code n} of everything offered so far.
+     * 
+     * @param word
+     *            the word
+     * @param count
+     *            its count
+     */
+    public void offer(String word, int count) {
+        if (count < this.min) {
+            this.min = count;
+        }
+        if (count > this.max) {
+            this.max = count;
+        }
+        if (this.size < this.words.length) {
+            this.words[this.size] = word;
+            this.counts[this.size] = count;
+            this.size++;
+            this.siftUp(this.size - 1);
+        } else if (this.size > 0
+                && lower(this.words[0], this.counts[0], word, count)) {
+            this.words[0] = word;
+            this.counts[0] = count;
+            this.siftDown(0);
+        }
+    }
+
+    /**
+     * Takes {@code count} into the smallest and largest count offered, for a
+     * word already known not to rank in the top {@code n}.
+     * 
+     * @param count
+     *            the count of a word that is not offered
+     */
+    public void offerCount(int count) {
+        if (count < this.min) {
+            this.min = count;
+        }
+        if (count > this.max) {
+            this.max = count;
+        }
+    }
+
+    /**
+     * Returns the number of words kept.
+     * 
+     * @return the number of words
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns the {@code i}-th word kept; words are in no particular order.
+     * 
+     * @param i
+     *            index of the word, {@code 0 <= i < size()}
+     * @return the word
+     */
+    public String word(int i) {
+        return this.words[i];
+    }
+
+    /**
+     * Returns the count of the {@code i}-th word kept.
+     * 
+     * @param i
+     *            index of the word, {@code 0 <= i < size()}
+     * @return the count
+     */
+    public int count(int i) {
+        return this.counts[i];
+    }
+
+    /**
+     * Returns the smallest count offered, or 0 if nothing was offered.
+     * 
+     * @return the smallest count
+     */
+    public int minCount() {
+        if (this.min > this.max) {
+            return 0;
+        }
+        return this.min;
+    }
+
+    /**
+     * Returns the largest count offered, or 0 if nothing was offered.
+     * 
+     * @return the largest count
+     */
+    public int maxCount() {
+        if (this.min > this.max) {
+            return 0;
+        }
+        return this.max;
+    }
+
+    /**
+     * Returns whether word {@code w1} with count {@code c1} ranks below word
+     * {@code w2} with count {@code c2}.
+     * 
+     * @param w1
+     *            first word
+     * @param c1
+     *            count of first word
+     * @param w2
+     *            second word
+     * @param c2
+     *            count of second word
+     * @return true if the first word ranks lower
+     */
+    private static boolean lower(String w1, int c1, String w2, int c2) {
+        return c1 < c2 || (c1 == c2 && w1.compareTo(w2) < 0);
+    }
+
+    /**
+     * Swaps the words at {@code i} and {@code j}.
+     * 
+     * @param i
+     *            first index
+     * @param j
+     *            second index
+     */
+    private void swap(int i, int j) {
+        String word = this.words[i];
+        this.words[i] = this.words[j];
+        this.words[j] = word;
+        int count = this.counts[i];
+        this.counts[i] = this.counts[j];
+        this.counts[j] = count;
+    }
+
+    /**
+     * Moves the word at {@code i} up until its parent ranks lower.
+     * 
+     * @param i
+     *            index of the word
+     */
+    private void siftUp(int i) {
+        int child = i;
+        while (child > 0) {
+            int parent = (child - 1) / 2;
+            if (!lower(this.words[child], this.counts[child],
+                    this.words[parent], this.counts[parent])) {
+                return;
+            }
+            this.swap(child, parent);
+            child = parent;
+        }
+    }
+
+    /**
+     * Moves the word at {@code i} down until both children rank higher.
+     * 
+     * @param i
+     *            index of the word
+     */
+    private void siftDown(int i) {
+        int parent = i;
+        int child = 2 * parent + 1;
+        while (child < this.size) {
+            if (child + 1 < this.size
+                    && lower(this.words[child + 1], this.counts[child + 1],
+                            this.words[child], this.counts[child])) {
+                child++;
+            }
+            if (!lower(this.words[child], this.counts[child],
+                    this.words[parent], this.counts[parent])) {
+                return;
+            }
+            this.swap(child, parent);
+            parent = child;
+            child = 2 * parent + 1;
+        }
+    }
+}
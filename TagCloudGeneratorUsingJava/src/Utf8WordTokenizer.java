@@ -0,0 +1,304 @@
+import java.nio.ByteBuffer;
+
+/**
+ * Splits UTF-8 encoded text into lower-case words and counts them in a
+ * {@code WordSink}, reading the bytes directly instead of decoding them into a
+ * {@code String} first. ASCII bytes are folded to lower case with a lookup
+ * table; multi-byte sequences are decoded only where they occur inside a
+ * word. Text can be fed in pieces of any size, even ones that cut a word or a
+ * multi-byte character in two; {@code endWord} flushes the last word.
+ * 
+ * <p>
+ * The hash of each word is built up byte by byte as the word is read. For an
+ * ASCII word it is the hash of the byte slice itself, and for any word it is
+ * the same as {@code String.hashCode}, so the sink only turns a word into a
+ * {@code String} the first time it sees it. Malformed UTF-8 is read as
+ * U+FFFD, the same as a replacing {@code CharsetDecoder} does.
+ * </p>
+ * 
+ * @author Andrew Cheng and Stacey Frye
+ */
+public final class Utf8WordTokenizer {
+
+    /**
+     * Number of bytes covered by the lookup tables: the ASCII range.
+     */
+    private static final int TABLE_SIZE = 128;
+
+    /**
+     * Lower-case form of each ASCII byte.
+     */
+    private static final char[] LOWER = new char[TABLE_SIZE];
+
+    static {
+        for (int c = 0; c < TABLE_SIZE; c++) {
+            LOWER[c] = Character.toLowerCase((char) c);
+        }
+    }
+
+    /**
+     * Character that stands for malformed input.
+     */
+    private static final int REPLACEMENT = 0xFFFD;
+
+    /**
+     * Number of bytes copied out of a buffer without an accessible array at a
+     * time.
+     */
+    private static final int COPY_SIZE = 8192;
+
+    /**
+     * {@code separator[b]} is true if ASCII byte {@code b} ends a word.
+     */
+    private final boolean[] separator = new boolean[TABLE_SIZE];
+
+    /**
+     * Where the words are counted.
+     */
+    private final WordSink sink;
+
+    /**
+     * Characters of the word being read.
+     */
+    private char[] word = new char[64];
+
+    /**
+     * Number of characters in {@code word}.
+     */
+    private int length = 0;
+
+    /**
+     * Hash of {@code word[0, length)}, kept up to date as characters arrive.
+     */
+    private int hash = 0;
+
+    /**
+     * Bits of the multi-byte character being read.
+     */
+    private int codePoint = 0;
+
+    /**
+     * Number of continuation bytes the character being read still needs, or 0
+     * between characters.
+     */
+    private int pending = 0;
+
+    /**
+     * Smallest code point that may be encoded in as many bytes as the
+     * character being read, to reject overlong encodings.
+     */
+    private int minimum = 0;
+
+    /**
+     * Scratch space for buffers without an accessible array.
+     */
+    private byte[] copy = null;
+
+    /**
+     * Constructor.
+     * 
+     * @param separators
+     *            the characters that separate words; all must be ASCII
+     * @param sink
+     *            where to count the words
+     */
+    public Utf8WordTokenizer(String separators, WordSink sink) {
+        for (int i = 0; i < separators.length(); i++) {
+            char c = separators.charAt(i);
+            assert c < TABLE_SIZE : "Violation of: separators are ASCII";
+            this.separator[c] = true;
+        }
+        this.sink = sink;
+    }
+
+    /**
+     * Counts the words in the remaining bytes of {@code text}, leaving it with
+     * no bytes remaining.
+     * 
+     * @param text
+     *            buffer holding UTF-8 text
+     */
+    public void feed(ByteBuffer text) {
+        if (text.hasArray()) {
+            this.feed(text.array(), text.arrayOffset() + text.position(),
+                    text.remaining());
+            text.position(text.limit());
+        } else {
+            if (this.copy == null) {
+                this.copy = new byte[COPY_SIZE];
+            }
+            while (text.hasRemaining()) {
+                int count = Math.min(text.remaining(), this.copy.length);
+                text.get(this.copy, 0, count);
+                this.feed(this.copy, 0, count);
+            }
+        }
+    }
+
+    /**
+     * Counts the words in {@code text[offset, offset + count)}.
+     * 
+     * @param text
+     *            buffer holding UTF-8 text
+     * @param offset
+     *            first byte to read
+     * @param count
+     *            number of bytes to read
+     */
+    public void feed(byte[] text, int offset, int count) {
+        int end = offset + count;
+        int i = offset;
+        while (i < end) {
+            int b = text[i];
+            if (b < 0) {
+                this.decode(b & 0xFF);
+                i++;
+            } else if (this.pending > 0) {
+                this.malformed();
+            } else if (this.separator[b]) {
+                this.endWord();
+                i++;
+            } else {
+                i = this.asciiRun(text, i, end);
+            }
+        }
+    }
+
+    /**
+     * Counts the word being read, if there is one. A multi-byte character
+     * still missing bytes is counted as U+FFFD.
+     */
+    public void endWord() {
+        if (this.pending > 0) {
+            this.malformed();
+        }
+        if (this.length > 0) {
+            this.sink.add(this.word, this.length, this.hash, 1);
+            this.length = 0;
+            this.hash = 0;
+        }
+    }
+
+    /**
+     * Appends the run of ASCII word bytes starting at {@code text[start]} to
+     * the word being read, keeping the word and its hash in locals.
+     * 
+     * @param text
+     *            buffer holding UTF-8 text
+     * @param start
+     *            first byte of the run, an ASCII byte that is not a separator
+     * @param end
+     *            one past the last byte that may be read
+     * @return index of the first byte after the run
+     */
+    private int asciiRun(byte[] text, int start, int end) {
+        char[] chars = this.word;
+        int len = this.length;
+        int h = this.hash;
+        int i = start;
+        while (i < end) {
+            int b = text[i];
+            if (b < 0 || this.separator[b]) {
+                break;
+            }
+            if (len == chars.length) {
+                chars = new char[chars.length * 2];
+                System.arraycopy(this.word, 0, chars, 0, len);
+                this.word = chars;
+            }
+            char c = LOWER[b];
+            chars[len] = c;
+            len++;
+            h = 31 * h + c;
+            i++;
+        }
+        this.length = len;
+        this.hash = h;
+        return i;
+    }
+
+    /**
+     * Reads one byte of a multi-byte character.
+     * 
+     * @param b
+     *            the byte, {@code 0x80 <= b <= 0xFF}
+     */
+    private void decode(int b) {
+        if (b < 0xC0) {
+            if (this.pending == 0) {
+                this.appendCodePoint(REPLACEMENT);
+                return;
+            }
+            this.codePoint = (this.codePoint << 6) | (b & 0x3F);
+            this.pending--;
+            if (this.pending == 0) {
+                int c = this.codePoint;
+                if (c < this.minimum || c > Character.MAX_CODE_POINT
+                        || (c >= Character.MIN_SURROGATE
+                                && c <= Character.MAX_SURROGATE)) {
+                    c = REPLACEMENT;
+                }
+                this.appendCodePoint(c);
+            }
+            return;
+        }
+        if (this.pending > 0) {
+            this.malformed();
+        }
+        if (b < 0xE0) {
+            this.codePoint = b & 0x1F;
+            this.pending = 1;
+            this.minimum = 0x80;
+        } else if (b < 0xF0) {
+            this.codePoint = b & 0x0F;
+            this.pending = 2;
+            this.minimum = 0x800;
+        } else if (b < 0xF8) {
+            this.codePoint = b & 0x07;
+            this.pending = 3;
+            this.minimum = Character.MIN_SUPPLEMENTARY_CODE_POINT;
+        } else {
+            this.appendCodePoint(REPLACEMENT);
+        }
+    }
+
+    /**
+     * Abandons the multi-byte character being read, counting it as U+FFFD.
+     */
+    private void malformed() {
+        this.pending = 0;
+        this.appendCodePoint(REPLACEMENT);
+    }
+
+    /**
+     * Appends the lower-case form of {@code c} to the word being read.
+     * 
+     * @param c
+     *            a decoded code point
+     */
+    private void appendCodePoint(int c) {
+        if (Character.isBmpCodePoint(c)) {
+            this.append(Character.toLowerCase((char) c));
+        } else {
+            this.append(Character.highSurrogate(c));
+            this.append(Character.lowSurrogate(c));
+        }
+    }
+
+    /**
+     * Appends {@code c} to the word being read.
+     * 
+     * @param c
+     *            the character
+     */
+    private void append(char c) {
+        if (this.length == this.word.length) {
+            char[] bigger = new char[this.word.length * 2];
+            System.arraycopy(this.word, 0, bigger, 0, this.length);
+            this.word = bigger;
+        }
+        this.word[this.length] = c;
+        this.length++;
+        this.hash = 31 * this.hash + c;
+    }
+}
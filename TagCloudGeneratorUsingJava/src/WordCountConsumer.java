@@ -0,0 +1,21 @@
+import java.io.IOException;
+
+/**
+ * Receives words and their counts one at a time, for example from a merge
+ * that streams its result instead of building a whole map.
+ * 
+ * @author Andrew Cheng and Stacey Frye
+ */
+public interface WordCountConsumer {
+
+    /**
+     * Takes one word and its count.
+     * 
+     * @param word
+     *            the word
+     * @param count
+     *            its count
+     * @throws IOException
+     */
+    void accept(String word, int count) throws IOException;
+}
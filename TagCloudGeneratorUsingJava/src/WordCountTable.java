@@ -0,0 +1,363 @@
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Open-addressing hash table from words to {@code int} counts. Words are
+ * looked up by a slice of a {@code char[]}, so a word only becomes a
+ * {@code String} the first time it is added, and counts are never boxed until
+ * {@code toMap} is called.
+ * 
+ * @author Andrew Cheng and Stacey Frye
+ */
+public final class WordCountTable implements WordSink {
+
+    /**
+     * Starting number of slots; always a power of two.
+     */
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * Words in each slot, or null for an empty slot.
+     */
+    private String[] words;
+
+    /**
+     * Hash of the word in each slot.
+     */
+    private int[] hashes;
+
+    /**
+     * Count of the word in each slot.
+     */
+    private int[] counts;
+
+    /**
+     * Number of words in the table.
+     */
+    private int size;
+
+    /**
+     * Default constructor.
+     */
+    public WordCountTable() {
+        this.words = new String[INITIAL_CAPACITY];
+        this.hashes = new int[INITIAL_CAPACITY];
+        this.counts = new int[INITIAL_CAPACITY];
+        this.size = 0;
+    }
+
+    /**
+     * Returns the hash of {@code word[0, length)}, which is the same as
+     * {@code String.hashCode} of that slice.
+     * 
+     * @param word
+     *            buffer holding the word
+     * @param length
+     *            number of characters in the word
+     * @return the hash of the word
+     */
+    public static int hash(char[] word, int length) {
+        int h = 0;
+        for (int i = 0; i < length; i++) {
+            h = 31 * h + word[i];
+        }
+        return h;
+    }
+
+    /**
+     * Adds {@code count} to the count of {@code word[0, length)}.
+     * 
+     * @param word
+     *            buffer holding the word
+     * @param length
+     *            number of characters in the word
+     * @param hash
+     *            {@code hash(word, length)}
+     * @param count
+     *            amount to add
+     */
+    @Override
+    public void add(char[] word, int length, int hash, int count) {
+        int mask = this.words.length - 1;
+        int slot = spread(hash) & mask;
+        String current = this.words[slot];
+        while (current != null) {
+            if (this.hashes[slot] == hash && matches(current, word, length)) {
+                this.counts[slot] += count;
+                return;
+            }
+            slot = (slot + 1) & mask;
+            current = this.words[slot];
+        }
+        this.insert(slot, new String(word, 0, length), hash, count);
+    }
+
+    /**
+     * Adds {@code count} to the count of {@code word}.
+     * 
+     * @param word
+     *            the word
+     * @param count
+     *            amount to add
+     */
+    @Override
+    public void add(String word, int count) {
+        int hash = word.hashCode();
+        int mask = this.words.length - 1;
+        int slot = spread(hash) & mask;
+        String current = this.words[slot];
+        while (current != null) {
+            if (this.hashes[slot] == hash && current.equals(word)) {
+                this.counts[slot] += count;
+                return;
+            }
+            slot = (slot + 1) & mask;
+            current = this.words[slot];
+        }
+        this.insert(slot, word, hash, count);
+    }
+
+    /**
+     * Returns the count of {@code word}, or 0 if it is not in the table.
+     * 
+     * @param word
+     *            the word
+     * @return its count
+     */
+    public int count(String word) {
+        int hash = word.hashCode();
+        int mask = this.words.length - 1;
+        int slot = spread(hash) & mask;
+        String current = this.words[slot];
+        while (current != null) {
+            if (this.hashes[slot] == hash && current.equals(word)) {
+                return this.counts[slot];
+            }
+            slot = (slot + 1) & mask;
+            current = this.words[slot];
+        }
+        return 0;
+    }
+
+    /**
+     * Adds every count in {@code other} to this table.
+     * 
+     * @param other
+     *            the table to add
+     */
+    public void addAll(WordCountTable other) {
+        for (int i = 0; i < other.words.length; i++) {
+            if (other.words[i] != null) {
+                this.add(other.words[i], other.counts[i]);
+            }
+        }
+    }
+
+    /**
+     * Takes every count in {@code other} away from this table. A word whose
+     * count falls to zero or below is removed, so the table holds only the
+     * words still counted.
+     * 
+     * @param other
+     *            the table to take away
+     */
+    public void subtractAll(WordCountTable other) {
+        for (int i = 0; i < other.words.length; i++) {
+            if (other.words[i] != null) {
+                int slot = this.slotOf(other.words[i], other.hashes[i]);
+                if (this.words[slot] != null) {
+                    this.counts[slot] -= other.counts[i];
+                    if (this.counts[slot] <= 0) {
+                        this.remove(slot);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of distinct words in the table.
+     * 
+     * @return the number of words
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns the number of slots; slots are numbered from 0 to
+     * {@code capacity() - 1}.
+     * 
+     * @return the number of slots
+     */
+    public int capacity() {
+        return this.words.length;
+    }
+
+    /**
+     * Returns the word in {@code slot}, or null if the slot is empty.
+     * 
+     * @param slot
+     *            the slot
+     * @return the word in the slot
+     */
+    public String wordAt(int slot) {
+        return this.words[slot];
+    }
+
+    /**
+     * Returns the count of the word in {@code slot}.
+     * 
+     * @param slot
+     *            the slot
+     * @return the count in the slot
+     */
+    public int countAt(int slot) {
+        return this.counts[slot];
+    }
+
+    /**
+     * Copies the table into a {@code Map}.
+     * 
+     * @return {@code Map<String,Integer>} of every word and its count
+     */
+    public Map<String, Integer> toMap() {
+        Map<String, Integer> wordMap = new HashMap<String, Integer>(
+                this.size * 2);
+        for (int i = 0; i < this.words.length; i++) {
+            if (this.words[i] != null) {
+                wordMap.put(this.words[i], this.counts[i]);
+            }
+        }
+        return wordMap;
+    }
+
+    /**
+     * Returns whether {@code str} equals {@code word[0, length)}.
+     * 
+     * @param str
+     *            the stored word
+     * @param word
+     *            buffer holding the word being looked up
+     * @param length
+     *            number of characters in the word
+     * @return true if they are equal
+     */
+    static boolean matches(String str, char[] word, int length) {
+        if (str.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (str.charAt(i) != word[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Mixes the high bits of {@code hash} into the low bits used for the slot.
+     * 
+     * @param hash
+     *            a word hash
+     * @return the spread hash
+     */
+    static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Puts a new word in the empty {@code slot}, growing the table if it is
+     * half full.
+     * 
+     * @param slot
+     *            an empty slot
+     * @param word
+     *            the word
+     * @param hash
+     *            hash of the word
+     * @param count
+     *            count of the word
+     */
+    private void insert(int slot, String word, int hash, int count) {
+        this.words[slot] = word;
+        this.hashes[slot] = hash;
+        this.counts[slot] = count;
+        this.size++;
+        if (this.size * 2 > this.words.length) {
+            this.grow();
+        }
+    }
+
+    /**
+     * Returns the slot holding {@code word}, or the empty slot where it would
+     * go if it is not in the table.
+     * 
+     * @param word
+     *            the word
+     * @param hash
+     *            hash of the word
+     * @return its slot
+     */
+    private int slotOf(String word, int hash) {
+        int mask = this.words.length - 1;
+        int slot = spread(hash) & mask;
+        String current = this.words[slot];
+        while (current != null
+                && !(this.hashes[slot] == hash && current.equals(word))) {
+            slot = (slot + 1) & mask;
+            current = this.words[slot];
+        }
+        return slot;
+    }
+
+    /**
+     * Empties {@code slot}, moving back any later word of the same probe run
+     * that could no longer be found past the gap.
+     * 
+     * @param slot
+     *            a full slot
+     */
+    private void remove(int slot) {
+        int mask = this.words.length - 1;
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (this.words[next] != null) {
+            int home = spread(this.hashes[next]) & mask;
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                this.words[hole] = this.words[next];
+                this.hashes[hole] = this.hashes[next];
+                this.counts[hole] = this.counts[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        this.words[hole] = null;
+        this.counts[hole] = 0;
+        this.size--;
+    }
+
+    /**
+     * Doubles the number of slots and re-inserts every word.
+     */
+    private void grow() {
+        String[] oldWords = this.words;
+        int[] oldHashes = this.hashes;
+        int[] oldCounts = this.counts;
+        this.words = new String[oldWords.length * 2];
+        this.hashes = new int[oldWords.length * 2];
+        this.counts = new int[oldWords.length * 2];
+        int mask = this.words.length - 1;
+        for (int i = 0; i < oldWords.length; i++) {
+            if (oldWords[i] != null) {
+                int slot = spread(oldHashes[i]) & mask;
+                while (this.words[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                this.words[slot] = oldWords[i];
+                this.hashes[slot] = oldHashes[i];
+                this.counts[slot] = oldCounts[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,357 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+/**
+ * Word counts of one source file, saved in a compact binary index so a later
+ * run can load them instead of reading and splitting the source again.
+ * 
+ * <p>
+ * An index starts with a header holding the format version, a key naming how
+ * the words were split (which program, which separators), and the size,
+ * modification time and CRC-32C of the source file. Then comes the
+ * dictionary: the words in increasing order, each stored as the number of
+ * leading UTF-8 bytes it shares with the word before it and the bytes that
+ * follow, and each followed by its count. All lengths and counts are
+ * variable-length integers, seven bits to a byte.
+ * </p>
+ * 
+ * <p>
+ * An index is read through a memory-mapped buffer. It is used only if its key
+ * matches and the source has the same size and either the same modification
+ * time or, failing that, the same CRC-32C; otherwise {@code load} returns
+ * null and the source must be counted again.
+ * </p>
+ * 
+ * @author Andrew Cheng and Stacey Frye
+ */
+public final class WordIndex {
+
+    /**
+     * First four bytes of every index: "WIDX".
+     */
+    private static final int MAGIC = 0x57494458;
+
+    /**
+     * Version of the format written.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Number of bytes of the source read at a time to compute its CRC.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Words in increasing order.
+     */
+    private final String[] words;
+
+    /**
+     * Count of each word.
+     */
+    private final int[] counts;
+
+    /**
+     * Constructor.
+     * 
+     * @param words
+     *            words in increasing order
+     * @param counts
+     *            count of each word
+     */
+    private WordIndex(String[] words, int[] counts) {
+        this.words = words;
+        this.counts = counts;
+    }
+
+    /**
+     * Returns the default location of the index of {@code source}: the same
+     * path with {@code .idx} added.
+     * 
+     * @param source
+     *            path of the source file
+     * @return path of its index
+     */
+    public static Path defaultPath(Path source) {
+        return source.resolveSibling(source.getFileName() + ".idx");
+    }
+
+    /**
+     * Loads the index at {@code index} if it is an index of {@code source} as
+     * it is now, split the way {@code key} names.
+     * 
+     * @param index
+     *            path of the index
+     * @param source
+     *            path of the source file
+     * @param key
+     *            how the words were split
+     * @return the index, or null if it is missing, stale, split differently
+     *         or unreadable
+     * @throws IOException
+     *             if the source cannot be read
+     */
+    public static WordIndex load(Path index, Path source, String key)
+            throws IOException {
+        if (!Files.isRegularFile(index)) {
+            return null;
+        }
+        long sourceSize = Files.size(source);
+        long sourceModified = Files.getLastModifiedTime(source).toMillis();
+        try (FileChannel channel = FileChannel.open(index,
+                StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                return null;
+            }
+            MappedByteBuffer buffer = channel.map(
+                    FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return null;
+            }
+            byte[] keyBytes = new byte[readVarint(buffer)];
+            buffer.get(keyBytes);
+            if (!key.equals(new String(keyBytes, StandardCharsets.UTF_8))
+                    || buffer.getLong() != sourceSize) {
+                return null;
+            }
+            long modified = buffer.getLong();
+            long hash = buffer.getLong();
+            if (modified != sourceModified && hash != hash(source)) {
+                return null;
+            }
+
+            int size = readVarint(buffer);
+            String[] words = new String[size];
+            int[] counts = new int[size];
+            byte[] word = new byte[64];
+            for (int i = 0; i < size; i++) {
+                int shared = readVarint(buffer);
+                int length = shared + readVarint(buffer);
+                if (length > word.length) {
+                    word = Arrays.copyOf(word, Math.max(length,
+                            word.length * 2));
+                }
+                buffer.get(word, shared, length - shared);
+                words[i] = new String(word, 0, length,
+                        StandardCharsets.UTF_8);
+                counts[i] = readVarint(buffer);
+            }
+            return new WordIndex(words, counts);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException
+                | NegativeArraySizeException e) {
+            System.err.println("Error reading index " + index + " " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Writes the index of {@code source} to {@code index}. The index is
+     * written to a temporary file and moved into place, so a reader never
+     * sees it half written.
+     * 
+     * @param index
+     *            path of the index
+     * @param source
+     *            path of the source file that was counted
+     * @param key
+     *            how the words were split
+     * @param words
+     *            the distinct words, in any order; {@code words[0, size)} is
+     *            sorted by this call
+     * @param counts
+     *            count of each word, kept in step with {@code words}
+     * @param size
+     *            number of words
+     * @throws IOException
+     */
+    public static void write(Path index, Path source, String key,
+            String[] words, int[] counts, int size) throws IOException {
+        assert size <= words.length : "Violation of: size <= |words|";
+        assert size <= counts.length : "Violation of: size <= |counts|";
+
+        long sourceSize = Files.size(source);
+        long sourceModified = Files.getLastModifiedTime(source).toMillis();
+        long hash = hash(source);
+        sort(words, counts, 0, size);
+
+        Path absoluteIndex = index.toAbsolutePath();
+        Path temp = absoluteIndex.resolveSibling(absoluteIndex.getFileName()
+                + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temp),
+                        BUFFER_SIZE))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+            writeVarint(out, keyBytes.length);
+            out.write(keyBytes);
+            out.writeLong(sourceSize);
+            out.writeLong(sourceModified);
+            out.writeLong(hash);
+
+            writeVarint(out, size);
+            byte[] previous = new byte[0];
+            for (int i = 0; i < size; i++) {
+                byte[] word = words[i].getBytes(StandardCharsets.UTF_8);
+                int shared = 0;
+                int limit = Math.min(previous.length, word.length);
+                while (shared < limit && previous[shared] == word[shared]) {
+                    shared++;
+                }
+                writeVarint(out, shared);
+                writeVarint(out, word.length - shared);
+                out.write(word, shared, word.length - shared);
+                writeVarint(out, counts[i]);
+                previous = word;
+            }
+        }
+        Files.move(temp, absoluteIndex, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Returns the number of distinct words.
+     * 
+     * @return the number of words
+     */
+    public int size() {
+        return this.words.length;
+    }
+
+    /**
+     * Returns the {@code i}-th word in increasing order.
+     * 
+     * @param i
+     *            index of the word, {@code 0 <= i < size()}
+     * @return the word
+     */
+    public String word(int i) {
+        return this.words[i];
+    }
+
+    /**
+     * Returns the count of the {@code i}-th word.
+     * 
+     * @param i
+     *            index of the word, {@code 0 <= i < size()}
+     * @return the count
+     */
+    public int count(int i) {
+        return this.counts[i];
+    }
+
+    /**
+     * Returns the CRC-32C of the contents of {@code file}.
+     * 
+     * @param file
+     *            the file
+     * @return its CRC
+     * @throws IOException
+     */
+    private static long hash(Path file) throws IOException {
+        CRC32C crc = new CRC32C();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.READ)) {
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                crc.update(buffer);
+                buffer.clear();
+            }
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Writes {@code value} seven bits to a byte, low bits first, with the top
+     * bit of each byte set if more bytes follow.
+     * 
+     * @param out
+     *            the output stream
+     * @param value
+     *            the value, {@code value >= 0}
+     * @throws IOException
+     */
+    private static void writeVarint(DataOutputStream out, int value)
+            throws IOException {
+        int rest = value;
+        while ((rest & ~0x7F) != 0) {
+            out.write((rest & 0x7F) | 0x80);
+            rest >>>= 7;
+        }
+        out.write(rest);
+    }
+
+    /**
+     * Reads a value written by {@code writeVarint}.
+     * 
+     * @param buffer
+     *            the input buffer
+     * @return the value
+     */
+    private static int readVarint(ByteBuffer buffer) {
+        int value = 0;
+        int shift = 0;
+        byte b = buffer.get();
+        while (b < 0) {
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+            b = buffer.get();
+        }
+        return value | (b << shift);
+    }
+
+    /**
+     * Sorts {@code words[from, to)} into increasing order, moving
+     * {@code counts} along with them.
+     * 
+     * @param words
+     *            the words
+     * @param counts
+     *            count of each word
+     * @param from
+     *            first index to sort
+     * @param to
+     *            one past the last index to sort
+     */
+    private static void sort(String[] words, int[] counts, int from, int to) {
+        if (to - from < 2) {
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        sort(words, counts, from, middle);
+        sort(words, counts, middle, to);
+        if (words[middle - 1].compareTo(words[middle]) <= 0) {
+            return;
+        }
+        String[] leftWords = Arrays.copyOfRange(words, from, middle);
+        int[] leftCounts = Arrays.copyOfRange(counts, from, middle);
+        int left = 0;
+        int right = middle;
+        int out = from;
+        while (left < leftWords.length) {
+            if (right < to && words[right].compareTo(leftWords[left]) < 0) {
+                words[out] = words[right];
+                counts[out] = counts[right];
+                right++;
+            } else {
+                words[out] = leftWords[left];
+                counts[out] = leftCounts[left];
+                left++;
+            }
+            out++;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ * Splits text into lower-case words and counts them in a {@code WordSink}.
+ * Text can be fed in pieces of any size; a word cut off at the end of one
+ * piece is continued by the next, and {@code endWord} flushes the last one.
+ * 
+ * @author Andrew Cheng and Stacey Frye
+ */
+public final class WordTokenizer {
+
+    /**
+     * Number of characters covered by the lookup tables.
+     */
+    private static final int TABLE_SIZE = 128;
+
+    /**
+     * Lower-case form of each ASCII character.
+     */
+    private static final char[] LOWER = new char[TABLE_SIZE];
+
+    static {
+        for (int c = 0; c < TABLE_SIZE; c++) {
+            LOWER[c] = Character.toLowerCase((char) c);
+        }
+    }
+
+    /**
+     * {@code separator[c]} is true if ASCII character {@code c} ends a word.
+     */
+    private final boolean[] separator = new boolean[TABLE_SIZE];
+
+    /**
+     * Where the words are counted.
+     */
+    private final WordSink sink;
+
+    /**
+     * Characters of the word being read.
+     */
+    private char[] word = new char[64];
+
+    /**
+     * Number of characters in {@code word}.
+     */
+    private int length = 0;
+
+    /**
+     * Hash of {@code word[0, length)}, kept up to date as characters arrive.
+     */
+    private int hash = 0;
+
+    /**
+     * Constructor.
+     * 
+     * @param separators
+     *            the characters that separate words; all must be ASCII
+     * @param sink
+     *            where to count the words
+     */
+    public WordTokenizer(String separators, WordSink sink) {
+        for (int i = 0; i < separators.length(); i++) {
+            char c = separators.charAt(i);
+            assert c < TABLE_SIZE : "Violation of: separators are ASCII";
+            this.separator[c] = true;
+        }
+        this.sink = sink;
+    }
+
+    /**
+     * Counts the words in {@code text[offset, offset + count)}.
+     * 
+     * @param text
+     *            buffer holding the text
+     * @param offset
+     *            first character to read
+     * @param count
+     *            number of characters to read
+     */
+    public void feed(char[] text, int offset, int count) {
+        int end = offset + count;
+        for (int i = offset; i < end; i++) {
+            char c = text[i];
+            if (c < TABLE_SIZE) {
+                if (this.separator[c]) {
+                    this.endWord();
+                    continue;
+                }
+                c = LOWER[c];
+            } else {
+                c = Character.toLowerCase(c);
+            }
+            if (this.length == this.word.length) {
+                char[] bigger = new char[this.word.length * 2];
+                System.arraycopy(this.word, 0, bigger, 0, this.length);
+                this.word = bigger;
+            }
+            this.word[this.length] = c;
+            this.length++;
+            this.hash = 31 * this.hash + c;
+        }
+    }
+
+    /**
+     * Counts the word being read, if there is one.
+     */
+    public void endWord() {
+        if (this.length > 0) {
+            this.sink.add(this.word, this.length, this.hash, 1);
+            this.length = 0;
+            this.hash = 0;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of 32 threads counting the words of a corpus into one shared
+ * counter: {@code ConcurrentWordCounter} against a
+ * {@code ConcurrentHashMap} with boxed merges and a {@code WordCountTable}
+ * behind one lock.
+ * 
+ * <p>
+ * The map and the table can be read as soon as counting stops, but the
+ * counts of a {@code ConcurrentWordCounter} have to be merged by
+ * {@code snapshot} first. {@code snapshot} times that merge on its own, for
+ * a counter that each of the 32 threads has counted the whole corpus into;
+ * add it to the time of 32 operations of {@code concurrentWordCounter} to
+ * compare whole runs.
+ * </p>
+ * 
+ * @author Andrew Cheng and Stacey Frye
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@Threads(ConcurrentCountBenchmark.THREADS)
+public class ConcurrentCountBenchmark {
+
+    /**
+     * Number of counting threads.
+     */
+    public static final int THREADS = 32;
+
+    /**
+     * Name of the input corpus.
+     */
+    @Param({ "1MB" })
+    public String corpus;
+
+    /**
+     * Words of the corpus, in order.
+     */
+    private String[] words;
+
+    /**
+     * Shared counter with a table per thread.
+     */
+    private ConcurrentWordCounter counter;
+
+    /**
+     * Shared concurrent map.
+     */
+    private ConcurrentHashMap<String, Integer> map;
+
+    /**
+     * Shared table, locked for every word.
+     */
+    private WordCountTable table;
+
+    /**
+     * A {@code ConcurrentWordCounter} that each of {@code THREADS} threads
+     * has counted the corpus into, for timing snapshots.
+     */
+    @State(Scope.Benchmark)
+    public static class Counted {
+
+        /**
+         * The counter.
+         */
+        private ConcurrentWordCounter counter;
+
+        /**
+         * Counts the corpus into the counter once from each of
+         * {@code THREADS} threads, so it has a table per thread.
+         * 
+         * @param benchmark
+         *            the benchmark holding the corpus
+         * @throws InterruptedException
+         */
+        @Setup(Level.Trial)
+        public void count(ConcurrentCountBenchmark benchmark)
+                throws InterruptedException {
+            this.counter = new ConcurrentWordCounter();
+            Thread[] threads = new Thread[THREADS];
+            for (int i = 0; i < threads.length; i++) {
+                threads[i] = new Thread(() -> {
+                    for (String word : benchmark.words) {
+                        this.counter.add(word, 1);
+                    }
+                });
+                threads[i].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        }
+    }
+
+    /**
+     * Finds or makes the corpus and splits it into words once.
+     * 
+     * @throws IOException
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        String text = new String(Files.readAllBytes(CorpusGenerator
+                .corpus(this.corpus)), StandardCharsets.UTF_8);
+        this.words = text.trim().split("[ ,.\n]+");
+    }
+
+    /**
+     * Starts every iteration with empty counters.
+     */
+    @Setup(Level.Iteration)
+    public void newCounters() {
+        this.counter = new ConcurrentWordCounter();
+        this.map = new ConcurrentHashMap<String, Integer>();
+        this.table = new WordCountTable();
+    }
+
+    /**
+     * Counts the corpus into the {@code ConcurrentWordCounter}.
+     * 
+     * @return the counter
+     */
+    @Benchmark
+    public ConcurrentWordCounter concurrentWordCounter() {
+        for (String word : this.words) {
+            this.counter.add(word, 1);
+        }
+        return this.counter;
+    }
+
+    /**
+     * Counts the corpus into the {@code ConcurrentHashMap}.
+     * 
+     * @return the map
+     */
+    @Benchmark
+    public ConcurrentHashMap<String, Integer> concurrentHashMap() {
+        for (String word : this.words) {
+            this.map.merge(word, 1, Integer::sum);
+        }
+        return this.map;
+    }
+
+    /**
+     * Counts the corpus into the locked {@code WordCountTable}.
+     * 
+     * @return the table
+     */
+    @Benchmark
+    public WordCountTable synchronizedTable() {
+        for (String word : this.words) {
+            synchronized (this.table) {
+                this.table.add(word, 1);
+            }
+        }
+        return this.table;
+    }
+
+    /**
+     * Merges the tables of the filled {@code ConcurrentWordCounter} into one,
+     * as a reader of its counts must.
+     * 
+     * @param counted
+     *            the filled counter
+     * @return the merged counts
+     */
+    @Benchmark
+    @Threads(1)
+    public WordCountTable snapshot(Counted counted) {
+        return counted.counter.snapshot();
+    }
+}
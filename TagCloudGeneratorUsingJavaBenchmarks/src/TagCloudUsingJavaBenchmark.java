@@ -0,0 +1,92 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the java.util tag cloud pipeline in {@code TagCloudUsingJava}.
+ * 
+ * @author Andrew Cheng and Stacey Frye
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TagCloudUsingJavaBenchmark {
+
+    /**
+     * Name of the input corpus.
+     */
+    @Param({ "gettysburg", "1MB", "16MB", "256MB", "1GB" })
+    public String corpus;
+
+    /**
+     * Number of words in the tag cloud.
+     */
+    @Param({ "100" })
+    public int nWords;
+
+    /**
+     * The corpus file.
+     */
+    private Path file;
+
+    /**
+     * Counts of every word in the corpus, for the sorting benchmark.
+     */
+    private Map<String, Integer> words;
+
+    /**
+     * Finds or makes the corpus and counts it once.
+     * 
+     * @throws IOException
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        this.file = CorpusGenerator.corpus(this.corpus);
+        this.words = this.retrieveWords();
+    }
+
+    /**
+     * Reads and counts the whole corpus.
+     * 
+     * @return the word counts
+     * @throws IOException
+     */
+    @Benchmark
+    public Map<String, Integer> retrieveWords() throws IOException {
+        try (BufferedReader fileInput = Files.newBufferedReader(this.file)) {
+            return TagCloudUsingJava.retrieveWords(fileInput);
+        }
+    }
+
+    /**
+     * Selects the top N words and their font sizes.
+     * 
+     * @return the font sizes
+     */
+    @Benchmark
+    public Queue<Integer> wordFontSort() {
+        return TagCloudUsingJava.wordFontSort(this.words, this.nWords,
+                new TreeMap<String, Integer>());
+    }
+}
@@ -0,0 +1,324 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import components.map.Map;
+import components.map.Map.Pair;
+
+/**
+ * The words of a {@code Map} and their counts, taken out once into parallel
+ * arrays and sorted in {@code WordCounter}'s order: lexicographic ignoring
+ * case, then exact spelling to settle words that differ only in case.
+ * 
+ * <p>
+ * The lower-case form of every word is computed once, when it is taken out,
+ * rather than twice for every comparison. The arrays are sorted by a merge
+ * sort that sorts the two halves of each large range on separate threads of
+ * the common fork-join pool.
+ * </p>
+ * 
+ * @author Andrew Cheng
+ */
+public final class CollatedWords {
+
+    /**
+     * Ranges at most this long are sorted on the calling thread.
+     */
+    private static final int SEQUENTIAL_THRESHOLD = 1 << 13;
+
+    /**
+     * Lower-case form of each word.
+     */
+    private final String[] keys;
+
+    /**
+     * The words.
+     */
+    private final String[] words;
+
+    /**
+     * Count of each word.
+     */
+    private final int[] counts;
+
+    /**
+     * Constructor; takes out the entries of {@code words} and sorts them.
+     * 
+     * @param words
+     *            the {@code Map} containing all the words and its occurrences
+     * @restores words
+     */
+    public CollatedWords(Map<String, Integer> words) {
+        this(words.size());
+        assert words != null : "Violation of: words is not null";
+
+        int i = 0;
+        for (Pair<String, Integer> pair : words) {
+            this.keys[i] = pair.key().toLowerCase();
+            this.words[i] = pair.key();
+            this.counts[i] = pair.value();
+            i++;
+        }
+        this.sortAll();
+    }
+
+    /**
+     * Constructor; takes out the words of {@code words} and sorts them.
+     * 
+     * @param words
+     *            the {@code WordArena} containing all the words and their
+     *            occurrences
+     */
+    public CollatedWords(WordArena words) {
+        this(words.size());
+        for (int id = 0; id < words.size(); id++) {
+            this.words[id] = words.word(id);
+            this.keys[id] = this.words[id].toLowerCase();
+            this.counts[id] = words.count(id);
+        }
+        this.sortAll();
+    }
+
+    /**
+     * Constructor; makes room for {@code size} words.
+     * 
+     * @param size
+     *            number of words
+     */
+    private CollatedWords(int size) {
+        this.keys = new String[size];
+        this.words = new String[size];
+        this.counts = new int[size];
+    }
+
+    /**
+     * Returns the number of words.
+     * 
+     * @return the number of words
+     */
+    public int size() {
+        return this.words.length;
+    }
+
+    /**
+     * Returns the {@code i}-th word in order.
+     * 
+     * @param i
+     *            index of the word, {@code 0 <= i < size()}
+     * @return the word
+     */
+    public String word(int i) {
+        return this.words[i];
+    }
+
+    /**
+     * Returns the count of the {@code i}-th word.
+     * 
+     * @param i
+     *            index of the word, {@code 0 <= i < size()}
+     * @return the count
+     */
+    public int count(int i) {
+        return this.counts[i];
+    }
+
+    /**
+     * Sorts every entry, on the common fork-join pool if there are many.
+     */
+    private void sortAll() {
+        int size = this.words.length;
+        if (size > SEQUENTIAL_THRESHOLD) {
+            ForkJoinPool.commonPool().invoke(
+                    new Sort(new Scratch(size), 0, size));
+        } else {
+            this.sort(new Scratch(size), 0, size);
+        }
+    }
+
+    /**
+     * Space the merges copy the left half of a range into; each range uses
+     * only its own indices, so ranges sorted at the same time share it.
+     */
+    private static final class Scratch {
+
+        /**
+         * Copied keys.
+         */
+        private final String[] keys;
+
+        /**
+         * Copied words.
+         */
+        private final String[] words;
+
+        /**
+         * Copied counts.
+         */
+        private final int[] counts;
+
+        /**
+         * Constructor.
+         * 
+         * @param size
+         *            number of entries
+         */
+        Scratch(int size) {
+            this.keys = new String[size];
+            this.words = new String[size];
+            this.counts = new int[size];
+        }
+    }
+
+    /**
+     * Sorts one range, splitting it between two threads if it is large.
+     */
+    private final class Sort extends RecursiveAction {
+
+        /**
+         * Version of the serialized form.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Space for the merges.
+         */
+        private final Scratch scratch;
+
+        /**
+         * First index of the range.
+         */
+        private final int from;
+
+        /**
+         * One past the last index of the range.
+         */
+        private final int to;
+
+        /**
+         * Constructor.
+         * 
+         * @param scratch
+         *            space for the merges
+         * @param from
+         *            first index of the range
+         * @param to
+         *            one past the last index of the range
+         */
+        Sort(Scratch scratch, int from, int to) {
+            this.scratch = scratch;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from <= SEQUENTIAL_THRESHOLD) {
+                CollatedWords.this.sort(this.scratch, this.from, this.to);
+            } else {
+                int middle = (this.from + this.to) >>> 1;
+                invokeAll(new Sort(this.scratch, this.from, middle), new Sort(
+                        this.scratch, middle, this.to));
+                CollatedWords.this.merge(this.scratch, this.from, middle,
+                        this.to);
+            }
+        }
+    }
+
+    /**
+     * Sorts entries {@code [from, to)} on the calling thread.
+     * 
+     * @param scratch
+     *            space for the merges
+     * @param from
+     *            first index to sort
+     * @param to
+     *            one past the last index to sort
+     */
+    private void sort(Scratch scratch, int from, int to) {
+        if (to - from < 2) {
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        this.sort(scratch, from, middle);
+        this.sort(scratch, middle, to);
+        this.merge(scratch, from, middle, to);
+    }
+
+    /**
+     * Merges the sorted entries {@code [from, middle)} and
+     * {@code [middle, to)}.
+     * 
+     * @param scratch
+     *            space for the merge
+     * @param from
+     *            first index of the left half
+     * @param middle
+     *            first index of the right half
+     * @param to
+     *            one past the last index of the right half
+     */
+    private void merge(Scratch scratch, int from, int middle, int to) {
+        if (!this.before(middle, middle - 1)) {
+            return;
+        }
+        System.arraycopy(this.keys, from, scratch.keys, from, middle - from);
+        System.arraycopy(this.words, from, scratch.words, from, middle - from);
+        System.arraycopy(this.counts, from, scratch.counts, from, middle
+                - from);
+        int left = from;
+        int right = middle;
+        int out = from;
+        while (left < middle) {
+            if (right < to
+                    && compare(this.keys[right], this.words[right],
+                            scratch.keys[left], scratch.words[left]) < 0) {
+                this.keys[out] = this.keys[right];
+                this.words[out] = this.words[right];
+                this.counts[out] = this.counts[right];
+                right++;
+            } else {
+                this.keys[out] = scratch.keys[left];
+                this.words[out] = scratch.words[left];
+                this.counts[out] = scratch.counts[left];
+                left++;
+            }
+            out++;
+        }
+    }
+
+    /**
+     * Returns whether entry {@code i} comes before entry {@code j}.
+     * 
+     * @param i
+     *            index of the first entry
+     * @param j
+     *            index of the second entry
+     * @return true if entry {@code i} sorts first
+     */
+    private boolean before(int i, int j) {
+        return compare(this.keys[i], this.words[i], this.keys[j],
+                this.words[j]) < 0;
+    }
+
+    /**
+     * Compares two words by lower-case form, then by exact spelling.
+     * 
+     * @param key1
+     *            lower-case form of the first word
+     * @param word1
+     *            the first word
+     * @param key2
+     *            lower-case form of the second word
+     * @param word2
+     *            the second word
+     * @return negative, zero or positive as the first word sorts before, with
+     *         or after the second
+     */
+    private static int compare(String key1, String word1, String key2,
+            String word2) {
+        int order = key1.compareTo(key2);
+        if (order == 0) {
+            order = word1.compareTo(word2);
+        }
+        return order;
+    }
+}
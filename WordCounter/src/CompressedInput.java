@@ -0,0 +1,336 @@
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BinaryOperator;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Reads input files that may be gzip files or zip archives, decompressing
+ * them as they are read so they never have to be unpacked to disk first. The
+ * kind of file is told from its first bytes, not its name.
+ * 
+ * <p>
+ * {@code count} counts each entry of a zip archive on a thread of its own and
+ * merges the results as they finish; {@code open} reads a whole file as one stream, with the
+ * entries of a zip archive one after another and a line break between each.
+ * </p>
+ * 
+ * @author Andrew Cheng
+ */
+public final class CompressedInput {
+
+    /**
+     * First two bytes of a gzip file.
+     */
+    private static final int GZIP_MAGIC = 0x1F8B;
+
+    /**
+     * First four bytes of a zip archive that is not empty.
+     */
+    private static final int ZIP_MAGIC = 0x504B0304;
+
+    /**
+     * First four bytes of an empty zip archive.
+     */
+    private static final int EMPTY_ZIP_MAGIC = 0x504B0506;
+
+    /**
+     * Number of bytes buffered while decompressing.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Counts the words of one decompressed stream.
+     * 
+     * @param <T>
+     *            type of the counts
+     */
+    @FunctionalInterface
+    public interface EntryCounter<T> {
+
+        /**
+         * Counts the words of {@code in}.
+         * 
+         * @param in
+         *            the decompressed bytes
+         * @return the counts
+         * @throws IOException
+         */
+        T count(InputStream in) throws IOException;
+    }
+
+    /**
+     * No instances.
+     */
+    private CompressedInput() {
+    }
+
+    /**
+     * Returns whether {@code file} is a gzip file or a zip archive.
+     * 
+     * @param file
+     *            path of the file
+     * @return true if it is compressed
+     * @throws IOException
+     */
+    public static boolean isCompressed(Path file) throws IOException {
+        int magic = magic(file);
+        return isGzip(magic) || isZip(magic);
+    }
+
+    /**
+     * Opens {@code file} for reading, decompressing it if it is a gzip file
+     * or a zip archive. The entries of a zip archive are read one after
+     * another with a line break between each.
+     * 
+     * @param file
+     *            path of the file
+     * @return the decompressed bytes
+     * @throws IOException
+     */
+    public static InputStream open(Path file) throws IOException {
+        int magic = magic(file);
+        InputStream in = Files.newInputStream(file);
+        if (isGzip(magic)) {
+            return new GZIPInputStream(in, BUFFER_SIZE);
+        } else if (isZip(magic)) {
+            return new ZipContents(new ZipInputStream(new BufferedInputStream(
+                    in, BUFFER_SIZE)));
+        }
+        return in;
+    }
+
+    /**
+     * Counts the words of {@code file} with {@code counter}. Each entry of a
+     * zip archive is counted on a thread of its own, up to one thread per
+     * core, and the counts are combined with {@code merge} in the order the
+     * entries finish; any other file is counted as a single stream. The
+     * archive is not closed until every entry has stopped being counted.
+     * 
+     * @param <T>
+     *            type of the counts
+     * @param file
+     *            path of the file
+     * @param counter
+     *            counts one decompressed stream
+     * @param merge
+     *            combines two counts, and may reuse either
+     * @return the counts of the whole file
+     * @throws IOException
+     */
+    public static <T> T count(Path file, EntryCounter<T> counter,
+            BinaryOperator<T> merge) throws IOException {
+        if (!isZip(magic(file))) {
+            try (InputStream in = open(file)) {
+                return counter.count(in);
+            }
+        }
+
+        try (ZipFile zip = new ZipFile(file.toFile())) {
+            List<ZipEntry> entries = new ArrayList<ZipEntry>();
+            Enumeration<? extends ZipEntry> all = zip.entries();
+            while (all.hasMoreElements()) {
+                ZipEntry entry = all.nextElement();
+                if (!entry.isDirectory()) {
+                    entries.add(entry);
+                }
+            }
+            if (entries.isEmpty()) {
+                return counter.count(InputStream.nullInputStream());
+            }
+
+            int threads = Math.min(entries.size(), Runtime.getRuntime()
+                    .availableProcessors());
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            try {
+                CompletionService<T> done = new ExecutorCompletionService<T>(
+                        pool);
+                for (ZipEntry entry : entries) {
+                    done.submit(() -> {
+                        try (InputStream in = new BufferedInputStream(
+                                zip.getInputStream(entry), BUFFER_SIZE)) {
+                            return counter.count(in);
+                        }
+                    });
+                }
+                T total = null;
+                for (int i = 0; i < entries.size(); i++) {
+                    T counts;
+                    try {
+                        counts = done.take().get();
+                    } catch (ExecutionException e) {
+                        throw new IOException("Error counting " + file,
+                                e.getCause());
+                    }
+                    if (total == null) {
+                        total = counts;
+                    } else {
+                        total = merge.apply(total, counts);
+                    }
+                }
+                return total;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while counting " + file, e);
+            } finally {
+                pool.shutdownNow();
+                awaitTermination(pool);
+            }
+        }
+    }
+
+    /**
+     * Waits for every task of {@code pool}, which has been shut down, to
+     * finish. An interrupt does not cut the wait short, but is kept for the
+     * caller to see.
+     * 
+     * @param pool
+     *            the pool
+     */
+    private static void awaitTermination(ExecutorService pool) {
+        boolean interrupted = false;
+        while (!pool.isTerminated()) {
+            try {
+                pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns the first four bytes of {@code file} as a big-endian int, with
+     * missing bytes read as zero.
+     * 
+     * @param file
+     *            path of the file
+     * @return its first four bytes
+     * @throws IOException
+     */
+    private static int magic(Path file) throws IOException {
+        byte[] head = new byte[4];
+        try (InputStream in = Files.newInputStream(file)) {
+            in.readNBytes(head, 0, head.length);
+        }
+        return (head[0] & 0xFF) << 24 | (head[1] & 0xFF) << 16
+                | (head[2] & 0xFF) << 8 | (head[3] & 0xFF);
+    }
+
+    /**
+     * Returns whether {@code magic} starts a gzip file.
+     * 
+     * @param magic
+     *            first four bytes of a file
+     * @return true if the file is a gzip file
+     */
+    private static boolean isGzip(int magic) {
+        return magic >>> 16 == GZIP_MAGIC;
+    }
+
+    /**
+     * Returns whether {@code magic} starts a zip archive.
+     * 
+     * @param magic
+     *            first four bytes of a file
+     * @return true if the file is a zip archive
+     */
+    private static boolean isZip(int magic) {
+        return magic == ZIP_MAGIC || magic == EMPTY_ZIP_MAGIC;
+    }
+
+    /**
+     * The entries of a zip archive read one after another, with a line break
+     * between each.
+     */
+    private static final class ZipContents extends InputStream {
+
+        /**
+         * The archive.
+         */
+        private final ZipInputStream zip;
+
+        /**
+         * Whether an entry is being read.
+         */
+        private boolean inEntry = false;
+
+        /**
+         * Whether an entry has been started, so the next needs a line break.
+         */
+        private boolean started = false;
+
+        /**
+         * Constructor.
+         * 
+         * @param zip
+         *            the archive
+         */
+        ZipContents(ZipInputStream zip) {
+            this.zip = zip;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            int read = this.read(one, 0, 1);
+            while (read == 0) {
+                read = this.read(one, 0, 1);
+            }
+            if (read < 0) {
+                return -1;
+            }
+            return one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (true) {
+                if (!this.inEntry) {
+                    ZipEntry entry = this.zip.getNextEntry();
+                    if (entry == null) {
+                        return -1;
+                    }
+                    if (entry.isDirectory()) {
+                        continue;
+                    }
+                    this.inEntry = true;
+                    if (this.started) {
+                        b[off] = '\n';
+                        return 1;
+                    }
+                    this.started = true;
+                }
+                int read = this.zip.read(b, off, len);
+                if (read >= 0) {
+                    return read;
+                }
+                this.inEntry = false;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.zip.close();
+        }
+    }
+}
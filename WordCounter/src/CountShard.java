@@ -0,0 +1,485 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Partial word counts of one part of a corpus, saved in order so the counts
+ * of any number of parts, counted by separate processes or machines, can be
+ * added up later by a streaming merge.
+ * 
+ * <p>
+ * A shard starts with a header holding the format version and a key naming
+ * how the words were split and ordered (which program, which separators).
+ * Then come the words in that order, each stored as one more than the number
+ * of leading UTF-8 bytes it shares with the word before it, the length of the
+ * bytes that follow, those bytes and its count. A zero ends the words and is
+ * followed by their number, so a cut-off shard is noticed. All lengths and
+ * counts are variable-length integers, seven bits to a byte.
+ * </p>
+ * 
+ * <p>
+ * {@code merge} holds only the current word of each shard in memory, never a
+ * whole vocabulary. It reads at most {@code MAX_FAN_IN} shards at once; more
+ * are first merged in groups into temporary shards.
+ * </p>
+ * 
+ * @author Andrew Cheng
+ */
+public final class CountShard {
+
+    /**
+     * First four bytes of every shard: "WSHD".
+     */
+    private static final int MAGIC = 0x57534844;
+
+    /**
+     * Version of the format written.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Number of bytes buffered for each shard.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Most shards read at once by a merge.
+     */
+    private static final int MAX_FAN_IN = 128;
+
+    /**
+     * No instances.
+     */
+    private CountShard() {
+    }
+
+    /**
+     * Writes a shard one word at a time, in order. The shard is written to a
+     * temporary file and only moved into place by {@code finish}, so a reader
+     * never sees it half written; closing it unfinished throws it away.
+     */
+    public static final class Writer implements WordCountConsumer,
+            AutoCloseable {
+
+        /**
+         * Path of the finished shard.
+         */
+        private final Path file;
+
+        /**
+         * Path the shard is written to until it is finished.
+         */
+        private final Path temp;
+
+        /**
+         * Order the words must come in.
+         */
+        private final Comparator<String> order;
+
+        /**
+         * The temporary file.
+         */
+        private final DataOutputStream out;
+
+        /**
+         * UTF-8 bytes of the last word written.
+         */
+        private byte[] previous = new byte[0];
+
+        /**
+         * The last word written, or null if none has been.
+         */
+        private String previousWord = null;
+
+        /**
+         * Number of words written.
+         */
+        private long size = 0;
+
+        /**
+         * Whether the shard has been moved into place.
+         */
+        private boolean finished = false;
+
+        /**
+         * Constructor; starts a shard at {@code file}.
+         * 
+         * @param file
+         *            path of the shard
+         * @param key
+         *            how the words were split and ordered
+         * @param order
+         *            order the words will be written in; words that are
+         *            equal must compare as 0 and no others may
+         * @throws IOException
+         */
+        public Writer(Path file, String key, Comparator<String> order)
+                throws IOException {
+            this.file = file.toAbsolutePath();
+            this.temp = this.file.resolveSibling(this.file.getFileName()
+                    + ".tmp");
+            this.order = order;
+            this.out = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(this.temp), BUFFER_SIZE));
+            this.out.writeInt(MAGIC);
+            this.out.writeInt(VERSION);
+            byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+            writeVarint(this.out, keyBytes.length);
+            this.out.write(keyBytes);
+        }
+
+        /**
+         * Writes {@code word} and its count; it must come after every word
+         * written before.
+         * 
+         * @param word
+         *            the word
+         * @param count
+         *            its count, {@code count >= 0}
+         * @throws IOException
+         */
+        @Override
+        public void accept(String word, int count) throws IOException {
+            assert this.previousWord == null
+                    || this.order.compare(this.previousWord, word) < 0
+                    : "Violation of: words are written in order";
+
+            byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+            int shared = 0;
+            int limit = Math.min(this.previous.length, bytes.length);
+            while (shared < limit && this.previous[shared] == bytes[shared]) {
+                shared++;
+            }
+            writeVarint(this.out, shared + 1);
+            writeVarint(this.out, bytes.length - shared);
+            this.out.write(bytes, shared, bytes.length - shared);
+            writeVarint(this.out, count);
+            this.previous = bytes;
+            this.previousWord = word;
+            this.size++;
+        }
+
+        /**
+         * Ends the shard and moves it into place. Nothing more may be
+         * written.
+         * 
+         * @throws IOException
+         */
+        public void finish() throws IOException {
+            writeVarint(this.out, 0);
+            this.out.writeLong(this.size);
+            this.out.close();
+            Files.move(this.temp, this.file,
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            this.finished = true;
+        }
+
+        /**
+         * Closes the shard, deleting it if it was not finished.
+         * 
+         * @throws IOException
+         */
+        @Override
+        public void close() throws IOException {
+            if (!this.finished) {
+                this.out.close();
+                Files.deleteIfExists(this.temp);
+            }
+        }
+    }
+
+    /**
+     * Writes every word of {@code table} and its count to a shard at
+     * {@code file}.
+     * 
+     * @param file
+     *            path of the shard
+     * @param key
+     *            how the words were split and ordered
+     * @param order
+     *            order to write the words in; words that are equal must
+     *            compare as 0 and no others may
+     * @param table
+     *            the counts
+     * @throws IOException
+     */
+    public static void write(Path file, String key, Comparator<String> order,
+            WordCountTable table) throws IOException {
+        String[] words = new String[table.size()];
+        int n = 0;
+        for (int i = 0; i < table.capacity(); i++) {
+            String word = table.wordAt(i);
+            if (word != null) {
+                words[n] = word;
+                n++;
+            }
+        }
+        Arrays.sort(words, order);
+        try (Writer writer = new Writer(file, key, order)) {
+            for (String word : words) {
+                writer.accept(word, table.count(word));
+            }
+            writer.finish();
+        }
+    }
+
+    /**
+     * Hands every word of {@code shards} and its total count over all of them
+     * to {@code consumer}, in order. Every shard must have been written with
+     * {@code key} and {@code order}.
+     * 
+     * @param shards
+     *            paths of the shards
+     * @param key
+     *            how the words were split and ordered
+     * @param order
+     *            order the words were written in
+     * @param consumer
+     *            receives the words and total counts
+     * @throws IOException
+     *             if a shard cannot be read, was written with another key or
+     *             is cut off, or a total count does not fit in an int
+     */
+    public static void merge(List<Path> shards, String key,
+            Comparator<String> order, WordCountConsumer consumer)
+            throws IOException {
+        List<Path> temps = new ArrayList<Path>();
+        try {
+            List<Path> inputs = shards;
+            while (inputs.size() > MAX_FAN_IN) {
+                List<Path> merged = new ArrayList<Path>();
+                for (int i = 0; i < inputs.size(); i += MAX_FAN_IN) {
+                    Path temp = Files.createTempFile("counts", ".shard");
+                    temps.add(temp);
+                    merged.add(temp);
+                    try (Writer writer = new Writer(temp, key, order)) {
+                        mergeGroup(inputs.subList(i, Math.min(i + MAX_FAN_IN,
+                                inputs.size())), key, order, writer);
+                        writer.finish();
+                    }
+                }
+                inputs = merged;
+            }
+            mergeGroup(inputs, key, order, consumer);
+        } finally {
+            for (Path temp : temps) {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    /**
+     * Merges at most {@code MAX_FAN_IN} shards into {@code consumer} by a
+     * k-way merge.
+     * 
+     * @param shards
+     *            paths of the shards
+     * @param key
+     *            how the words were split and ordered
+     * @param order
+     *            order the words were written in
+     * @param consumer
+     *            receives the words and total counts
+     * @throws IOException
+     *             if a shard cannot be read, or a total count does not fit
+     *             in an int
+     */
+    private static void mergeGroup(List<Path> shards, String key,
+            Comparator<String> order, WordCountConsumer consumer)
+            throws IOException {
+        PriorityQueue<Reader> heads = new PriorityQueue<Reader>(Math.max(1,
+                shards.size()), (r1, r2) -> order.compare(r1.word, r2.word));
+        List<Reader> readers = new ArrayList<Reader>();
+        try {
+            for (Path file : shards) {
+                Reader reader = new Reader(file, key);
+                readers.add(reader);
+                if (reader.advance()) {
+                    heads.add(reader);
+                }
+            }
+            while (!heads.isEmpty()) {
+                Reader reader = heads.poll();
+                String word = reader.word;
+                long count = reader.count;
+                if (reader.advance()) {
+                    heads.add(reader);
+                }
+                while (!heads.isEmpty()
+                        && order.compare(heads.peek().word, word) == 0) {
+                    Reader same = heads.poll();
+                    count += same.count;
+                    if (same.advance()) {
+                        heads.add(same);
+                    }
+                }
+                if (count > Integer.MAX_VALUE) {
+                    throw new IOException("Total count of \"" + word
+                            + "\" is too large: " + count);
+                }
+                consumer.accept(word, (int) count);
+            }
+        } finally {
+            for (Reader reader : readers) {
+                reader.input.close();
+            }
+        }
+    }
+
+    /**
+     * A shard being read during a merge, positioned on its next word.
+     */
+    private static final class Reader {
+
+        /**
+         * Path of the shard.
+         */
+        private final Path file;
+
+        /**
+         * The shard.
+         */
+        private final DataInputStream input;
+
+        /**
+         * UTF-8 bytes of the current word, and maybe more after them.
+         */
+        private byte[] bytes = new byte[64];
+
+        /**
+         * Number of words read.
+         */
+        private long size = 0;
+
+        /**
+         * The current word.
+         */
+        private String word;
+
+        /**
+         * Count of the current word.
+         */
+        private int count;
+
+        /**
+         * Constructor; opens the shard and checks its header.
+         * 
+         * @param file
+         *            path of the shard
+         * @param key
+         *            how the words must have been split and ordered
+         * @throws IOException
+         *             if the shard cannot be read or was written with another
+         *             key
+         */
+        Reader(Path file, String key) throws IOException {
+            this.file = file;
+            this.input = new DataInputStream(new BufferedInputStream(
+                    Files.newInputStream(file), BUFFER_SIZE));
+            try {
+                if (this.input.readInt() != MAGIC
+                        || this.input.readInt() != VERSION) {
+                    throw new IOException(file + " is not a count shard");
+                }
+                byte[] keyBytes = new byte[readVarint(this.input)];
+                this.input.readFully(keyBytes);
+                String shardKey = new String(keyBytes, StandardCharsets.UTF_8);
+                if (!shardKey.equals(key)) {
+                    throw new IOException(file + " was counted by \""
+                            + shardKey + "\", not \"" + key + "\"");
+                }
+            } catch (IOException e) {
+                this.input.close();
+                throw e;
+            }
+        }
+
+        /**
+         * Moves to the next word of the shard, closing it once it is used up.
+         * 
+         * @return false if the shard is used up
+         * @throws IOException
+         *             if the shard cannot be read or is cut off
+         */
+        boolean advance() throws IOException {
+            try {
+                int shared = readVarint(this.input) - 1;
+                if (shared < 0) {
+                    long written = this.input.readLong();
+                    this.input.close();
+                    if (written != this.size) {
+                        throw new IOException(this.file + " is damaged");
+                    }
+                    return false;
+                }
+                int length = shared + readVarint(this.input);
+                if (length > this.bytes.length) {
+                    this.bytes = Arrays.copyOf(this.bytes, Math.max(length,
+                            this.bytes.length * 2));
+                }
+                this.input.readFully(this.bytes, shared, length - shared);
+                this.word = new String(this.bytes, 0, length,
+                        StandardCharsets.UTF_8);
+                this.count = readVarint(this.input);
+            } catch (EOFException e) {
+                throw new IOException(this.file + " is cut off", e);
+            }
+            this.size++;
+            return true;
+        }
+    }
+
+    /**
+     * Writes {@code value} seven bits to a byte, low bits first, with the top
+     * bit of each byte set if more bytes follow.
+     * 
+     * @param out
+     *            the output stream
+     * @param value
+     *            the value, {@code value >= 0}
+     * @throws IOException
+     */
+    private static void writeVarint(DataOutputStream out, int value)
+            throws IOException {
+        int rest = value;
+        while ((rest & ~0x7F) != 0) {
+            out.write((rest & 0x7F) | 0x80);
+            rest >>>= 7;
+        }
+        out.write(rest);
+    }
+
+    /**
+     * Reads a value written by {@code writeVarint}.
+     * 
+     * @param in
+     *            the input stream
+     * @return the value
+     * @throws IOException
+     *             if the stream ends first
+     */
+    private static int readVarint(DataInputStream in) throws IOException {
+        int value = 0;
+        int shift = 0;
+        byte b = in.readByte();
+        while (b < 0) {
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+            b = in.readByte();
+        }
+        return value | (b << shift);
+    }
+}
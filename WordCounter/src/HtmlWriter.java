@@ -0,0 +1,248 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes an HTML page as UTF-8 into one reusable byte buffer that is flushed
+ * to a file or other channel whenever it fills. Constant markup is encoded once
+ * up front with {@code fragment}; words are escaped and encoded straight into
+ * the buffer and numbers are written digit by digit, so writing a row makes
+ * no {@code String}s.
+ * 
+ * @author Andrew Cheng
+ */
+public final class HtmlWriter implements AutoCloseable {
+
+    /**
+     * Size of the output buffer in bytes.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Room needed for the longest thing written in one piece: an escaped
+     * character or an {@code int}.
+     */
+    private static final int MAX_PIECE = 12;
+
+    /**
+     * Line separator, encoded.
+     */
+    private static final byte[] NEWLINE = fragment(System.lineSeparator());
+
+    /**
+     * The file or other channel being written.
+     */
+    private final WritableByteChannel channel;
+
+    /**
+     * Bytes not yet written to the file.
+     */
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+    /**
+     * Constructor; creates or truncates {@code file}.
+     * 
+     * @param file
+     *            the output file
+     * @throws IOException
+     */
+    public HtmlWriter(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Constructor; writes to {@code channel}, which {@code close} closes.
+     * 
+     * @param channel
+     *            the output channel
+     */
+    public HtmlWriter(WritableByteChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Encodes constant markup once, for use with {@code raw}.
+     * 
+     * @param markup
+     *            the markup, written as is
+     * @return its UTF-8 bytes
+     */
+    public static byte[] fragment(String markup) {
+        return markup.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes pre-encoded markup.
+     * 
+     * @param bytes
+     *            bytes from {@code fragment}
+     * @return this writer
+     * @throws IOException
+     */
+    public HtmlWriter raw(byte[] bytes) throws IOException {
+        int offset = 0;
+        while (offset < bytes.length) {
+            if (!this.buffer.hasRemaining()) {
+                this.flush();
+            }
+            int length = Math.min(bytes.length - offset,
+                    this.buffer.remaining());
+            this.buffer.put(bytes, offset, length);
+            offset += length;
+        }
+        return this;
+    }
+
+    /**
+     * Writes markup given as a {@code String}, for text written only once per
+     * page.
+     * 
+     * @param markup
+     *            the markup, written as is
+     * @return this writer
+     * @throws IOException
+     */
+    public HtmlWriter raw(String markup) throws IOException {
+        return this.raw(fragment(markup));
+    }
+
+    /**
+     * Writes a line separator.
+     * 
+     * @return this writer
+     * @throws IOException
+     */
+    public HtmlWriter newline() throws IOException {
+        return this.raw(NEWLINE);
+    }
+
+    /**
+     * Writes {@code text} with {@code &}, {@code <}, {@code >} and {@code "}
+     * escaped.
+     * 
+     * @param text
+     *            the text
+     * @return this writer
+     * @throws IOException
+     */
+    public HtmlWriter text(String text) throws IOException {
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            if (this.buffer.remaining() < MAX_PIECE) {
+                this.flush();
+            }
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                switch (c) {
+                    case '&':
+                        this.putAscii("&amp;");
+                        break;
+                    case '<':
+                        this.putAscii("&lt;");
+                        break;
+                    case '>':
+                        this.putAscii("&gt;");
+                        break;
+                    case '"':
+                        this.putAscii("&quot;");
+                        break;
+                    default:
+                        this.buffer.put((byte) c);
+                        break;
+                }
+            } else if (c < 0x800) {
+                this.buffer.put((byte) (0xC0 | (c >> 6)));
+                this.buffer.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length
+                    && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int code = Character.toCodePoint(c, text.charAt(i + 1));
+                i++;
+                this.buffer.put((byte) (0xF0 | (code >> 18)));
+                this.buffer.put((byte) (0x80 | ((code >> 12) & 0x3F)));
+                this.buffer.put((byte) (0x80 | ((code >> 6) & 0x3F)));
+                this.buffer.put((byte) (0x80 | (code & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                this.buffer.put((byte) '?');
+            } else {
+                this.buffer.put((byte) (0xE0 | (c >> 12)));
+                this.buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                this.buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Writes {@code n} in decimal.
+     * 
+     * @param n
+     *            the number
+     * @return this writer
+     * @throws IOException
+     */
+    public HtmlWriter number(int n) throws IOException {
+        if (this.buffer.remaining() < MAX_PIECE) {
+            this.flush();
+        }
+        long value = n;
+        if (value < 0) {
+            this.buffer.put((byte) '-');
+            value = -value;
+        }
+        long scale = 1;
+        while (scale * 10 <= value) {
+            scale *= 10;
+        }
+        while (scale > 0) {
+            this.buffer.put((byte) ('0' + value / scale));
+            value %= scale;
+            scale /= 10;
+        }
+        return this;
+    }
+
+    /**
+     * Writes everything buffered to the channel.
+     * 
+     * @throws IOException
+     */
+    public void flush() throws IOException {
+        this.buffer.flip();
+        while (this.buffer.hasRemaining()) {
+            this.channel.write(this.buffer);
+        }
+        this.buffer.clear();
+    }
+
+    /**
+     * Flushes and closes the channel.
+     * 
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            this.flush();
+        } finally {
+            this.channel.close();
+        }
+    }
+
+    /**
+     * Puts an ASCII string into the buffer, which must have room for it.
+     * 
+     * @param ascii
+     *            the string
+     */
+    private void putAscii(String ascii) {
+        for (int i = 0; i < ascii.length(); i++) {
+            this.buffer.put((byte) ascii.charAt(i));
+        }
+    }
+}
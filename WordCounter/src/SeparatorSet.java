@@ -0,0 +1,66 @@
+import java.util.Arrays;
+
+/**
+ * Set of separator characters with O(1) membership tests. Latin-1 characters
+ * are looked up in a bitset; the few separators beyond Latin-1, if any, are
+ * found by binary search in a sorted array. No {@code Character} is ever
+ * boxed.
+ * 
+ * @author Andrew Cheng
+ */
+public final class SeparatorSet {
+
+    /**
+     * Number of characters covered by the bitset.
+     */
+    private static final int LATIN_1 = 256;
+
+    /**
+     * Bit {@code c} is set if Latin-1 character {@code c} is a separator.
+     */
+    private final long[] latin1 = new long[LATIN_1 / Long.SIZE];
+
+    /**
+     * Separators outside Latin-1, in increasing order.
+     */
+    private final char[] others;
+
+    /**
+     * Constructor.
+     * 
+     * @param separators
+     *            the separator characters
+     */
+    public SeparatorSet(String separators) {
+        assert separators != null : "Violation of: separators is not null";
+
+        char[] rest = new char[separators.length()];
+        int restLength = 0;
+        for (int i = 0; i < separators.length(); i++) {
+            char c = separators.charAt(i);
+            if (c < LATIN_1) {
+                this.latin1[c >>> 6] |= 1L << c;
+            } else {
+                rest[restLength] = c;
+                restLength++;
+            }
+        }
+        this.others = Arrays.copyOf(rest, restLength);
+        Arrays.sort(this.others);
+    }
+
+    /**
+     * Reports whether {@code c} is a separator.
+     * 
+     * @param c
+     *            the character to test
+     * @return true if {@code c} is in this set
+     */
+    public boolean contains(char c) {
+        if (c < LATIN_1) {
+            return (this.latin1[c >>> 6] & (1L << c)) != 0;
+        }
+        return this.others.length > 0
+                && Arrays.binarySearch(this.others, c) >= 0;
+    }
+}
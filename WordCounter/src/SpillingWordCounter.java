@@ -0,0 +1,310 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Exact word counter whose heap use is bounded by a word limit and not by the
+ * size of the vocabulary. Words are counted in memory until the limit is
+ * passed; the counts are then sorted and spilled to a temporary run file and
+ * counting starts over. {@code mergeTo} streams the final counts, in order,
+ * by a k-way merge of the runs, first merging them in groups into longer runs
+ * while there are too many to open at once.
+ * 
+ * @author Andrew Cheng
+ */
+public final class SpillingWordCounter implements WordSink, AutoCloseable {
+
+    /**
+     * Number of bytes buffered for each run file.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Most run files read at once by a merge.
+     */
+    private static final int MAX_FAN_IN = 128;
+
+    /**
+     * A run file being read during the merge, positioned on its next word.
+     */
+    private static final class Run {
+
+        DataInputStream input;
+        String word;
+        int count;
+
+        Run(Path file) throws IOException {
+            this.input = new DataInputStream(new BufferedInputStream(
+                    Files.newInputStream(file), BUFFER_SIZE));
+        }
+
+        /**
+         * Moves to the next word of the run.
+         * 
+         * @return false if the run is used up
+         * @throws IOException
+         */
+        boolean advance() throws IOException {
+            int length;
+            try {
+                length = this.input.readInt();
+            } catch (EOFException e) {
+                this.input.close();
+                return false;
+            }
+            byte[] bytes = new byte[length];
+            this.input.readFully(bytes);
+            this.word = new String(bytes, StandardCharsets.UTF_8);
+            this.count = this.input.readInt();
+            return true;
+        }
+    }
+
+    /**
+     * Most distinct words held in memory before spilling.
+     */
+    private final int maxWords;
+
+    /**
+     * Order of the words in the runs and in the merged output.
+     */
+    private final Comparator<String> order;
+
+    /**
+     * Words counted since the last spill.
+     */
+    private WordCountTable table;
+
+    /**
+     * Run files spilled so far.
+     */
+    private final List<Path> runs = new ArrayList<Path>();
+
+    /**
+     * Constructor.
+     * 
+     * @param maxWords
+     *            most distinct words to hold in memory before spilling
+     * @param order
+     *            order of the words in the merged output; words that are
+     *            equal must compare as 0 and no others may
+     */
+    public SpillingWordCounter(int maxWords, Comparator<String> order) {
+        assert maxWords > 0 : "Violation of: maxWords > 0";
+        this.maxWords = maxWords;
+        this.order = order;
+        this.table = new WordCountTable();
+    }
+
+    @Override
+    public void add(char[] word, int length, int hash, int count) {
+        this.table.add(word, length, hash, count);
+        this.spillIfFull();
+    }
+
+    /**
+     * Adds {@code count} to the count of {@code word}.
+     * 
+     * @param word
+     *            the word
+     * @param count
+     *            amount to add
+     */
+    @Override
+    public void add(String word, int count) {
+        this.table.add(word, count);
+        this.spillIfFull();
+    }
+
+    /**
+     * Returns the number of run files spilled so far.
+     * 
+     * @return the number of runs
+     */
+    public int runCount() {
+        return this.runs.size();
+    }
+
+    /**
+     * Hands every word and its total count to {@code consumer}, in order.
+     * Nothing more may be added afterwards.
+     * 
+     * @param consumer
+     *            receives the words and counts
+     * @throws IOException
+     * @throws ArithmeticException
+     *             if the total count of a word does not fit in an int
+     */
+    public void mergeTo(WordCountConsumer consumer) throws IOException {
+        if (this.runs.isEmpty()) {
+            String[] words = this.sortedWords();
+            for (String word : words) {
+                consumer.accept(word, this.table.count(word));
+            }
+            this.table = new WordCountTable();
+            return;
+        }
+
+        if (this.table.size() > 0) {
+            this.spill();
+        }
+        while (this.runs.size() > MAX_FAN_IN) {
+            List<Path> group = new ArrayList<Path>(this.runs.subList(0,
+                    MAX_FAN_IN));
+            Path file = Files.createTempFile("words", ".run");
+            this.runs.add(file);
+            try (DataOutputStream output = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(file),
+                            BUFFER_SIZE))) {
+                this.merge(group,
+                        (word, count) -> writeEntry(output, word, count));
+            }
+            for (Path run : group) {
+                Files.deleteIfExists(run);
+            }
+            this.runs.subList(0, MAX_FAN_IN).clear();
+        }
+        this.merge(this.runs, consumer);
+    }
+
+    /**
+     * Hands every word of the run files {@code files} and its total count
+     * over them to {@code consumer}, in order.
+     * 
+     * @param files
+     *            the run files, at most {@code MAX_FAN_IN} of them
+     * @param consumer
+     *            receives the words and counts
+     * @throws IOException
+     */
+    private void merge(List<Path> files, WordCountConsumer consumer)
+            throws IOException {
+        PriorityQueue<Run> heads = new PriorityQueue<Run>(files.size(),
+                (r1, r2) -> this.order.compare(r1.word, r2.word));
+        try {
+            for (Path file : files) {
+                Run run = new Run(file);
+                if (run.advance()) {
+                    heads.add(run);
+                }
+            }
+            while (!heads.isEmpty()) {
+                Run run = heads.poll();
+                String word = run.word;
+                long count = run.count;
+                if (run.advance()) {
+                    heads.add(run);
+                }
+                while (!heads.isEmpty()
+                        && this.order.compare(heads.peek().word, word) == 0) {
+                    Run same = heads.poll();
+                    count += same.count;
+                    if (same.advance()) {
+                        heads.add(same);
+                    }
+                }
+                consumer.accept(word, Math.toIntExact(count));
+            }
+        } finally {
+            for (Run run : heads) {
+                run.input.close();
+            }
+        }
+    }
+
+    /**
+     * Deletes the run files.
+     * 
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        for (Path file : this.runs) {
+            Files.deleteIfExists(file);
+        }
+        this.runs.clear();
+    }
+
+    /**
+     * Spills the in-memory counts once they pass the word limit.
+     */
+    private void spillIfFull() {
+        if (this.table.size() > this.maxWords) {
+            try {
+                this.spill();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Returns the words held in memory, in order.
+     * 
+     * @return the sorted words
+     */
+    private String[] sortedWords() {
+        String[] words = new String[this.table.size()];
+        int n = 0;
+        for (int i = 0; i < this.table.capacity(); i++) {
+            String word = this.table.wordAt(i);
+            if (word != null) {
+                words[n] = word;
+                n++;
+            }
+        }
+        Arrays.sort(words, this.order);
+        return words;
+    }
+
+    /**
+     * Writes the in-memory counts to a new run file, in order, and empties
+     * the table.
+     * 
+     * @throws IOException
+     */
+    private void spill() throws IOException {
+        String[] words = this.sortedWords();
+        Path file = Files.createTempFile("words", ".run");
+        this.runs.add(file);
+        try (DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(file),
+                        BUFFER_SIZE))) {
+            for (String word : words) {
+                writeEntry(output, word, this.table.count(word));
+            }
+        }
+        this.table = new WordCountTable();
+    }
+
+    /**
+     * Writes one word and its count to a run file.
+     * 
+     * @param output
+     *            the run file being written
+     * @param word
+     *            the word
+     * @param count
+     *            its count
+     * @throws IOException
+     */
+    private static void writeEntry(DataOutputStream output, String word,
+            int count) throws IOException {
+        byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+        output.writeInt(count);
+    }
+}
@@ -0,0 +1,556 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Word counter for very large vocabularies that keeps no object per word.
+ * The characters of every distinct word are stored one after another in a
+ * single {@code byte[]} arena, and each word is known by an {@code int} ID:
+ * its offset in the arena and its count are kept in parallel {@code int[]}s
+ * indexed by ID, and the hash table holds only IDs. The length of a word is
+ * where the next word starts less where it starts, and its hash is worked
+ * out again from the arena when the table grows, so neither is stored.
+ * 
+ * <p>
+ * A word whose characters all fit in one byte (ASCII and Latin-1) takes one
+ * byte a character in the arena, and any other word two. A distinct word of
+ * eight ASCII letters then costs about 24 bytes in all, against about 100 for
+ * a {@code String} key and boxed {@code Integer} count in a {@code HashMap}.
+ * A word only becomes a {@code String} when {@code word} is called.
+ * </p>
+ * 
+ * <p>
+ * The hash table uses open addressing and grows when three quarters full,
+ * fuller than {@code WordCountTable}, since its slots are small; slots are
+ * taken from the high bits of the hash times a large odd constant, so words
+ * with nearby hashes do not crowd into one long run of slots.
+ * </p>
+ * 
+ * @author Andrew Cheng
+ */
+public final class WordArena implements WordSink {
+
+    /**
+     * Starting number of slots; always a power of two.
+     */
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * Starting number of bytes in the arena.
+     */
+    private static final int INITIAL_ARENA = 1 << 14;
+
+    /**
+     * Largest number of bytes the arena can hold.
+     */
+    private static final int MAX_ARENA = Integer.MAX_VALUE - 8;
+
+    /**
+     * Multiplier spreading word hashes over the slots; odd, so it loses no
+     * bits.
+     */
+    private static final int MULTIPLIER = 0x9E3779B9;
+
+    /**
+     * Characters of every word, one after another.
+     */
+    private byte[] arena;
+
+    /**
+     * Number of bytes of the arena in use.
+     */
+    private int used;
+
+    /**
+     * Offset in the arena of each word, by ID, complemented for a word stored
+     * two bytes to a character; the entry after the last word is
+     * {@code used}.
+     */
+    private int[] offsets;
+
+    /**
+     * Count of each word, by ID.
+     */
+    private int[] counts;
+
+    /**
+     * ID plus one of the word in each slot, or 0 for an empty slot.
+     */
+    private int[] slots;
+
+    /**
+     * Number of distinct words, which is also the next ID.
+     */
+    private int size;
+
+    /**
+     * Number of words counted, repeats included.
+     */
+    private long total;
+
+    /**
+     * Characters of a word being looked up or copied.
+     */
+    private char[] scratch = new char[64];
+
+    /**
+     * Default constructor.
+     */
+    public WordArena() {
+        this.arena = new byte[INITIAL_ARENA];
+        this.used = 0;
+        this.offsets = new int[INITIAL_CAPACITY / 2 + 1];
+        this.counts = new int[INITIAL_CAPACITY / 2];
+        this.slots = new int[INITIAL_CAPACITY];
+        this.size = 0;
+        this.total = 0;
+    }
+
+    /**
+     * Adds {@code count} to the count of {@code word[0, length)}.
+     * 
+     * @param word
+     *            buffer holding the word
+     * @param length
+     *            number of characters in the word
+     * @param hash
+     *            {@code WordCountTable.hash(word, length)}
+     * @param count
+     *            amount to add
+     */
+    @Override
+    public void add(char[] word, int length, int hash, int count) {
+        int mask = this.slots.length - 1;
+        int slot = this.home(hash);
+        int id = this.slots[slot] - 1;
+        while (id >= 0) {
+            if (this.matches(id, word, length)) {
+                this.counts[id] += count;
+                this.total += count;
+                return;
+            }
+            slot = (slot + 1) & mask;
+            id = this.slots[slot] - 1;
+        }
+        this.insert(slot, word, length, count);
+    }
+
+    /**
+     * Adds {@code count} to the count of {@code word}.
+     * 
+     * @param word
+     *            the word
+     * @param count
+     *            amount to add
+     */
+    @Override
+    public void add(String word, int count) {
+        char[] chars = this.scratch(word.length());
+        word.getChars(0, word.length(), chars, 0);
+        this.add(chars, word.length(), word.hashCode(), count);
+    }
+
+    /**
+     * Adds every count in {@code other} to this arena.
+     * 
+     * @param other
+     *            the arena to add
+     */
+    public void addAll(WordArena other) {
+        for (int id = 0; id < other.size; id++) {
+            int length = other.length(id);
+            char[] chars = this.scratch(length);
+            other.decode(id, chars);
+            this.add(chars, length, WordCountTable.hash(chars, length),
+                    other.counts[id]);
+        }
+    }
+
+    /**
+     * Returns the count of {@code word}, or 0 if it has not been counted.
+     * 
+     * @param word
+     *            the word
+     * @return its count
+     */
+    public int count(String word) {
+        char[] chars = this.scratch(word.length());
+        word.getChars(0, word.length(), chars, 0);
+        int hash = word.hashCode();
+        int mask = this.slots.length - 1;
+        int slot = this.home(hash);
+        int id = this.slots[slot] - 1;
+        while (id >= 0) {
+            if (this.matches(id, chars, word.length())) {
+                return this.counts[id];
+            }
+            slot = (slot + 1) & mask;
+            id = this.slots[slot] - 1;
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the number of distinct words; their IDs are 0 to
+     * {@code size() - 1}, in the order they were first counted.
+     * 
+     * @return the number of words
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns the number of words counted, repeats included.
+     * 
+     * @return the total of all counts
+     */
+    public long total() {
+        return this.total;
+    }
+
+    /**
+     * Returns the word with ID {@code id}, made into a new {@code String}.
+     * 
+     * @param id
+     *            ID of the word, {@code 0 <= id < size()}
+     * @return the word
+     */
+    public String word(int id) {
+        if (this.offsets[id] >= 0) {
+            return new String(this.arena, this.offsets[id], this.length(id),
+                    StandardCharsets.ISO_8859_1);
+        }
+        char[] chars = new char[this.length(id)];
+        this.decode(id, chars);
+        return new String(chars);
+    }
+
+    /**
+     * Returns the count of the word with ID {@code id}.
+     * 
+     * @param id
+     *            ID of the word, {@code 0 <= id < size()}
+     * @return its count
+     */
+    public int count(int id) {
+        return this.counts[id];
+    }
+
+    /**
+     * Returns the {@code n}-th largest count, or the smallest count if there
+     * are fewer than {@code n} words; every word counted more often than that
+     * is in the top {@code n}.
+     * 
+     * @param n
+     *            the rank, {@code n > 0}
+     * @return the count at that rank, or 0 if there are no words
+     */
+    public int threshold(int n) {
+        assert n > 0 : "Violation of: n > 0";
+
+        if (this.size == 0) {
+            return 0;
+        }
+        int[] heap = new int[Math.min(n, this.size)];
+        int heapSize = 0;
+        for (int id = 0; id < this.size; id++) {
+            int count = this.counts[id];
+            if (heapSize < heap.length) {
+                heap[heapSize] = count;
+                heapSize++;
+                siftUp(heap, heapSize - 1);
+            } else if (count > heap[0]) {
+                heap[0] = count;
+                siftDown(heap, heapSize);
+            }
+        }
+        return heap[0];
+    }
+
+    /**
+     * Returns the number of bytes held by the arena and the arrays, counting
+     * the unused space at their ends.
+     * 
+     * @return the size of the storage in bytes
+     */
+    public long storageBytes() {
+        return this.arena.length + 4L * this.slots.length + 4L
+                * this.offsets.length + 4L * this.counts.length;
+    }
+
+    /**
+     * Returns whether the word with ID {@code id} is {@code word[0, length)}.
+     * 
+     * @param id
+     *            ID of the stored word
+     * @param word
+     *            buffer holding the word being looked up
+     * @param length
+     *            number of characters in the word
+     * @return true if they are equal
+     */
+    private boolean matches(int id, char[] word, int length) {
+        if (this.length(id) != length) {
+            return false;
+        }
+        int at = this.offsets[id];
+        if (at >= 0) {
+            for (int i = 0; i < length; i++) {
+                if ((this.arena[at + i] & 0xFF) != word[i]) {
+                    return false;
+                }
+            }
+        } else {
+            at = ~at;
+            for (int i = 0; i < length; i++) {
+                if (this.charAt(at + 2 * i) != word[i]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the home slot of a word with hash {@code hash}.
+     * 
+     * @param hash
+     *            {@code String.hashCode} of the word
+     * @return its home slot
+     */
+    private int home(int hash) {
+        return (hash * MULTIPLIER) >>> Integer
+                .numberOfLeadingZeros(this.slots.length - 1);
+    }
+
+    /**
+     * Returns the number of characters of the word with ID {@code id}.
+     * 
+     * @param id
+     *            ID of the word
+     * @return its length
+     */
+    private int length(int id) {
+        int at = this.offsets[id];
+        int next = this.offsets[id + 1];
+        if (next < 0) {
+            next = ~next;
+        }
+        if (at >= 0) {
+            return next - at;
+        }
+        return (next - ~at) / 2;
+    }
+
+    /**
+     * Returns {@code String.hashCode} of the word with ID {@code id}.
+     * 
+     * @param id
+     *            ID of the word
+     * @return its hash
+     */
+    private int hash(int id) {
+        int length = this.length(id);
+        int at = this.offsets[id];
+        int h = 0;
+        if (at >= 0) {
+            for (int i = 0; i < length; i++) {
+                h = 31 * h + (this.arena[at + i] & 0xFF);
+            }
+        } else {
+            at = ~at;
+            for (int i = 0; i < length; i++) {
+                h = 31 * h + this.charAt(at + 2 * i);
+            }
+        }
+        return h;
+    }
+
+    /**
+     * Copies the characters of the word with ID {@code id} into
+     * {@code chars}.
+     * 
+     * @param id
+     *            ID of the word
+     * @param chars
+     *            buffer at least as long as the word
+     */
+    private void decode(int id, char[] chars) {
+        int length = this.length(id);
+        int at = this.offsets[id];
+        if (at >= 0) {
+            for (int i = 0; i < length; i++) {
+                chars[i] = (char) (this.arena[at + i] & 0xFF);
+            }
+        } else {
+            at = ~at;
+            for (int i = 0; i < length; i++) {
+                chars[i] = this.charAt(at + 2 * i);
+            }
+        }
+    }
+
+    /**
+     * Returns the character stored in two bytes at {@code at} in the arena.
+     * 
+     * @param at
+     *            offset of the high byte
+     * @return the character
+     */
+    private char charAt(int at) {
+        return (char) ((this.arena[at] & 0xFF) << 8 | (this.arena[at + 1]
+                & 0xFF));
+    }
+
+    /**
+     * Returns a scratch buffer of at least {@code length} characters.
+     * 
+     * @param length
+     *            number of characters needed
+     * @return the buffer
+     */
+    private char[] scratch(int length) {
+        if (length > this.scratch.length) {
+            this.scratch = new char[Math.max(length, this.scratch.length * 2)];
+        }
+        return this.scratch;
+    }
+
+    /**
+     * Gives a new word the next ID, copies it into the arena and puts it in
+     * the empty {@code slot}, growing the table if it is three quarters full.
+     * 
+     * @param slot
+     *            an empty slot
+     * @param word
+     *            buffer holding the word
+     * @param length
+     *            number of characters in the word
+     * @param count
+     *            count of the word
+     */
+    private void insert(int slot, char[] word, int length, int count) {
+        boolean oneByte = true;
+        for (int i = 0; i < length && oneByte; i++) {
+            oneByte = word[i] <= 0xFF;
+        }
+        int bytes = length;
+        if (!oneByte) {
+            bytes = 2 * length;
+        }
+        this.reserve(bytes);
+        int at = this.used;
+        if (oneByte) {
+            for (int i = 0; i < length; i++) {
+                this.arena[at + i] = (byte) word[i];
+            }
+        } else {
+            for (int i = 0; i < length; i++) {
+                this.arena[at + 2 * i] = (byte) (word[i] >>> 8);
+                this.arena[at + 2 * i + 1] = (byte) word[i];
+            }
+        }
+        this.used += bytes;
+
+        int id = this.size;
+        if (id == this.counts.length) {
+            int capacity = id * 2;
+            this.offsets = Arrays.copyOf(this.offsets, capacity + 1);
+            this.counts = Arrays.copyOf(this.counts, capacity);
+        }
+        if (oneByte) {
+            this.offsets[id] = at;
+        } else {
+            this.offsets[id] = ~at;
+        }
+        this.offsets[id + 1] = this.used;
+        this.counts[id] = count;
+        this.slots[slot] = id + 1;
+        this.size++;
+        this.total += count;
+        if (this.size * 4L > this.slots.length * 3L) {
+            this.grow();
+        }
+    }
+
+    /**
+     * Makes room for {@code bytes} more bytes in the arena.
+     * 
+     * @param bytes
+     *            number of bytes needed
+     */
+    private void reserve(int bytes) {
+        if (bytes > MAX_ARENA - this.used) {
+            throw new IllegalStateException("Word arena is full");
+        }
+        int needed = this.used + bytes;
+        if (needed > this.arena.length) {
+            int capacity = (int) Math.min(MAX_ARENA, Math.max(needed,
+                    this.arena.length * 2L));
+            this.arena = Arrays.copyOf(this.arena, capacity);
+        }
+    }
+
+    /**
+     * Doubles the number of slots and re-inserts every ID, working out the
+     * hash of each word again from the arena.
+     */
+    private void grow() {
+        this.slots = new int[this.slots.length * 2];
+        int mask = this.slots.length - 1;
+        for (int id = 0; id < this.size; id++) {
+            int slot = this.home(this.hash(id));
+            while (this.slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            this.slots[slot] = id + 1;
+        }
+    }
+
+    /**
+     * Moves {@code heap[i]} up until its parent is no larger.
+     * 
+     * @param heap
+     *            a min-heap except at {@code i}
+     * @param i
+     *            index of the entry to move
+     */
+    private static void siftUp(int[] heap, int i) {
+        int child = i;
+        while (child > 0) {
+            int parent = (child - 1) / 2;
+            if (heap[parent] <= heap[child]) {
+                return;
+            }
+            int swap = heap[parent];
+            heap[parent] = heap[child];
+            heap[child] = swap;
+            child = parent;
+        }
+    }
+
+    /**
+     * Moves {@code heap[0]} down until its children are no smaller.
+     * 
+     * @param heap
+     *            a min-heap except at the root
+     * @param size
+     *            number of entries in the heap
+     */
+    private static void siftDown(int[] heap, int size) {
+        int parent = 0;
+        while (2 * parent + 1 < size) {
+            int child = 2 * parent + 1;
+            if (child + 1 < size && heap[child + 1] < heap[child]) {
+                child++;
+            }
+            if (heap[parent] <= heap[child]) {
+                return;
+            }
+            int swap = heap[parent];
+            heap[parent] = heap[child];
+            heap[child] = swap;
+            parent = child;
+        }
+    }
+}
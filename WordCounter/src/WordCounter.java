@@ -1,12 +1,16 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.List;
 
 import components.map.Map;
 import components.map.Map.Pair;
 import components.map.Map1L;
-import components.queue.Queue;
-import components.queue.Queue1L;
-import components.set.Set;
-import components.set.Set1L;
 import components.simplereader.SimpleReader;
 import components.simplereader.SimpleReader1L;
 import components.simplewriter.SimpleWriter;
@@ -23,60 +27,349 @@ import components.simplewriter.SimpleWriter1L;
 public class WordCounter {
 
     /**
-     * Makes a HTML page that pulls from a {@code Map} of words and its number
-     * of occurrences
+     * Characters that are considered separators unless the command line says
+     * otherwise.
+     */
+    private static final String SEPARATORS = " \t,.-;'/\"@#$%&()";
+
+    /**
+     * Start of the key of the word-count indexes and count shards this program
+     * writes; the separators in use complete it.
+     */
+    private static final String INDEX_KEY = "WordCounter ";
+
+    /**
+     * Order of the table rows: lexicographic ignoring case, then exact
+     * spelling.
+     */
+    private static final Comparator<String> ROW_ORDER = new StringLT()
+            .thenComparing(Comparator.<String> naturalOrder());
+
+    /**
+     * Markup of a table row, up to its word.
+     */
+    private static final byte[] ROW_WORD = HtmlWriter.fragment("<tr>"
+            + System.lineSeparator() + "<td>");
+
+    /**
+     * Markup of a table row, from its word to its count.
+     */
+    private static final byte[] ROW_COUNT = HtmlWriter.fragment("</td>"
+            + System.lineSeparator() + "<td>");
+
+    /**
+     * Markup of a table row, after its count.
+     */
+    private static final byte[] ROW_END = HtmlWriter.fragment("</td>"
+            + System.lineSeparator() + "</tr>" + System.lineSeparator());
+
+    /**
+     * Makes a HTML page from the sorted words and their number of
+     * occurrences, writing each row straight from the sorted arrays.
      * 
      * @param outFile
-     *            the output text file we are writing to with
-     *            {@code SimpleWriter}
+     *            the output file we are writing to with {@code HtmlWriter}
      * @param words
-     *            the {@code Map} containing all the words and its occurrences
-     *            in the input text file
-     * @param keyQueue
-     *            the {@code Queue} containing the {@code words} 's keys
+     *            the {@code CollatedWords} holding all the words and their
+     *            occurrences in the input text file, in order
      * @param inFile
      *            the input text file read in by {@code SimpleReader}
-     * @clears {@code keyQueue}, {@code words}
+     * @throws IOException
      * @ensures <pre>
-     * {@code HTML code table elements = entries(word)}
+     * {@code HTML code table elements = entries(words)}
      * </pre>
      * 
      */
-    public static void tableMaker(SimpleWriter outFile,
-            Map<String, Integer> words, Queue<String> keyQueue,
-            SimpleReader inFile) {
+    public static void tableMaker(HtmlWriter outFile, CollatedWords words,
+            SimpleReader inFile) throws IOException {
         assert words != null : "Violation of: words is not null";
-        assert keyQueue != null : "Violation of: keyQueue is not null";
-        assert outFile.isOpen() : "Violation of: outFile is open";
         assert inFile.isOpen() : "Violation of: inFile is open";
 
+        tableHeader(outFile, inFile.name());
+        //Loops through the sorted words, writing out each word and its count
+        for (int i = 0; i < words.size(); i++) {
+            tableRow(outFile, words.word(i), words.count(i));
+        }
+        tableFooter(outFile);
+
+    }
+
+    /**
+     * Makes a HTML page from the merged counts of a
+     * {@code SpillingWordCounter}, writing each row as the merge produces it.
+     * 
+     * @param outFile
+     *            the output file we are writing to with {@code HtmlWriter}
+     * @param counter
+     *            the {@code SpillingWordCounter} holding all the words and
+     *            their occurrences in the input text file
+     * @param inFile
+     *            the input text file read in by {@code SimpleReader}
+     * @throws IOException
+     * @ensures <pre>
+     * {@code HTML code table elements = entries(counter)}
+     * </pre>
+     */
+    public static void tableMaker(HtmlWriter outFile,
+            SpillingWordCounter counter, SimpleReader inFile)
+            throws IOException {
+        assert counter != null : "Violation of: counter is not null";
+        assert inFile.isOpen() : "Violation of: inFile is open";
+
+        tableHeader(outFile, inFile.name());
+        counter.mergeTo((word, count) -> tableRow(outFile, word, count));
+        tableFooter(outFile);
+    }
+
+    /**
+     * Makes a HTML page from the words of a {@code WordTrie} that start with
+     * {@code prefix}, ignoring case. The trie is walked in order, so each row
+     * is written as it is reached, with no sort.
+     * 
+     * @param outFile
+     *            the output file we are writing to with {@code HtmlWriter}
+     * @param words
+     *            the {@code WordTrie} holding all the words and their
+     *            occurrences in the input text file, ignoring case
+     * @param prefix
+     *            the prefix the words start with; "" for every word
+     * @param inFile
+     *            the input text file read in by {@code SimpleReader}
+     * @throws IOException
+     * @ensures <pre>
+     * {@code HTML code table elements = entries(words) starting with prefix}
+     * </pre>
+     */
+    public static void tableMaker(HtmlWriter outFile, WordTrie words,
+            String prefix, SimpleReader inFile) throws IOException {
+        assert words != null : "Violation of: words is not null";
+        assert prefix != null : "Violation of: prefix is not null";
+        assert inFile.isOpen() : "Violation of: inFile is open";
+
+        tableHeader(outFile, inFile.name());
+        words.forEach(prefix, (word, count) -> tableRow(outFile, word, count));
+        tableFooter(outFile);
+    }
+
+    /**
+     * Makes a HTML page from the total counts of the count shards in
+     * {@code shards}, written by {@code --shard} runs over parts of a corpus.
+     * The shards are streamed through a k-way merge and each row is written
+     * as the merge produces it, so no shard's words are all held in memory.
+     * If {@code merged} is not null, the total counts are also written to a
+     * shard there, which can itself be merged again later.
+     * 
+     * @param outFile
+     *            the output file we are writing to with {@code HtmlWriter}
+     * @param shards
+     *            paths of the shards
+     * @param separators
+     *            the characters the shards' words were split at
+     * @param merged
+     *            path of the shard of total counts, or null for none
+     * @throws IOException
+     * @ensures <pre>
+     * {@code HTML code table elements = sum of entries(shards)}
+     * </pre>
+     */
+    public static void tableMaker(HtmlWriter outFile, List<Path> shards,
+            String separators, Path merged) throws IOException {
+        assert shards != null : "Violation of: shards is not null";
+
+        tableHeader(outFile, shards.size() + " shards");
+        mergeShards(shards, separators, merged,
+                (word, count) -> tableRow(outFile, word, count));
+        tableFooter(outFile);
+    }
+
+    /**
+     * Writes the sorted words and their number of occurrences to the pages of
+     * {@code pages}.
+     * 
+     * @param pages
+     *            the {@code PagedTable} we are writing to
+     * @param words
+     *            the {@code CollatedWords} holding all the words and their
+     *            occurrences in the input text file, in order
+     * @throws IOException
+     * @ensures <pre>
+     * {@code HTML code table elements of the pages = entries(words)}
+     * </pre>
+     */
+    public static void tableMaker(PagedTable pages, CollatedWords words)
+            throws IOException {
+        assert pages != null : "Violation of: pages is not null";
+        assert words != null : "Violation of: words is not null";
+
+        for (int i = 0; i < words.size(); i++) {
+            pages.accept(words.word(i), words.count(i));
+        }
+    }
+
+    /**
+     * Writes the merged counts of a {@code SpillingWordCounter} to the pages
+     * of {@code pages} as the merge produces them.
+     * 
+     * @param pages
+     *            the {@code PagedTable} we are writing to
+     * @param counter
+     *            the {@code SpillingWordCounter} holding all the words and
+     *            their occurrences in the input text file
+     * @throws IOException
+     * @ensures <pre>
+     * {@code HTML code table elements of the pages = entries(counter)}
+     * </pre>
+     */
+    public static void tableMaker(PagedTable pages,
+            SpillingWordCounter counter) throws IOException {
+        assert pages != null : "Violation of: pages is not null";
+        assert counter != null : "Violation of: counter is not null";
+
+        counter.mergeTo(pages);
+    }
+
+    /**
+     * Writes the words of a {@code WordTrie} that start with {@code prefix},
+     * ignoring case, to the pages of {@code pages} as the trie is walked.
+     * 
+     * @param pages
+     *            the {@code PagedTable} we are writing to
+     * @param words
+     *            the {@code WordTrie} holding all the words and their
+     *            occurrences in the input text file, ignoring case
+     * @param prefix
+     *            the prefix the words start with; "" for every word
+     * @throws IOException
+     * @ensures <pre>
+     * {@code HTML code table elements of the pages =
+     *  entries(words) starting with prefix}
+     * </pre>
+     */
+    public static void tableMaker(PagedTable pages, WordTrie words,
+            String prefix) throws IOException {
+        assert pages != null : "Violation of: pages is not null";
+        assert words != null : "Violation of: words is not null";
+        assert prefix != null : "Violation of: prefix is not null";
+
+        words.forEach(prefix, pages);
+    }
+
+    /**
+     * Writes the total counts of the count shards in {@code shards} to the
+     * pages of {@code pages} as the merge produces them. If {@code merged} is
+     * not null, the total counts are also written to a shard there.
+     * 
+     * @param pages
+     *            the {@code PagedTable} we are writing to
+     * @param shards
+     *            paths of the shards
+     * @param separators
+     *            the characters the shards' words were split at
+     * @param merged
+     *            path of the shard of total counts, or null for none
+     * @throws IOException
+     * @ensures <pre>
+     * {@code HTML code table elements of the pages = sum of entries(shards)}
+     * </pre>
+     */
+    public static void tableMaker(PagedTable pages, List<Path> shards,
+            String separators, Path merged) throws IOException {
+        assert pages != null : "Violation of: pages is not null";
+        assert shards != null : "Violation of: shards is not null";
+
+        mergeShards(shards, separators, merged, pages);
+    }
+
+    /**
+     * Hands the total counts of the count shards in {@code shards} to
+     * {@code rows}, in row order, also writing them to a shard at
+     * {@code merged} if it is not null.
+     * 
+     * @param shards
+     *            paths of the shards
+     * @param separators
+     *            the characters the shards' words were split at
+     * @param merged
+     *            path of the shard of total counts, or null for none
+     * @param rows
+     *            receives the words and their total counts
+     * @throws IOException
+     */
+    private static void mergeShards(List<Path> shards, String separators,
+            Path merged, WordCountConsumer rows) throws IOException {
+        String key = INDEX_KEY + separators;
+        if (merged == null) {
+            CountShard.merge(shards, key, ROW_ORDER, rows);
+        } else {
+            try (CountShard.Writer writer = new CountShard.Writer(merged, key,
+                    ROW_ORDER)) {
+                CountShard.merge(shards, key, ROW_ORDER, (word, count) -> {
+                    rows.accept(word, count);
+                    writer.accept(word, count);
+                });
+                writer.finish();
+            }
+        }
+    }
+
+    /**
+     * Writes the start of the page, up to and including the table heading.
+     * 
+     * @param outFile
+     *            the output file we are writing to
+     * @param name
+     *            name of the input, for the title
+     * @throws IOException
+     */
+    private static void tableHeader(HtmlWriter outFile, String name)
+            throws IOException {
         //WebPage Title
-        outFile.println("<html>");
-        outFile.println("<head>");
-        outFile.println("<title>Words Counted in " + inFile.name() + "</title>");
+        outFile.raw("<html>").newline();
+        outFile.raw("<head>").newline();
+        outFile.raw("<title>Words Counted in ").text(name).raw("</title>")
+                .newline();
 
-        outFile.println("<body>");
+        outFile.raw("<body>").newline();
         //Header
-        outFile.println("<h2>Words Counted in " + inFile.name() + "</h2>");
-        outFile.println("<hr />");
+        outFile.raw("<h2>Words Counted in ").text(name).raw("</h2>")
+                .newline();
+        outFile.raw("<hr />").newline();
         //Start of Table
-        outFile.println("<table border=\"1\">");
-        outFile.println("<tr>");
-        outFile.println("<th>Words</th>");
-        outFile.println("<th>Counts</th>");
-        outFile.println("</tr>");
-        //Loops through the Map, writing out the Keys and its respective Values
-        while (words.iterator().hasNext()) {
-            Pair<String, Integer> tempPair = words.remove(keyQueue.dequeue());
-            outFile.println("<tr>");
-            outFile.println("<td>" + tempPair.key() + "</td>");
-            outFile.println("<td>" + tempPair.value() + "</td>");
-            outFile.println("</tr>");
-        }
-        outFile.println("</table>");
-        outFile.println("</body>");
-        outFile.println("</html>");
+        outFile.raw("<table border=\"1\">").newline();
+        outFile.raw("<tr>").newline();
+        outFile.raw("<th>Words</th>").newline();
+        outFile.raw("<th>Counts</th>").newline();
+        outFile.raw("</tr>").newline();
+    }
+
+    /**
+     * Writes one table row.
+     * 
+     * @param outFile
+     *            the output file we are writing to
+     * @param word
+     *            the word
+     * @param count
+     *            its number of occurrences
+     * @throws IOException
+     */
+    private static void tableRow(HtmlWriter outFile, String word, int count)
+            throws IOException {
+        outFile.raw(ROW_WORD).text(word).raw(ROW_COUNT).number(count)
+                .raw(ROW_END);
+    }
 
+    /**
+     * Writes the end of the page.
+     * 
+     * @param outFile
+     *            the output file we are writing to
+     * @throws IOException
+     */
+    private static void tableFooter(HtmlWriter outFile) throws IOException {
+        outFile.raw("</table>").newline();
+        outFile.raw("</body>").newline();
+        outFile.raw("</html>").newline();
     }
 
     /**
@@ -90,29 +383,239 @@ public class WordCounter {
     }
 
     /**
-     * Generates the set of characters in the given {@code String} into the
-     * given {@code Set}.
-     * 
-     * @param str
-     *            the given {@code String}
-     * @param strSet
-     *            the {@code Set} to be replaced
-     * @replaces {@code strSet}
-     * @ensures <pre>
-     * {@code strSet = entries(str)}
-     * </pre>
+     * Writes the table rows, in order, to numbered pages of at most a fixed
+     * number of rows each, so a vocabulary of millions of words can still be
+     * opened in a browser. Only the page being written is open; when the
+     * table is closed, an index page linking to every page by the range of
+     * words on it is written where the single page would have been. The pages
+     * go next to the index, named after it with "-1", "-2" and so on added.
      */
-    private static void generateElements(String str, Set<Character> strSet) {
-        assert str != null : "Violation of: str is not null";
-        assert strSet != null : "Violation of: strSet is not null";
+    public static final class PagedTable implements WordCountConsumer,
+            AutoCloseable {
+
+        /**
+         * Path of the index page.
+         */
+        private final Path index;
+
+        /**
+         * Name of the input, for the titles.
+         */
+        private final String name;
+
+        /**
+         * Most rows on a page.
+         */
+        private final int rowsPerPage;
+
+        /**
+         * First word of each finished or open page.
+         */
+        private final List<String> firstWords = new ArrayList<String>();
+
+        /**
+         * Last word of each finished page.
+         */
+        private final List<String> lastWords = new ArrayList<String>();
 
-        strSet.clear();
-        for (int i = 0; i < str.length() - 1; i++) {
+        /**
+         * The page being written, or null between pages.
+         */
+        private HtmlWriter page;
 
-            strSet.add(str.charAt(i));
+        /**
+         * Number of rows on the page being written.
+         */
+        private int rows;
 
+        /**
+         * Number of rows on the last page.
+         */
+        private int lastRows;
+
+        /**
+         * Last word written.
+         */
+        private String lastWord;
+
+        /**
+         * Constructor.
+         * 
+         * @param index
+         *            path of the index page
+         * @param name
+         *            name of the input, for the titles
+         * @param rowsPerPage
+         *            most rows on a page
+         */
+        public PagedTable(Path index, String name, int rowsPerPage) {
+            assert index != null : "Violation of: index is not null";
+            assert rowsPerPage > 0 : "Violation of: rowsPerPage > 0";
+
+            this.index = index;
+            this.name = name;
+            this.rowsPerPage = rowsPerPage;
+            this.page = null;
+            this.rows = 0;
+            this.lastRows = 0;
+            this.lastWord = null;
         }
 
+        /**
+         * Writes the next row, starting a new page if the last one is full.
+         * 
+         * @param word
+         *            the word, after every word already written
+         * @param count
+         *            its number of occurrences
+         * @throws IOException
+         */
+        @Override
+        public void accept(String word, int count) throws IOException {
+            if (this.page == null) {
+                this.firstWords.add(word);
+                this.page = new HtmlWriter(this.pagePath(this.firstWords
+                        .size()));
+                tableHeader(this.page, this.name + ", page "
+                        + this.firstWords.size());
+            }
+            tableRow(this.page, word, count);
+            this.rows++;
+            this.lastWord = word;
+            if (this.rows == this.rowsPerPage) {
+                this.endPage();
+            }
+        }
+
+        /**
+         * Finishes the last page and writes the index page, which also links
+         * every page finished so far if writing the rows failed partway.
+         * 
+         * @throws IOException
+         */
+        @Override
+        public void close() throws IOException {
+            try {
+                this.endPage();
+            } finally {
+                this.writeIndex();
+            }
+        }
+
+        /**
+         * Writes the index page, linking every finished page by its range of
+         * words.
+         * 
+         * @throws IOException
+         */
+        private void writeIndex() throws IOException {
+            try (HtmlWriter outFile = new HtmlWriter(this.index)) {
+                outFile.raw("<html>").newline();
+                outFile.raw("<head>").newline();
+                outFile.raw("<title>Words Counted in ").text(this.name)
+                        .raw("</title>").newline();
+
+                outFile.raw("<body>").newline();
+                outFile.raw("<h2>Words Counted in ").text(this.name)
+                        .raw("</h2>").newline();
+                outFile.raw("<hr />").newline();
+                outFile.raw("<ul>").newline();
+                int pages = this.firstWords.size();
+                for (int i = 0; i < pages; i++) {
+                    String previous = null;
+                    if (i > 0) {
+                        previous = this.lastWords.get(i - 1);
+                    }
+                    String next = null;
+                    if (i + 1 < pages) {
+                        next = this.firstWords.get(i + 1);
+                    }
+                    int pageRows = this.rowsPerPage;
+                    if (i + 1 == pages) {
+                        pageRows = this.lastRows;
+                    }
+                    outFile.raw("<li><a href=\"")
+                            .text(this.pagePath(i + 1).getFileName()
+                                    .toString())
+                            .raw("\">")
+                            .text(shortestPrefix(this.firstWords.get(i),
+                                    previous))
+                            .raw(" &ndash; ")
+                            .text(shortestPrefix(this.lastWords.get(i), next))
+                            .raw("</a> (").number(pageRows)
+                            .raw(" words)</li>").newline();
+                }
+                outFile.raw("</ul>").newline();
+                outFile.raw("</body>").newline();
+                outFile.raw("</html>").newline();
+            }
+        }
+
+        /**
+         * Finishes the page being written, if any.
+         * 
+         * @throws IOException
+         */
+        private void endPage() throws IOException {
+            if (this.page != null) {
+                HtmlWriter finished = this.page;
+                this.page = null;
+                this.lastWords.add(this.lastWord);
+                this.lastRows = this.rows;
+                this.rows = 0;
+                try {
+                    tableFooter(finished);
+                } finally {
+                    finished.close();
+                }
+            }
+        }
+
+        /**
+         * Returns the path of page {@code number}.
+         * 
+         * @param number
+         *            the page number, counting from 1
+         * @return its path, next to the index
+         */
+        private Path pagePath(int number) {
+            String fileName = this.index.getFileName().toString();
+            int dot = fileName.lastIndexOf('.');
+            if (dot <= 0) {
+                return this.index.resolveSibling(fileName + "-" + number
+                        + ".html");
+            }
+            return this.index.resolveSibling(fileName.substring(0, dot) + "-"
+                    + number + fileName.substring(dot));
+        }
+
+        /**
+         * Returns the shortest start of {@code word}, in lower case, that is
+         * not also the start of {@code neighbour}, so the ranges of the pages
+         * read like the guide words of a dictionary.
+         * 
+         * @param word
+         *            the first or last word of a page
+         * @param neighbour
+         *            the word on the other side of the page break, or null
+         * @return the start of {@code word} telling it from {@code neighbour}
+         */
+        private static String shortestPrefix(String word, String neighbour) {
+            String lower = word.toLowerCase();
+            int length = 1;
+            if (neighbour != null) {
+                String other = neighbour.toLowerCase();
+                while (length < lower.length()
+                        && lower.regionMatches(0, other, 0, length)) {
+                    length++;
+                }
+            }
+            if (length < lower.length()
+                    && Character.isHighSurrogate(lower.charAt(length - 1))) {
+                length++;
+            }
+            return lower.substring(0, Math.min(length, lower.length()));
+        }
     }
 
     /**
@@ -127,7 +630,7 @@ public class WordCounter {
      * @param position
      *            the starting index
      * @param separators
-     *            the {@code Set} of separator characters
+     *            the {@code SeparatorSet} of separator characters
      * @return the first word or separator string found in {@code text} starting
      *         at index {@code position}
      * @requires <pre>
@@ -150,7 +653,7 @@ public class WordCounter {
      * </pre>
      */
     private static String nextWordOrSeparator(String text, int position,
-            Set<Character> separators) {
+            SeparatorSet separators) {
         assert text != null : "Violation of: text is not null";
         assert separators != null : "Violation of: separators is not null";
         assert 0 <= position : "Violation of: 0 <= position";
@@ -187,125 +690,622 @@ public class WordCounter {
      */
     public static void wordProcess(SimpleReader inFile,
             Map<String, Integer> words) {
+        wordProcess(inFile, words, new SeparatorSet(SEPARATORS));
+    }
+
+    /**
+     * Processing through the input textFile ({@code SimpleReader}) and assigns
+     * the word and its occurrences in a {@code Map}, splitting words at the
+     * given separators.
+     * 
+     * @param inFile
+     *            the input text file ({@code SimpleReader})
+     * @param words
+     *            the {@code Map} containing all the words and its occurrences
+     * @param separators
+     *            the {@code SeparatorSet} of characters that separate words
+     * @updates {@code words}
+     * @ensures <pre>
+     * inFile's words = {@code Map}'s Key(words) and Value(occurrences)
+     * </pre>
+     */
+    public static void wordProcess(SimpleReader inFile,
+            Map<String, Integer> words, SeparatorSet separators) {
 
         assert inFile.isOpen() : "Violation of : inFile is open";
         assert words != null : "Violation of: words is not null";
+        assert separators != null : "Violation of: separators is not null";
 
         words.clear();
 
-        //Starting position
-        int position = 0;
-
-        Set<Character> exclusionSet = new Set1L<Character>();
+        //Loops until all lines have been read from input text file
+        while (!inFile.atEOS()) {
+            countLine(inFile.nextLine(), words, separators);
+        }
 
-        //Characters that are considering separators
-        String exclusionCharacters = " \t,.-;'/\"@#$%&()";
+    }
 
-        generateElements(exclusionCharacters, exclusionSet);
+    /**
+     * Counts the words of the file at {@code file} in a {@code Map}, reading
+     * it as UTF-8. A gzip file or zip archive is decompressed as it is read,
+     * and the entries of a zip archive are counted in parallel, each in a
+     * {@code Map} of its own, and then merged.
+     * 
+     * @param file
+     *            path of the input file
+     * @param words
+     *            the {@code Map} containing all the words and its occurrences
+     * @param separators
+     *            the {@code SeparatorSet} of characters that separate words
+     * @replaces {@code words}
+     * @ensures <pre>
+     * file's words = {@code Map}'s Key(words) and Value(occurrences)
+     * </pre>
+     * @throws IOException
+     */
+    public static void wordProcess(Path file, Map<String, Integer> words,
+            SeparatorSet separators) throws IOException {
+        assert words != null : "Violation of: words is not null";
+        assert separators != null : "Violation of: separators is not null";
 
-        //Loops until all lines have been read from input text file
-        while (!inFile.atEOS()) {
+        Map<String, Integer> counted = CompressedInput.count(file, in -> {
+            Map<String, Integer> entry = new Map1L<String, Integer>();
+            BufferedReader lines = new BufferedReader(new InputStreamReader(
+                    in, StandardCharsets.UTF_8));
+            String line = lines.readLine();
+            while (line != null) {
+                countLine(line, entry, separators);
+                line = lines.readLine();
+            }
+            return entry;
+        }, WordCounter::mergeWords);
+        words.transferFrom(counted);
+    }
 
-            String line = inFile.nextLine();
-            position = 0;
-            //Loops through a line from the text file until all characters have been considered
-            while (position < line.length()) {
-                String token = nextWordOrSeparator(line, position, exclusionSet);
-                //if the token is a word
-                if (!exclusionSet.contains(token.charAt(0))) {
-                    //if the map does not have the token word, add to Map
-                    if (!words.hasKey(token)) {
-                        words.add(token, 1);
-                    }
-                    //increase value of its respective key when key is found within the map.
-                    else {
-                        int wordValue = words.value(token);
-                        wordValue++;
-                        words.replaceValue(token, wordValue);
-                    }
+    /**
+     * Counts the words of one line in a {@code Map}.
+     * 
+     * @param line
+     *            the line
+     * @param words
+     *            the {@code Map} containing all the words and its occurrences
+     * @param separators
+     *            the {@code SeparatorSet} of characters that separate words
+     * @updates {@code words}
+     */
+    private static void countLine(String line, Map<String, Integer> words,
+            SeparatorSet separators) {
+        int position = 0;
+        //Loops through a line from the text file until all characters have been considered
+        while (position < line.length()) {
+            String token = nextWordOrSeparator(line, position, separators);
+            //if the token is a word
+            if (!separators.contains(token.charAt(0))) {
+                //if the map does not have the token word, add to Map
+                if (!words.hasKey(token)) {
+                    words.add(token, 1);
+                }
+                //increase value of its respective key when key is found within the map.
+                else {
+                    int wordValue = words.value(token);
+                    wordValue++;
+                    words.replaceValue(token, wordValue);
                 }
-                //Increase position to consider the next word or separator in the line.
-                position += token.length();
             }
+            //Increase position to consider the next word or separator in the line.
+            position += token.length();
+        }
+    }
 
+    /**
+     * Adds the counts of the smaller of two {@code Map}s into the larger and
+     * returns the larger.
+     * 
+     * @param first
+     *            {@code Map} of partial counts
+     * @param second
+     *            {@code Map} of partial counts
+     * @return the merged counts
+     */
+    private static Map<String, Integer> mergeWords(
+            Map<String, Integer> first, Map<String, Integer> second) {
+        Map<String, Integer> larger = first;
+        Map<String, Integer> smaller = second;
+        if (second.size() > first.size()) {
+            larger = second;
+            smaller = first;
         }
+        for (Pair<String, Integer> pair : smaller) {
+            if (larger.hasKey(pair.key())) {
+                larger.replaceValue(pair.key(), larger.value(pair.key())
+                        + pair.value());
+            } else {
+                larger.add(pair.key(), pair.value());
+            }
+        }
+        return larger;
+    }
 
+    /**
+     * Processing through the input textFile ({@code SimpleReader}) and counts
+     * its words in a {@code WordSink}, such as a {@code WordArena}, a
+     * {@code WordTrie} or a {@code SpillingWordCounter}, splitting words at
+     * the given separators.
+     * 
+     * @param inFile
+     *            the input text file ({@code SimpleReader})
+     * @param words
+     *            the {@code WordSink} to count the words in
+     * @param separators
+     *            the {@code SeparatorSet} of characters that separate words
+     * @updates {@code words}
+     * @ensures <pre>
+     * inFile's words are counted in {@code words}
+     * </pre>
+     */
+    public static void wordProcess(SimpleReader inFile, WordSink words,
+            SeparatorSet separators) {
+
+        assert inFile.isOpen() : "Violation of : inFile is open";
+        assert words != null : "Violation of: words is not null";
+        assert separators != null : "Violation of: separators is not null";
+
+        while (!inFile.atEOS()) {
+            countLine(inFile.nextLine(), words, separators);
+        }
     }
 
     /**
-     * Sorts through the {@code Map} using {@code Queue}'s sorting function
+     * Counts the words of the file at {@code file} in a {@code WordSink},
+     * reading it as UTF-8 and decompressing it as it is read if it is a gzip
+     * file or zip archive.
      * 
+     * @param file
+     *            path of the input file
      * @param words
-     *            the {@code Map} containing all the words and its occurrences
-     * @param order
-     *            the {@code Comparator} that allows us to compare words
-     *            lexicographically ignoring case
-     * @param keyQueue
-     *            the {@code Queue} that will contain all the words sorted.
+     *            the {@code WordSink} to count the words in
+     * @param separators
+     *            the {@code SeparatorSet} of characters that separate words
+     * @updates {@code words}
      * @ensures <pre>
-     * {@code Map} of words is in order based on the {@code Queue} keyQueue.
+     * file's words are counted in {@code words}
      * </pre>
+     * @throws IOException
+     */
+    public static void wordProcess(Path file, WordSink words,
+            SeparatorSet separators) throws IOException {
+        assert words != null : "Violation of: words is not null";
+        assert separators != null : "Violation of: separators is not null";
+
+        try (BufferedReader lines = new BufferedReader(new InputStreamReader(
+                CompressedInput.open(file), StandardCharsets.UTF_8))) {
+            String line = lines.readLine();
+            while (line != null) {
+                countLine(line, words, separators);
+                line = lines.readLine();
+            }
+        }
+    }
+
+    /**
+     * Counts the words of one line in a {@code WordSink}.
      * 
+     * @param line
+     *            the line
+     * @param words
+     *            the {@code WordSink} to count the words in
+     * @param separators
+     *            the {@code SeparatorSet} of characters that separate words
+     * @updates {@code words}
      */
+    private static void countLine(String line, WordSink words,
+            SeparatorSet separators) {
+        int position = 0;
+        while (position < line.length()) {
+            String token = nextWordOrSeparator(line, position, separators);
+            if (!separators.contains(token.charAt(0))) {
+                words.add(token, 1);
+            }
+            position += token.length();
+        }
+    }
 
-    public static void wordSort(Map<String, Integer> words,
-            Comparator<String> order, Queue<String> keyQueue) {
+    /**
+     * Takes the words out of the {@code Map} once and sorts them
+     * lexicographically ignoring case.
+     * 
+     * @param words
+     *            the {@code Map} containing all the words and its occurrences
+     * @return {@code CollatedWords} holding the words and their occurrences in
+     *         order
+     * @restores words
+     */
+    public static CollatedWords wordSort(Map<String, Integer> words) {
         assert words != null : "Violation of : words is not null";
-        assert order != null : "Violation of : words is not null";
-        assert keyQueue != null : "Violation of : words is not null";
 
-        Map<String, Integer> tempMap = words.newInstance();
-        Queue<String> tempQueue = keyQueue.newInstance();
-        keyQueue.clear();
-
-        //loops through all elements of words.
-        while (words.iterator().hasNext()) {
-            //removes one by one all elements of words until it is empty
-            Pair<String, Integer> tempPair = words.removeAny();
+        return new CollatedWords(words);
+    }
 
-            //sets up temporary Map and Queue
-            tempMap.add(tempPair.key(), tempPair.value());
-            keyQueue.enqueue(tempPair.key());
-        }
+    /**
+     * Takes the words out of the {@code WordArena} once and sorts them
+     * lexicographically ignoring case.
+     * 
+     * @param words
+     *            the {@code WordArena} containing all the words and their
+     *            occurrences
+     * @return {@code CollatedWords} holding the words and their occurrences in
+     *         order
+     */
+    public static CollatedWords wordSort(WordArena words) {
+        assert words != null : "Violation of : words is not null";
 
-        //sort the Queue
-        keyQueue.sort(order);
+        return new CollatedWords(words);
+    }
 
-        //Loops through all elements of queue adding them to the Map in alphabetical order ignoring the case
-        while (keyQueue.iterator().hasNext()) {
-            String tempKey = keyQueue.dequeue();
-            Pair<String, Integer> orderedPair = tempMap.remove(tempKey);
-            words.add(orderedPair.key(), orderedPair.value());
-            tempQueue.enqueue(tempKey);
+    /**
+     * Writes the word-count index of the file at {@code source} to
+     * {@code index}.
+     * 
+     * @param index
+     *            path of the index
+     * @param source
+     *            path of the file that was counted
+     * @param separators
+     *            the characters the words were split at
+     * @param words
+     *            the {@code Map} of every word in the file and its count
+     * @throws IOException
+     */
+    private static void writeIndex(Path index, Path source, String separators,
+            Map<String, Integer> words) throws IOException {
+        String[] keys = new String[words.size()];
+        int[] counts = new int[words.size()];
+        int size = 0;
+        for (Pair<String, Integer> pair : words) {
+            keys[size] = pair.key();
+            counts[size] = pair.value();
+            size++;
         }
-        keyQueue.transferFrom(tempQueue);
-
+        WordIndex.write(index, source, INDEX_KEY + separators, keys, counts,
+                size);
     }
 
-    public static void main(String[] args) {
+    /**
+     * Main method.
+     * 
+     * @param args
+     *            the command line arguments; {@code --separators=CHARS} sets
+     *            the characters that separate words, {@code --spill=WORDS}
+     *            keeps at most WORDS distinct words in memory and spills the
+     *            rest to disk, {@code --index[=PATH]} loads the word counts
+     *            from the index at PATH (by default the input file with
+     *            {@code .idx} added) and writes it if it is missing or out of
+     *            date, {@code --compact} counts in a {@code WordArena} to
+     *            save memory on very large vocabularies, {@code --trie}
+     *            counts in a {@code WordTrie} and writes the rows in its
+     *            order without sorting, {@code --prefix=P} does the same for
+     *            only the words starting with P, ignoring case, and prints
+     *            their total count,
+     *            {@code --shard=PATH} only counts the input file and
+     *            writes its counts to a shard at PATH, {@code --merge=PAGE
+     *            SHARD...} writes the total counts of the listed shards to
+     *            PAGE (and to the {@code --shard} if one is given),
+     *            {@code --pages=ROWS} writes the table to pages of at most ROWS
+     *            rows each, with an index page of their word ranges in place
+     *            of the output file, {@code --report=PATH} writes a JSON
+     *            report of the time and memory each phase of the run took;
+     *            the input file may be a
+     *            gzip file or a zip archive, read without unpacking it
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
         SimpleWriter out = new SimpleWriter1L();
         SimpleReader in = new SimpleReader1L();
 
+        String separators = SEPARATORS;
+        int spillLimit = 0;
+        boolean useIndex = false;
+        String indexLocation = null;
+        String reportLocation = null;
+        boolean compact = false;
+        boolean trie = false;
+        String prefix = "";
+        String shardLocation = null;
+        String mergePage = null;
+        int rowsPerPage = 0;
+        List<Path> shards = new ArrayList<Path>();
+        for (String arg : args) {
+            if (arg.startsWith("--separators=")) {
+                separators = arg.substring("--separators=".length());
+            } else if (arg.startsWith("--spill=")) {
+                spillLimit = Integer.parseInt(arg.substring("--spill="
+                        .length()));
+            } else if (arg.equals("--index")) {
+                useIndex = true;
+            } else if (arg.startsWith("--index=")) {
+                useIndex = true;
+                indexLocation = arg.substring("--index=".length());
+            } else if (arg.startsWith("--report=")) {
+                reportLocation = arg.substring("--report=".length());
+            } else if (arg.equals("--compact")) {
+                compact = true;
+            } else if (arg.equals("--trie")) {
+                trie = true;
+            } else if (arg.startsWith("--prefix=")) {
+                trie = true;
+                prefix = arg.substring("--prefix=".length());
+            } else if (arg.startsWith("--shard=")) {
+                shardLocation = arg.substring("--shard=".length());
+            } else if (arg.startsWith("--merge=")) {
+                mergePage = arg.substring("--merge=".length());
+            } else if (arg.startsWith("--pages=")) {
+                rowsPerPage = Integer.parseInt(arg.substring("--pages="
+                        .length()));
+            } else if (!arg.startsWith("--")) {
+                shards.add(Paths.get(arg));
+            } else {
+                out.println("Unknown option " + arg);
+                in.close();
+                out.close();
+                return;
+            }
+        }
+
+        if (useIndex && spillLimit > 0) {
+            out.println("--index cannot be combined with --spill");
+            in.close();
+            out.close();
+            return;
+        }
+        if (useIndex && (shardLocation != null || mergePage != null)) {
+            out.println("--index cannot be combined with --shard or --merge");
+            in.close();
+            out.close();
+            return;
+        }
+        if (compact
+                && (useIndex || spillLimit > 0 || shardLocation != null
+                        || mergePage != null)) {
+            out.println("--compact cannot be combined with --index, --spill, "
+                    + "--shard or --merge");
+            in.close();
+            out.close();
+            return;
+        }
+        if (trie
+                && (useIndex || spillLimit > 0 || shardLocation != null
+                        || mergePage != null || compact)) {
+            out.println("--trie and --prefix cannot be combined with "
+                    + "--index, --spill, --shard, --merge or --compact");
+            in.close();
+            out.close();
+            return;
+        }
+        if (rowsPerPage > 0 && shardLocation != null && mergePage == null) {
+            out.println("--pages needs an output page, which --shard alone "
+                    + "does not write");
+            in.close();
+            out.close();
+            return;
+        }
+        if (!shards.isEmpty() && mergePage == null) {
+            out.println("Shards can only be listed with --merge");
+            in.close();
+            out.close();
+            return;
+        }
+
+        if (mergePage != null) {
+            RunReport report = new RunReport("WordCounter", shards.size()
+                    + " shards");
+            report.start(RunReport.RENDER);
+            Path merged = null;
+            if (shardLocation != null) {
+                merged = Paths.get(shardLocation);
+            }
+            if (rowsPerPage > 0) {
+                try (PagedTable pages = new PagedTable(Paths.get(mergePage),
+                        shards.size() + " shards", rowsPerPage)) {
+                    tableMaker(pages, shards, separators, merged);
+                } catch (IOException e) {
+                    System.err.println("Error merging shards " + e);
+                }
+            } else {
+                try (HtmlWriter outFile = new HtmlWriter(
+                        Paths.get(mergePage))) {
+                    tableMaker(outFile, shards, separators, merged);
+                } catch (IOException e) {
+                    System.err.println("Error merging shards " + e);
+                }
+            }
+            report.stop();
+            in.close();
+            out.close();
+            if (reportLocation != null) {
+                report.write(Paths.get(reportLocation));
+            }
+            return;
+        }
+
         Map<String, Integer> words = new Map1L<String, Integer>();
-        Comparator<String> order = new StringLT();
-        Queue<String> keyQueue = new Queue1L<String>();
 
         out.println("Please enter the name of the input file: ");
         //Reads in file
-        SimpleReader inFile = new SimpleReader1L("data/" + in.nextLine());
+        String inputName = "data/" + in.nextLine();
+        SimpleReader inFile = new SimpleReader1L(inputName);
+        Path source = Paths.get(inputName);
+        boolean compressed = CompressedInput.isCompressed(source);
+
+        if (shardLocation != null) {
+            RunReport report = new RunReport("WordCounter", inputName);
+            int limit = Integer.MAX_VALUE;
+            if (spillLimit > 0) {
+                limit = spillLimit;
+            }
+            try (SpillingWordCounter counter = new SpillingWordCounter(limit,
+                    ROW_ORDER);
+                    CountShard.Writer shard = new CountShard.Writer(
+                            Paths.get(shardLocation), INDEX_KEY + separators,
+                            ROW_ORDER)) {
+                report.start(RunReport.COUNT);
+                if (compressed) {
+                    wordProcess(source, counter, new SeparatorSet(separators));
+                } else {
+                    wordProcess(inFile, counter, new SeparatorSet(separators));
+                }
+                report.start("write_shard");
+                counter.mergeTo(shard);
+                shard.finish();
+                report.stop();
+            }
+            in.close();
+            out.close();
+            inFile.close();
+            if (reportLocation != null) {
+                report.write(Paths.get(reportLocation));
+            }
+            return;
+        }
 
         out.println("Please enter the name of the output file: ");
-        //Creates output file
-        SimpleWriter outFile = new SimpleWriter1L("data/" + in.nextLine());
+        //Path of the output file, or of the index of the pages
+        Path outputPath = Paths.get("data/" + in.nextLine());
 
-        wordProcess(inFile, words);
-        wordSort(words, order, keyQueue);
-        tableMaker(outFile, words, keyQueue, inFile);
+        RunReport report = new RunReport("WordCounter", inputName);
+        if (spillLimit > 0) {
+            try (SpillingWordCounter counter = new SpillingWordCounter(
+                    spillLimit, ROW_ORDER)) {
+                report.start(RunReport.COUNT);
+                if (compressed) {
+                    wordProcess(source, counter, new SeparatorSet(separators));
+                } else {
+                    wordProcess(inFile, counter, new SeparatorSet(separators));
+                }
+                report.start(RunReport.RENDER);
+                if (rowsPerPage > 0) {
+                    try (PagedTable pages = new PagedTable(outputPath,
+                            inFile.name(), rowsPerPage)) {
+                        tableMaker(pages, counter);
+                    }
+                } else {
+                    try (HtmlWriter outFile = new HtmlWriter(outputPath)) {
+                        tableMaker(outFile, counter, inFile);
+                    }
+                }
+                report.stop();
+            }
+        } else if (trie) {
+            report.start(RunReport.COUNT);
+            WordTrie counts = new WordTrie(true);
+            if (compressed) {
+                wordProcess(source, counts, new SeparatorSet(separators));
+            } else {
+                wordProcess(inFile, counts, new SeparatorSet(separators));
+            }
+            report.stop();
+            report.set(RunReport.TOKENS, counts.total(""));
+            report.set(RunReport.DISTINCT_WORDS, counts.size());
+
+            //The trie is already in row order, so there is no sort
+            report.start(RunReport.RENDER);
+            if (rowsPerPage > 0) {
+                try (PagedTable pages = new PagedTable(outputPath,
+                        inFile.name(), rowsPerPage)) {
+                    tableMaker(pages, counts, prefix);
+                }
+            } else {
+                try (HtmlWriter outFile = new HtmlWriter(outputPath)) {
+                    tableMaker(outFile, counts, prefix, inFile);
+                }
+            }
+            report.stop();
+            if (!prefix.isEmpty()) {
+                out.println("Words starting with \"" + prefix + "\": "
+                        + counts.total(prefix));
+            }
+        } else if (compact) {
+            report.start(RunReport.COUNT);
+            WordArena arena = new WordArena();
+            if (compressed) {
+                wordProcess(source, arena, new SeparatorSet(separators));
+            } else {
+                wordProcess(inFile, arena, new SeparatorSet(separators));
+            }
+            report.stop();
+            report.set(RunReport.TOKENS, arena.total());
+            report.set(RunReport.DISTINCT_WORDS, arena.size());
+
+            report.start(RunReport.SORT);
+            CollatedWords sorted = wordSort(arena);
+            report.start(RunReport.RENDER);
+            if (rowsPerPage > 0) {
+                try (PagedTable pages = new PagedTable(outputPath,
+                        inFile.name(), rowsPerPage)) {
+                    tableMaker(pages, sorted);
+                }
+            } else {
+                try (HtmlWriter outFile = new HtmlWriter(outputPath)) {
+                    tableMaker(outFile, sorted, inFile);
+                }
+            }
+            report.stop();
+        } else {
+            report.start(RunReport.COUNT);
+            Path index = null;
+            WordIndex indexed = null;
+            if (useIndex) {
+                if (indexLocation == null) {
+                    index = WordIndex.defaultPath(source);
+                } else {
+                    index = Paths.get(indexLocation);
+                }
+                indexed = WordIndex.load(index, source, INDEX_KEY
+                        + separators);
+            }
+            if (indexed != null) {
+                for (int i = 0; i < indexed.size(); i++) {
+                    words.add(indexed.word(i), indexed.count(i));
+                }
+            } else {
+                if (compressed) {
+                    wordProcess(source, words, new SeparatorSet(separators));
+                } else {
+                    wordProcess(inFile, words, new SeparatorSet(separators));
+                }
+                if (useIndex) {
+                    writeIndex(index, source, separators, words);
+                }
+            }
+            report.stop();
+            long tokens = 0;
+            for (Pair<String, Integer> pair : words) {
+                tokens += pair.value();
+            }
+            report.set(RunReport.TOKENS, tokens);
+            report.set(RunReport.DISTINCT_WORDS, words.size());
+
+            report.start(RunReport.SORT);
+            CollatedWords sorted = wordSort(words);
+            report.start(RunReport.RENDER);
+            if (rowsPerPage > 0) {
+                try (PagedTable pages = new PagedTable(outputPath,
+                        inFile.name(), rowsPerPage)) {
+                    tableMaker(pages, sorted);
+                }
+            } else {
+                try (HtmlWriter outFile = new HtmlWriter(outputPath)) {
+                    tableMaker(outFile, sorted, inFile);
+                }
+            }
+            report.stop();
+        }
 
         in.close();
         out.close();
         inFile.close();
-        outFile.close();
+        if (reportLocation != null) {
+            report.write(Paths.get(reportLocation));
+        }
 
     }
 
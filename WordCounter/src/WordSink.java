@@ -0,0 +1,37 @@
+/**
+ * Something that words can be counted into, one slice of a {@code char[]} at a
+ * time, without turning each word into a {@code String} first.
+ * 
+ * @author Andrew Cheng
+ */
+public interface WordSink {
+
+    /**
+     * Adds {@code count} to the count of {@code word[0, length)}.
+     * 
+     * @param word
+     *            buffer holding the word; only valid during the call
+     * @param length
+     *            number of characters in the word
+     * @param hash
+     *            {@code WordCountTable.hash(word, length)}
+     * @param count
+     *            amount to add
+     */
+    void add(char[] word, int length, int hash, int count);
+
+    /**
+     * Adds {@code count} to the count of {@code word}. By default the word is
+     * copied into a new array; sinks that can look up a {@code String}
+     * without copying it override this.
+     * 
+     * @param word
+     *            the word
+     * @param count
+     *            amount to add
+     */
+    default void add(String word, int count) {
+        char[] chars = word.toCharArray();
+        this.add(chars, chars.length, word.hashCode(), count);
+    }
+}
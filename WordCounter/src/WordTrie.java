@@ -0,0 +1,589 @@
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+/**
+ * Word counter kept as a compressed radix trie, so words come out in
+ * alphabetical order without sorting and the total count of every word
+ * starting with a given prefix is found by walking down the prefix alone.
+ *
+ * <p>
+ * Each edge of the trie is labelled with a run of characters, and a node
+ * with a single child is merged into its parent, so a prefix shared by many
+ * words is stored once. Labels are slices of one {@code char[]}; the nodes
+ * are parallel arrays of label slice, count of the word ending there, total
+ * count of the subtree and first child and next sibling, with siblings in
+ * order of their first character. Splitting an edge only shortens its slice,
+ * so no label is ever copied.
+ * </p>
+ *
+ * <p>
+ * A trie that ignores case files each word under its lower-case form, then
+ * {@code '\0'}, then its spelling, so words come out lexicographic ignoring
+ * case, then by exact spelling, and a prefix matches every spelling.
+ * </p>
+ *
+ * @author Andrew Cheng
+ */
+public final class WordTrie implements WordSink {
+
+    /**
+     * Starting number of nodes.
+     */
+    private static final int INITIAL_NODES = 1024;
+
+    /**
+     * Starting number of label characters.
+     */
+    private static final int INITIAL_LABELS = 1 << 14;
+
+    /**
+     * Separates the lower-case form of a word from its spelling in a trie
+     * that ignores case; sorts before every other character.
+     */
+    private static final char SPELLING = '\0';
+
+    /**
+     * No node.
+     */
+    private static final int NONE = -1;
+
+    /**
+     * Receives each word of a walk as the key it is filed under.
+     */
+    @FunctionalInterface
+    private interface KeyConsumer {
+
+        /**
+         * Takes one key and the count of its word.
+         *
+         * @param key
+         *            buffer holding the key
+         * @param length
+         *            number of characters in the key
+         * @param count
+         *            count of the word
+         * @throws IOException
+         */
+        void accept(char[] key, int length, int count) throws IOException;
+    }
+
+    /**
+     * Whether words are filed by their lower-case form first.
+     */
+    private final boolean ignoreCase;
+
+    /**
+     * Characters of every edge label.
+     */
+    private char[] labels;
+
+    /**
+     * Number of label characters in use.
+     */
+    private int used;
+
+    /**
+     * Start of the label of each node in {@code labels}.
+     */
+    private int[] labelStarts;
+
+    /**
+     * Length of the label of each node; 0 only for the root.
+     */
+    private int[] labelLengths;
+
+    /**
+     * Count of the word ending at each node, or 0 if none does.
+     */
+    private int[] counts;
+
+    /**
+     * Sum of the counts of each node and everything below it.
+     */
+    private long[] totals;
+
+    /**
+     * First child of each node, or {@code NONE}.
+     */
+    private int[] firstChildren;
+
+    /**
+     * Next sibling of each node, or {@code NONE}.
+     */
+    private int[] nextSiblings;
+
+    /**
+     * Number of nodes, the root included.
+     */
+    private int nodes;
+
+    /**
+     * Number of distinct words.
+     */
+    private int size;
+
+    /**
+     * Key being built for a lookup.
+     */
+    private char[] key = new char[64];
+
+    /**
+     * Length of the key up to the end of the label of the node last returned
+     * by {@code find}.
+     */
+    private int foundEnd;
+
+    /**
+     * Default constructor; words are filed exactly as spelled.
+     */
+    public WordTrie() {
+        this(false);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param ignoreCase
+     *            whether to order words and match prefixes ignoring case
+     */
+    public WordTrie(boolean ignoreCase) {
+        this.ignoreCase = ignoreCase;
+        this.labels = new char[INITIAL_LABELS];
+        this.used = 0;
+        this.labelStarts = new int[INITIAL_NODES];
+        this.labelLengths = new int[INITIAL_NODES];
+        this.counts = new int[INITIAL_NODES];
+        this.totals = new long[INITIAL_NODES];
+        this.firstChildren = new int[INITIAL_NODES];
+        this.nextSiblings = new int[INITIAL_NODES];
+        this.nodes = 0;
+        this.size = 0;
+        this.newNode(0, 0);
+    }
+
+    /**
+     * Adds {@code count} to the count of {@code word[0, length)}.
+     *
+     * @param word
+     *            buffer holding the word
+     * @param length
+     *            number of characters in the word
+     * @param hash
+     *            {@code WordCountTable.hash(word, length)}; not used
+     * @param count
+     *            amount to add, {@code count > 0}
+     */
+    @Override
+    public void add(char[] word, int length, int hash, int count) {
+        if (this.ignoreCase) {
+            this.add(new String(word, 0, length), count);
+        } else {
+            this.insert(word, length, count);
+        }
+    }
+
+    /**
+     * Adds {@code count} to the count of {@code word}.
+     *
+     * @param word
+     *            the word
+     * @param count
+     *            amount to add, {@code count > 0}
+     */
+    @Override
+    public void add(String word, int count) {
+        int length = this.keyOf(word);
+        this.insert(this.key, length, count);
+    }
+
+    /**
+     * Returns the count of {@code word}, or 0 if it has not been counted.
+     *
+     * @param word
+     *            the word
+     * @return its count
+     */
+    public int count(String word) {
+        int length = this.keyOf(word);
+        int node = this.find(this.key, length);
+        if (node == NONE || this.foundEnd != length) {
+            return 0;
+        }
+        return this.counts[node];
+    }
+
+    /**
+     * Returns the number of distinct words.
+     *
+     * @return the number of words
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns the total count of every word starting with {@code prefix},
+     * ignoring case if the trie does. Takes time in proportion to the length
+     * of the prefix, however many words start with it.
+     *
+     * @param prefix
+     *            the prefix; "" for every word
+     * @return the sum of their counts
+     */
+    public long total(String prefix) {
+        int length = this.prefixOf(prefix);
+        int node = this.find(this.key, length);
+        if (node == NONE) {
+            return 0;
+        }
+        return this.totals[node];
+    }
+
+    /**
+     * Hands every word starting with {@code prefix} and its count to
+     * {@code consumer}, in order.
+     *
+     * @param prefix
+     *            the prefix; "" for every word
+     * @param consumer
+     *            receives the words and counts
+     * @throws IOException
+     */
+    public void forEach(String prefix, WordCountConsumer consumer)
+            throws IOException {
+        int length = this.prefixOf(prefix);
+        int node = this.find(this.key, length);
+        if (node == NONE) {
+            return;
+        }
+        int base = this.foundEnd - this.labelLengths[node];
+        char[] path = Arrays.copyOf(this.key, Math.max(64, base * 2));
+        this.walk(node, path, base, (key, keyLength, count) -> consumer
+                .accept(this.spelling(key, keyLength), count));
+    }
+
+    /**
+     * Puts the key of {@code word} in {@code key}.
+     *
+     * @param word
+     *            the word
+     * @return the length of the key
+     */
+    private int keyOf(String word) {
+        if (!this.ignoreCase) {
+            return this.setKey(word, 0);
+        }
+        int length = this.setKey(word.toLowerCase(), 0);
+        this.key[length] = SPELLING;
+        return this.setKey(word, length + 1);
+    }
+
+    /**
+     * Puts the key prefix of words starting with {@code prefix} in
+     * {@code key}.
+     *
+     * @param prefix
+     *            the prefix
+     * @return the length of the key prefix
+     */
+    private int prefixOf(String prefix) {
+        if (this.ignoreCase) {
+            return this.setKey(prefix.toLowerCase(), 0);
+        }
+        return this.setKey(prefix, 0);
+    }
+
+    /**
+     * Copies {@code text} into {@code key} at {@code at}, growing it with
+     * room for one more character.
+     *
+     * @param text
+     *            the characters to copy
+     * @param at
+     *            where they go
+     * @return the length of the key after them
+     */
+    private int setKey(String text, int at) {
+        int length = at + text.length();
+        if (length + 1 > this.key.length) {
+            this.key = Arrays.copyOf(this.key, Math.max(length + 1,
+                    this.key.length * 2));
+        }
+        text.getChars(0, text.length(), this.key, at);
+        return length;
+    }
+
+    /**
+     * Returns the word a key was made from.
+     *
+     * @param key
+     *            buffer holding the key
+     * @param length
+     *            number of characters in the key
+     * @return the word
+     */
+    private String spelling(char[] key, int length) {
+        if (!this.ignoreCase) {
+            return new String(key, 0, length);
+        }
+        int marker = NONE;
+        for (int i = 0; i < length && marker == NONE; i++) {
+            if (key[i] == SPELLING) {
+                String word = new String(key, i + 1, length - i - 1);
+                if (word.toLowerCase().contentEquals(
+                        CharBuffer.wrap(key, 0, i))) {
+                    marker = i;
+                }
+            }
+        }
+        return new String(key, marker + 1, length - marker - 1);
+    }
+
+    /**
+     * Returns the node whose subtree holds exactly the keys starting with
+     * {@code key[0, length)}, or {@code NONE} if no key does, and sets
+     * {@code foundEnd}.
+     *
+     * @param key
+     *            buffer holding the key prefix
+     * @param length
+     *            number of characters in the key prefix
+     * @return the node
+     */
+    private int find(char[] key, int length) {
+        int node = 0;
+        int i = 0;
+        while (i < length) {
+            int child = this.child(node, key[i]);
+            if (child == NONE) {
+                return NONE;
+            }
+            int start = this.labelStarts[child];
+            int labelLength = this.labelLengths[child];
+            int j = 1;
+            while (j < labelLength && i + j < length
+                    && this.labels[start + j] == key[i + j]) {
+                j++;
+            }
+            if (j < labelLength && i + j < length) {
+                return NONE;
+            }
+            node = child;
+            i += labelLength;
+        }
+        this.foundEnd = i;
+        return node;
+    }
+
+    /**
+     * Returns the child of {@code node} whose label starts with {@code c}, or
+     * {@code NONE}.
+     *
+     * @param node
+     *            the parent
+     * @param c
+     *            first character of the label
+     * @return the child
+     */
+    private int child(int node, char c) {
+        int child = this.firstChildren[node];
+        while (child != NONE && this.labels[this.labelStarts[child]] < c) {
+            child = this.nextSiblings[child];
+        }
+        if (child != NONE && this.labels[this.labelStarts[child]] == c) {
+            return child;
+        }
+        return NONE;
+    }
+
+    /**
+     * Adds {@code count} to the count of the key {@code key[0, length)},
+     * splitting the edge where it leaves the trie.
+     *
+     * @param key
+     *            buffer holding the key
+     * @param length
+     *            number of characters in the key
+     * @param count
+     *            amount to add
+     */
+    private void insert(char[] key, int length, int count) {
+        int node = 0;
+        int i = 0;
+        this.totals[0] += count;
+        while (i < length) {
+            char c = key[i];
+            int previous = NONE;
+            int child = this.firstChildren[node];
+            while (child != NONE && this.labels[this.labelStarts[child]] < c) {
+                previous = child;
+                child = this.nextSiblings[child];
+            }
+            if (child == NONE || this.labels[this.labelStarts[child]] != c) {
+                int leaf = this.newNode(this.copyLabel(key, i, length - i),
+                        length - i);
+                this.counts[leaf] = count;
+                this.totals[leaf] = count;
+                this.nextSiblings[leaf] = child;
+                if (previous == NONE) {
+                    this.firstChildren[node] = leaf;
+                } else {
+                    this.nextSiblings[previous] = leaf;
+                }
+                this.size++;
+                return;
+            }
+            int start = this.labelStarts[child];
+            int labelLength = this.labelLengths[child];
+            int j = 1;
+            while (j < labelLength && i + j < length
+                    && this.labels[start + j] == key[i + j]) {
+                j++;
+            }
+            if (j < labelLength) {
+                this.split(child, j);
+            }
+            this.totals[child] += count;
+            node = child;
+            i += j;
+        }
+        if (this.counts[node] == 0) {
+            this.size++;
+        }
+        this.counts[node] += count;
+    }
+
+    /**
+     * Cuts the label of {@code node} after {@code at} characters, moving the
+     * rest of the label, the count and the children to a new only child.
+     *
+     * @param node
+     *            the node
+     * @param at
+     *            number of characters to keep, {@code 0 < at < label length}
+     */
+    private void split(int node, int at) {
+        int rest = this.newNode(this.labelStarts[node] + at,
+                this.labelLengths[node] - at);
+        this.counts[rest] = this.counts[node];
+        this.totals[rest] = this.totals[node];
+        this.firstChildren[rest] = this.firstChildren[node];
+        this.labelLengths[node] = at;
+        this.counts[node] = 0;
+        this.firstChildren[node] = rest;
+    }
+
+    /**
+     * Copies {@code key[from, from + length)} to the end of the labels.
+     *
+     * @param key
+     *            buffer holding the characters
+     * @param from
+     *            first character to copy
+     * @param length
+     *            number of characters to copy
+     * @return start of the copy in {@code labels}
+     */
+    private int copyLabel(char[] key, int from, int length) {
+        if (length > this.labels.length - this.used) {
+            long capacity = Math.max((long) this.used + length,
+                    this.labels.length * 2L);
+            if (capacity > Integer.MAX_VALUE - 8) {
+                throw new IllegalStateException("Word trie is full");
+            }
+            this.labels = Arrays.copyOf(this.labels, (int) capacity);
+        }
+        System.arraycopy(key, from, this.labels, this.used, length);
+        int start = this.used;
+        this.used += length;
+        return start;
+    }
+
+    /**
+     * Makes a node with no count, children or siblings.
+     *
+     * @param labelStart
+     *            start of its label in {@code labels}
+     * @param labelLength
+     *            length of its label
+     * @return the node
+     */
+    private int newNode(int labelStart, int labelLength) {
+        int node = this.nodes;
+        if (node == this.counts.length) {
+            int capacity = node * 2;
+            this.labelStarts = Arrays.copyOf(this.labelStarts, capacity);
+            this.labelLengths = Arrays.copyOf(this.labelLengths, capacity);
+            this.counts = Arrays.copyOf(this.counts, capacity);
+            this.totals = Arrays.copyOf(this.totals, capacity);
+            this.firstChildren = Arrays.copyOf(this.firstChildren, capacity);
+            this.nextSiblings = Arrays.copyOf(this.nextSiblings, capacity);
+        }
+        this.labelStarts[node] = labelStart;
+        this.labelLengths[node] = labelLength;
+        this.counts[node] = 0;
+        this.totals[node] = 0;
+        this.firstChildren[node] = NONE;
+        this.nextSiblings[node] = NONE;
+        this.nodes++;
+        return node;
+    }
+
+    /**
+     * Hands the key of every word in the subtree of {@code from} to
+     * {@code consumer}, in order, walking the subtree with a stack of its
+     * own rather than by recursion.
+     *
+     * @param from
+     *            root of the subtree
+     * @param path
+     *            buffer whose first {@code base} characters are the key up to
+     *            the label of {@code from}
+     * @param base
+     *            length of the key up to the label of {@code from}
+     * @param consumer
+     *            receives the keys
+     * @throws IOException
+     */
+    private void walk(int from, char[] path, int base, KeyConsumer consumer)
+            throws IOException {
+        char[] buffer = path;
+        int[] stackNodes = new int[64];
+        int[] stackBases = new int[64];
+        int depth = 0;
+        stackNodes[0] = from;
+        stackBases[0] = base;
+        depth++;
+        while (depth > 0) {
+            depth--;
+            int node = stackNodes[depth];
+            int at = stackBases[depth];
+            int labelLength = this.labelLengths[node];
+            if (at + labelLength > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(at + labelLength,
+                        buffer.length * 2));
+            }
+            System.arraycopy(this.labels, this.labelStarts[node], buffer, at,
+                    labelLength);
+            int length = at + labelLength;
+            if (this.counts[node] > 0) {
+                consumer.accept(buffer, length, this.counts[node]);
+            }
+            if (depth + 2 > stackNodes.length) {
+                stackNodes = Arrays.copyOf(stackNodes, stackNodes.length * 2);
+                stackBases = Arrays.copyOf(stackBases, stackBases.length * 2);
+            }
+            if (node != from && this.nextSiblings[node] != NONE) {
+                stackNodes[depth] = this.nextSiblings[node];
+                stackBases[depth] = at;
+                depth++;
+            }
+            if (this.firstChildren[node] != NONE) {
+                stackNodes[depth] = this.firstChildren[node];
+                stackBases[depth] = length;
+                depth++;
+            }
+        }
+    }
+}
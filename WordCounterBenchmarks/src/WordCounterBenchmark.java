@@ -0,0 +1,88 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import components.map.Map;
+import components.map.Map1L;
+import components.simplereader.SimpleReader;
+import components.simplereader.SimpleReader1L;
+
+/**
+ * Benchmarks of the OSU-components word counting pipeline in
+ * {@code WordCounter}.
+ * 
+ * @author Andrew Cheng and Stacey Frye
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class WordCounterBenchmark {
+
+    /**
+     * Name of the input corpus.
+     */
+    @Param({ "gettysburg", "1MB", "16MB", "256MB", "1GB" })
+    public String corpus;
+
+    /**
+     * The corpus file.
+     */
+    private Path file;
+
+    /**
+     * Counts of every word in the corpus, for the sorting benchmark.
+     */
+    private Map<String, Integer> words;
+
+    /**
+     * Finds or makes the corpus and counts it once.
+     * 
+     * @throws IOException
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        this.file = CorpusGenerator.corpus(this.corpus);
+        this.words = this.wordProcess();
+    }
+
+    /**
+     * Reads and counts the whole corpus.
+     * 
+     * @return the word counts
+     */
+    @Benchmark
+    public Map<String, Integer> wordProcess() {
+        SimpleReader inFile = new SimpleReader1L(this.file.toString());
+        Map<String, Integer> counts = new Map1L<String, Integer>();
+        WordCounter.wordProcess(inFile, counts);
+        inFile.close();
+        return counts;
+    }
+
+    /**
+     * Sorts the counted words; {@code wordSort} leaves {@code words} holding
+     * the same entries, so it can be called again.
+     * 
+     * @return the sorted words
+     */
+    @Benchmark
+    public CollatedWords wordSort() {
+        return WordCounter.wordSort(this.words);
+    }
+}